@@ -8,6 +8,8 @@ import javafx.fxml.FXML;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
+import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpResponse;
 import java.net.http.HttpRequest;
@@ -16,6 +18,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.timeseriesadmin.util.MetadataUtil;
 import org.example.timeseriesadmin.controller.ConfigurationsListController.ConfigurationItem;
@@ -26,6 +29,9 @@ import static org.example.timeseriesadmin.util.ConfigurationListUtil.notifyConfi
 
 public class ConfigurationsController {
 
+  /** The time between two polls of a configuration build, in milliseconds. */
+  private static final long BUILD_POLL_INTERVAL = 500;
+
   @FXML
   private ComboBox<String> nameComboBox;
   @FXML
@@ -100,7 +106,8 @@ public class ConfigurationsController {
       @Override
       protected Void call() throws Exception {
         String ipAddress = org.example.timeseriesadmin.util.IpAddressManager.getInstance().getIpAddress();
-        StringBuilder urlBuilder = new StringBuilder("http://"+ipAddress+":8081/fr.ubo.fast.data.provider-0.0.1-SNAPSHOT/data-setup/config-data/")
+        String baseUrl = "http://" + ipAddress + ":8081/fr.ubo.fast.data.provider-0.0.1-SNAPSHOT/data-setup";
+        StringBuilder urlBuilder = new StringBuilder(baseUrl + "/config-data/")
             .append(URLEncoder.encode(name, StandardCharsets.UTF_8));
 
         for (String datum : data) {
@@ -126,24 +133,80 @@ public class ConfigurationsController {
         System.out.println("Request URL: " + url);
 
         HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 202) {
+          Platform.runLater(() -> {
+            progressBar.setVisible(false);
+            responseLabelConfig.setText("Configuration failed: " + response.body());
+            System.out.println("Configuration failed: " + response.body());
+          });
+          return null;
+        }
 
+        // The tables are built in the background
+        JsonNode build = waitForBuild(baseUrl, response.body());
         Platform.runLater(() -> {
           progressBar.setVisible(false);
-          if (response.statusCode() == 200) {
+          if (build != null && "completed".equals(build.path("state").asText())) {
             notifyConfigurationListUpdate(configTable, responseLabelConfig); // Reload configurations after successful configuration
-            responseLabelConfig.setText("Configuration successful.");
+            responseLabelConfig.setText(String.format("Configuration successful: %d tables in %.1f s.",
+                build.path("total").asInt(), build.path("elapsedMillis").asLong() / 1000.0));
           } else {
-            responseLabelConfig.setText("Configuration failed: " + response.body());
-            System.out.println("Configuration failed: " + response.body());
+            String reason = build == null ? "the build could not be followed" : failure(build);
+            responseLabelConfig.setText("Configuration failed: " + reason);
+            System.out.println("Configuration failed: " + reason);
           }
         });
 
         return null;
       }
 
+      /**
+       * Polls a configuration build, showing how many tables are built, until it ends.
+       */
+      private JsonNode waitForBuild(String baseUrl, String buildId) throws IOException, InterruptedException {
+        ObjectMapper mapper = new ObjectMapper();
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(baseUrl + "/config-jobs/" + buildId))
+            .GET()
+            .build();
+        while (true) {
+          HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+          if (response.statusCode() != 200) {
+            return null;
+          }
+          JsonNode build = mapper.readTree(response.body());
+          String state = build.path("state").asText();
+          if (!"queued".equals(state) && !"running".equals(state)) {
+            return build;
+          }
+          int total = build.path("total").asInt();
+          int completed = build.path("completed").asInt();
+          Platform.runLater(() -> {
+            progressBar.setProgress(total > 0 ? (double) completed / total : ProgressBar.INDETERMINATE_PROGRESS);
+            responseLabelConfig.setText(String.format("Building: %d of %d tables", completed, total));
+          });
+          Thread.sleep(BUILD_POLL_INTERVAL);
+        }
+      }
+
+      /**
+       * Gives the first reason a table of a build was not created.
+       */
+      private String failure(JsonNode build) {
+        for (JsonNode table : build.path("tables")) {
+          if (!table.path("message").isMissingNode() && !table.path("message").isNull()) {
+            return table.path("relation").asText() + ": " + table.path("message").asText();
+          }
+        }
+        return build.path("state").asText();
+      }
+
       @Override
       protected void scheduled() {
-        Platform.runLater(() -> progressBar.setVisible(true));
+        Platform.runLater(() -> {
+          progressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+          progressBar.setVisible(true);
+        });
       }
     };
 
@@ -8,28 +8,18 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.concurrent.Task;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Iterator;
-import java.util.ArrayList;
 import java.net.http.HttpClient;
 import java.net.http.HttpResponse;
 import java.net.http.HttpRequest;
-import com.opencsv.CSVReader;
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonGenerator;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import javafx.application.Platform;
 import java.net.URI;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javafx.application.Platform;
 import java.io.IOException;
 import java.time.Duration;
-import java.net.http.HttpRequest.BodyPublisher;
+import org.example.timeseriesadmin.util.ChunkedUploader;
 import org.example.timeseriesadmin.util.MetadataUtil;
+import org.example.timeseriesadmin.util.XlsxCsvConverter;
 
 public class ObservationsController {
 
@@ -42,6 +32,9 @@ public class ObservationsController {
   @FXML
   private ComboBox<String> metadataComboBox;
 
+  /** The time between two polls of an import job, in milliseconds. */
+  private static final long JOB_POLL_INTERVAL = 500;
+
   private File selectedFile;
   HttpClient httpClient = HttpClient.newBuilder()
       .connectTimeout(Duration.ofSeconds(60))
@@ -99,122 +92,92 @@ public class ObservationsController {
       @Override
       protected Void call() throws Exception {
         updateProgress(0, 1);
-        updateMessage("Converting file to JSON...");
-        File jsonFile = convertFileToJson(selectedFile);
-
-        updateProgress(0.5, 1);
-        updateMessage("Uploading file to server...");
-        sendFileToServer(jsonFile, response -> {
-          if (response.statusCode() == 200) {
-            Platform.runLater(() -> {
-              updateProgress(1, 1);
-              updateMessage("File uploaded and associated with metadata.");
-            });
-          } else {
-            Platform.runLater(() -> {
-              updateProgress(1, 1);
-              updateMessage("Failed to upload file: " + response.body());
-              System.out.println("Failed to upload file: " + response.body());
-            });
-          }
-        });
-        return null;
-      }
-
-      private File convertFileToJson(File file) throws IOException {
-        if (file.getName().endsWith(".csv")) {
-          return convertCsvToJson(file);
-        } else if (file.getName().endsWith(".xlsx")) {
-          return convertExcelToJson(file);
+        // A CSV file goes as is; a workbook is first written as CSV, row by row
+        File csvFile = selectedFile;
+        boolean converted = selectedFile.getName().endsWith(".xlsx");
+        if (converted) {
+          updateMessage("Converting workbook to CSV...");
+          csvFile = File.createTempFile("observations", ".csv");
+          XlsxCsvConverter.convert(selectedFile, csvFile);
+        } else if (!selectedFile.getName().endsWith(".csv")) {
+          throw new IllegalArgumentException("Unsupported file type");
         }
-        throw new IllegalArgumentException("Unsupported file type");
-      }
 
-      private File convertCsvToJson(File csvFile) throws IOException {
-        File jsonFile = new File(csvFile.getAbsolutePath().replace(".csv", ".json"));
-        try (CSVReader reader = new CSVReader(new FileReader(csvFile));
-             OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(jsonFile), StandardCharsets.UTF_8);
-             JsonGenerator jsonGenerator = new JsonFactory().createGenerator(writer)) {
-
-          jsonGenerator.writeStartArray();
-          String[] headers = reader.readNext(); // Lire les en-têtes
-          String[] row;
-          int rowCount = 0;
-          while ((row = reader.readNext()) != null) {
-            jsonGenerator.writeStartObject();
-            for (int i = 0; i < headers.length; i++) {
-              jsonGenerator.writeStringField(headers[i], row[i]);
-            }
-            jsonGenerator.writeEndObject();
-            rowCount++;
-            if (rowCount % 100 == 0) { // update progress every 100 rows
-              updateProgress((double) rowCount / 2000, 1); // assuming a rough estimate of 2000 rows
-            }
+        try {
+          updateProgress(0.1, 1);
+          updateMessage("Uploading file to server...");
+          String ipAddress = org.example.timeseriesadmin.util.IpAddressManager.getInstance().getIpAddress();
+          String baseUrl = "http://"+ipAddress+":8081/fr.ubo.fast.data.provider-0.0.1-SNAPSHOT/data-setup";
+          HttpResponse<String> response = sendFileToServer(csvFile, baseUrl);
+          if (response == null) {
+            return null;
           }
-          jsonGenerator.writeEndArray();
-        } catch (com.opencsv.exceptions.CsvException e) {
-          e.printStackTrace();
-          throw new IOException("Error processing CSV file", e);
-        }
-        return jsonFile;
-      }
-
-      private File convertExcelToJson(File excelFile) throws IOException {
-        File jsonFile = new File(excelFile.getAbsolutePath().replace(".xlsx", ".json"));
-        try (FileInputStream fis = new FileInputStream(excelFile);
-             Workbook workbook = new XSSFWorkbook(fis);
-             OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(jsonFile), StandardCharsets.UTF_8);
-             JsonGenerator jsonGenerator = new JsonFactory().createGenerator(writer)) {
-
-          Sheet sheet = workbook.getSheetAt(0);
-          Iterator<Row> rowIterator = sheet.iterator();
-          jsonGenerator.writeStartArray();
-          Row headerRow = rowIterator.next();
-          List<String> headers = new ArrayList<>();
-          headerRow.forEach(cell -> headers.add(cell.getStringCellValue()));
-          int rowCount = 0;
-          while (rowIterator.hasNext()) {
-            Row row = rowIterator.next();
-            jsonGenerator.writeStartObject();
-            for (int i = 0; i < headers.size(); i++) {
-              Cell cell = row.getCell(i);
-              jsonGenerator.writeStringField(headers.get(i), cell.toString());
-            }
-            jsonGenerator.writeEndObject();
-            rowCount++;
-            if (rowCount % 100 == 0) { // update progress every 100 rows
-              updateProgress((double) rowCount / 2000, 1); // assuming a rough estimate of 2000 rows
-            }
+          if (response.statusCode() == 202) {
+            // The import goes on in the background, as a job followed until it ends
+            waitForImport(baseUrl, response.body().trim());
+          } else {
+            updateProgress(1, 1);
+            updateMessage("Failed to upload file: " + response.body());
+            System.out.println("Failed to upload file: " + response.body());
+          }
+        } finally {
+          if (converted) {
+            csvFile.delete();
           }
-          jsonGenerator.writeEndArray();
         }
-        return jsonFile;
+        return null;
       }
 
-      private void sendFileToServer(File file, java.util.function.Consumer<HttpResponse<String>> callback) throws IOException, java.net.URISyntaxException {
+      private HttpResponse<String> sendFileToServer(File file, String baseUrl) throws IOException, InterruptedException {
         String metadata = metadataComboBox.getValue();
         if (metadata.isEmpty()) {
           Platform.runLater(() -> responseLabelObservations.setText("Metadata selection is required."));
-          return;
+          return null;
+        }
+        // The file goes by chunks, resumed from the last acknowledged offset when the connection drops
+        ChunkedUploader uploader = new ChunkedUploader(httpClient, baseUrl);
+        try {
+          return uploader.upload(file, metadata, "csv", fraction -> updateProgress(0.1 + fraction * 0.6, 1));
+        } catch (IOException e) {
+          e.printStackTrace();
+          Platform.runLater(() -> responseLabelObservations.setText("Error: " + e.getMessage()));
+          return null;
         }
-        //pemite to send data by chunks
-        BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofFile(file.toPath());
+      }
 
-        String ipAddress = org.example.timeseriesadmin.util.IpAddressManager.getInstance().getIpAddress();
+      /**
+       * Polls an import job, showing its counts, until it ends.
+       */
+      private void waitForImport(String baseUrl, String jobId) throws IOException, InterruptedException {
+        ObjectMapper mapper = new ObjectMapper();
         HttpRequest request = HttpRequest.newBuilder()
-            .uri(new URI("http://"+ipAddress+":8081/fr.ubo.fast.data.provider-0.0.1-SNAPSHOT/data-setup/add-observations?name=" + metadata))
-            .timeout(Duration.ofMinutes(5))
-            .header("Content-Type", "application/json")
-            .POST(bodyPublisher)
+            .uri(URI.create(baseUrl + "/jobs/" + jobId))
+            .GET()
             .build();
-
-        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-            .thenAccept(callback)
-            .exceptionally(e -> {
-              e.printStackTrace();
-              Platform.runLater(() -> responseLabelObservations.setText("Error: " + e.getMessage()));
-              return null;
-            });
+        while (true) {
+          HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+          if (response.statusCode() != 200) {
+            updateProgress(1, 1);
+            updateMessage("Failed to follow the import: " + response.body());
+            return;
+          }
+          JsonNode job = mapper.readTree(response.body());
+          String state = job.path("state").asText();
+          if ("completed".equals(state) || "failed".equals(state)) {
+            updateProgress(1, 1);
+            updateMessage(job.path("message").asText());
+            return;
+          }
+          // The bytes read and the rows sent to the database share the bar, the last part left to the final insert
+          long totalBytes = job.path("totalBytes").asLong();
+          long parsed = job.path("parsed").asLong();
+          double read = totalBytes > 0 ? Math.min(1, (double) job.path("bytesRead").asLong() / totalBytes) : 0;
+          double sent = parsed > 0 ? Math.min(1, (double) job.path("staged").asLong() / parsed) : 0;
+          updateProgress(0.7 + 0.25 * (read + sent) / 2, 1);
+          updateMessage(String.format("Importing: %d rows read, %d rejected, %d sent (%d rows/s)",
+              parsed, job.path("rejected").asLong(), job.path("staged").asLong(), job.path("rowsPerSecond").asLong()));
+          Thread.sleep(JOB_POLL_INTERVAL);
+        }
       }
     };
 
@@ -0,0 +1,280 @@
+package org.example.timeseriesadmin.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sends a file of observations through the resumable upload sessions of the data provider.
+ * The file is gzip-compressed while it is read, and the compressed bytes go by chunks, several
+ * of them in flight at once. The chunks in flight are kept until the server acknowledges them:
+ * when one fails, the upload goes on from the offset the server acknowledged, sending again the
+ * kept bytes, so a dropped connection only costs the chunks in flight and the file is never
+ * compressed to disk. When the import on the server lags behind, a chunk is refused with 503:
+ * the upload waits for the time the server asks, then goes on the same way.
+ */
+public class ChunkedUploader {
+
+  /** The size of a chunk, in bytes. */
+  public static final int CHUNK_SIZE = 4 << 20;
+
+  /** The number of chunks sent at the same time. */
+  public static final int PARALLEL_CHUNKS = 4;
+
+  /** The number of failures in a row after which the upload is given up. */
+  private static final int MAX_FAILURES = 5;
+
+  private final HttpClient httpClient;
+  private final String baseUrl;
+
+  /**
+   * @param httpClient the client sending the requests
+   * @param baseUrl the URL of the data-setup resource, such as "http://host:8081/.../data-setup"
+   */
+  public ChunkedUploader(HttpClient httpClient, String baseUrl) {
+    this.httpClient = httpClient;
+    this.baseUrl = baseUrl;
+  }
+
+  /**
+   * A chunk of the compressed upload, kept until the server acknowledges it.
+   */
+  private static class Chunk {
+    final long offset;
+    final byte[] data;
+    /** The number of bytes of the file compressed up to the end of the chunk. */
+    final long fileRead;
+    CompletableFuture<HttpResponse<String>> response;
+
+    Chunk(long offset, byte[] data, long fileRead) {
+      this.offset = offset;
+      this.data = data;
+      this.fileRead = fileRead;
+    }
+
+    long end() {
+      return offset + data.length;
+    }
+  }
+
+  /**
+   * Uploads a file, whose import then goes on in the background on the server.
+   *
+   * @param file the file of observations
+   * @param name the name of the time series
+   * @param format "csv" or "json", the format of the file
+   * @param progress receives the acknowledged fraction of the file
+   * @return the response of the commit, giving the identifier of the import job
+   */
+  public HttpResponse<String> upload(File file, String name, String format, DoubleConsumer progress)
+      throws IOException, InterruptedException {
+    HttpResponse<String> started = httpClient.send(HttpRequest.newBuilder()
+        .uri(URI.create(baseUrl + "/upload-sessions?name=" + URLEncoder.encode(name, StandardCharsets.UTF_8)
+            + "&format=" + format + "&encoding=gzip"))
+        .POST(HttpRequest.BodyPublishers.noBody())
+        .build(), HttpResponse.BodyHandlers.ofString());
+    if (started.statusCode() != 200) {
+      return started;
+    }
+    String sessionUrl = baseUrl + "/upload-sessions/" + started.body().trim();
+
+    long fileLength = Math.max(1, file.length());
+    long length;
+    try (CompressedChunks source = new CompressedChunks(file)) {
+      int failures = 0;
+      Deque<Chunk> inFlight = new ArrayDeque<>();
+      while (true) {
+        while (inFlight.size() < PARALLEL_CHUNKS && !source.isExhausted()) {
+          long offset = source.getProduced();
+          byte[] data = source.next();
+          if (data.length > 0) {
+            Chunk chunk = new Chunk(offset, data, source.getFileRead());
+            send(sessionUrl, chunk);
+            inFlight.add(chunk);
+          }
+        }
+        if (inFlight.isEmpty()) {
+          break;
+        }
+
+        // The oldest chunk in flight is the first one the server misses
+        Chunk oldest = inFlight.peek();
+        HttpResponse<String> response = null;
+        try {
+          response = oldest.response.join();
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+        if (response != null && response.statusCode() == 200) {
+          inFlight.poll();
+          failures = 0;
+          progress.accept((double) oldest.fileRead / fileLength);
+          continue;
+        }
+        if (response != null && response.statusCode() == 404) {
+          return response; // The session expired
+        }
+        boolean busy = response != null && response.statusCode() == 503;
+        if (!busy && ++failures >= MAX_FAILURES) {
+          throw new IOException("Upload failed after " + failures + " attempts");
+        }
+        for (Chunk chunk : inFlight) {
+          chunk.response.cancel(true);
+        }
+        // A busy server is not failing: it only asks to wait for its import
+        Thread.sleep(busy ? 1000L * retryAfter(response) : 1000L * failures);
+        resend(sessionUrl, inFlight, resumeOffset(sessionUrl, oldest.offset));
+      }
+      length = source.getProduced();
+    }
+
+    return httpClient.send(HttpRequest.newBuilder()
+        .uri(URI.create(sessionUrl + "/commit?length=" + length))
+        .timeout(Duration.ofMinutes(5))
+        .POST(HttpRequest.BodyPublishers.noBody())
+        .build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private void send(String sessionUrl, Chunk chunk) {
+    chunk.response = httpClient.sendAsync(HttpRequest.newBuilder()
+        .uri(URI.create(sessionUrl + "?offset=" + chunk.offset))
+        .timeout(Duration.ofMinutes(5))
+        .header("Content-Type", "application/octet-stream")
+        .PUT(HttpRequest.BodyPublishers.ofByteArray(chunk.data))
+        .build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  /**
+   * Sends again the kept chunks from the offset the server acknowledged.
+   */
+  private void resend(String sessionUrl, Deque<Chunk> inFlight, long acknowledged) throws IOException {
+    if (acknowledged < inFlight.peek().offset) {
+      throw new IOException("The server lost acknowledged bytes: " + acknowledged);
+    }
+    while (!inFlight.isEmpty() && inFlight.peek().end() <= acknowledged) {
+      inFlight.poll();
+    }
+    Chunk first = inFlight.peek();
+    if (first != null && first.offset < acknowledged) {
+      inFlight.poll();
+      inFlight.addFirst(new Chunk(acknowledged,
+          Arrays.copyOfRange(first.data, (int) (acknowledged - first.offset), first.data.length), first.fileRead));
+    }
+    for (Chunk chunk : inFlight) {
+      send(sessionUrl, chunk);
+    }
+  }
+
+  /**
+   * Reads the number of seconds a busy server asks to wait before sending again.
+   */
+  private static long retryAfter(HttpResponse<String> response) {
+    try {
+      return Math.max(1, Long.parseLong(response.headers().firstValue("Retry-After").orElse("1").trim()));
+    } catch (NumberFormatException e) {
+      return 1;
+    }
+  }
+
+  /**
+   * Asks the server from where the upload must go on.
+   */
+  private long resumeOffset(String sessionUrl, long acknowledged) throws InterruptedException {
+    try {
+      HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder()
+          .uri(URI.create(sessionUrl))
+          .GET()
+          .build(), HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() == 200) {
+        return Long.parseLong(response.body().trim());
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return acknowledged;
+  }
+
+  /**
+   * Cuts the gzip-compressed bytes of a file into chunks, compressing the file as the chunks
+   * are asked for. The fastest deflate level is used: observations compress well at any level,
+   * and the upload must not wait for the compression.
+   */
+  private static class CompressedChunks implements Closeable {
+
+    private final InputStream input;
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(CHUNK_SIZE + (CHUNK_SIZE >> 2));
+    private final GZIPOutputStream gzip;
+    private final byte[] buffer = new byte[1 << 16];
+    private long fileRead;
+    private long produced;
+    private boolean finished;
+
+    CompressedChunks(File file) throws IOException {
+      input = new FileInputStream(file);
+      gzip = new GZIPOutputStream(compressed, buffer.length) {
+        {
+          def.setLevel(Deflater.BEST_SPEED);
+        }
+      };
+    }
+
+    boolean isExhausted() {
+      return finished && compressed.size() == 0;
+    }
+
+    /** @return the number of compressed bytes handed out */
+    long getProduced() {
+      return produced;
+    }
+
+    /** @return the number of bytes of the file compressed */
+    long getFileRead() {
+      return fileRead;
+    }
+
+    /**
+     * @return the next chunk of at most {@link #CHUNK_SIZE} bytes, the last one possibly empty
+     */
+    byte[] next() throws IOException {
+      while (!finished && compressed.size() < CHUNK_SIZE) {
+        int read = input.read(buffer);
+        if (read < 0) {
+          gzip.finish();
+          finished = true;
+        } else {
+          gzip.write(buffer, 0, read);
+          fileRead += read;
+        }
+      }
+      byte[] all = compressed.toByteArray();
+      int size = Math.min(CHUNK_SIZE, all.length);
+      compressed.reset();
+      compressed.write(all, size, all.length - size);
+      produced += size;
+      return size == all.length ? all : Arrays.copyOf(all, size);
+    }
+
+    @Override
+    public void close() throws IOException {
+      input.close();
+      gzip.close();
+    }
+  }
+}
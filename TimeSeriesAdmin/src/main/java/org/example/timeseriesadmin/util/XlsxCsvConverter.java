@@ -0,0 +1,114 @@
+package org.example.timeseriesadmin.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Writes the first sheet of an XLSX workbook as CSV, reading the sheet XML with SAX so that
+ * the workbook is never held in memory: rows are written as the parser reaches them.
+ * The cells keep the text Excel shows for them, formatted without locale so that numbers keep
+ * a decimal point whatever the language of the machine.
+ */
+public class XlsxCsvConverter {
+
+  private XlsxCsvConverter() {
+  }
+
+  /**
+   * Converts a workbook.
+   *
+   * @param xlsxFile the workbook, whose first row names the columns
+   * @param csvFile the CSV file to write
+   */
+  public static void convert(File xlsxFile, File csvFile) throws IOException {
+    try (OPCPackage pkg = OPCPackage.open(xlsxFile, PackageAccess.READ);
+         Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
+      XSSFReader reader = new XSSFReader(pkg);
+      Iterator<InputStream> sheets = reader.getSheetsData();
+      if (!sheets.hasNext()) {
+        throw new IOException("The workbook has no sheet");
+      }
+      XMLReader parser = XMLHelper.newXMLReader();
+      parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), new ReadOnlySharedStringsTable(pkg),
+          new CsvRowWriter(writer), new DataFormatter(Locale.ROOT), false));
+      try (InputStream sheet = sheets.next()) {
+        parser.parse(new InputSource(sheet));
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+      throw new IOException("Error processing Excel file", e);
+    }
+  }
+
+  /**
+   * Writes each row as a CSV line, leaving empty the cells the sheet skips.
+   */
+  private static class CsvRowWriter implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+    private final Writer writer;
+    private int column;
+
+    CsvRowWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+      column = 0;
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+      write("\n");
+    }
+
+    @Override
+    public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+      int target = cellReference == null ? column : new CellReference(cellReference).getCol();
+      while (column < target) {
+        write(column++ > 0 ? "," : "");
+      }
+      if (column > 0) {
+        write(",");
+      }
+      column++;
+      if (formattedValue.indexOf(',') >= 0 || formattedValue.indexOf('"') >= 0 || formattedValue.indexOf('\n') >= 0) {
+        write("\"" + formattedValue.replace("\"", "\"\"") + "\"");
+      } else {
+        write(formattedValue);
+      }
+    }
+
+    private void write(String text) {
+      try {
+        writer.write(text);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -7,7 +7,6 @@ import javafx.scene.chart.XYChart;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import org.example.timeseriesview.util.ConfigurationService;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.List;
 import java.util.Map;
@@ -69,8 +68,8 @@ public class Controller {
     }
 
     Map<Integer, String> zoomParams = Map.of(period, zoomType);
-    String[] initData = ConfigurationService.getInitView(serverIp, seriesName, zoomType, String.valueOf(Nbv), zoomParams);
-    if (initData == null) {
+    Map<String, Object> initData = ConfigurationService.getInitViewColumns(serverIp, seriesName, zoomType, String.valueOf(Nbv), zoomParams);
+    if (initData == null || !(initData.get("time") instanceof long[])) {
       System.out.println("Failed to load initial view data.");
       return;
     }
@@ -78,41 +77,27 @@ public class Controller {
     // Clear existing data
     lineChart.getData().clear();
 
-    // Create series for each statistic
-    XYChart.Series<Number, Number> minSeries = new XYChart.Series<>();
-    XYChart.Series<Number, Number> maxSeries = new XYChart.Series<>();
-    XYChart.Series<Number, Number> medianSeries = new XYChart.Series<>();
-    XYChart.Series<Number, Number> avgSeries = new XYChart.Series<>();
-    XYChart.Series<Number, Number> quartSeries = new XYChart.Series<>();
-
-    // Parse init data
-    ObjectMapper mapper = new ObjectMapper();
-    for (int i = 0; i < initData.length; i++) {
-      try {
-        Map<String, Object> dataPoint = mapper.readValue(initData[i], Map.class);
-        if (dataPoint.containsKey("MIN")) {
-          minSeries.getData().add(new XYChart.Data<>(i * period, Double.parseDouble(dataPoint.get("MIN").toString())));
-        }
-        if (dataPoint.containsKey("MAX")) {
-          maxSeries.getData().add(new XYChart.Data<>(i * period, Double.parseDouble(dataPoint.get("MAX").toString())));
-        }
-        if (dataPoint.containsKey("MEDIAN")) {
-          medianSeries.getData().add(new XYChart.Data<>(i * period, Double.parseDouble(dataPoint.get("MEDIAN").toString())));
-        }
-        if (dataPoint.containsKey("AVG")) {
-          avgSeries.getData().add(new XYChart.Data<>(i * period, Double.parseDouble(dataPoint.get("AVG").toString())));
-        }
-        if (dataPoint.containsKey("QUART")) {
-          quartSeries.getData().add(new XYChart.Data<>(i * period, Double.parseDouble(dataPoint.get("QUART").toString())));
+    // One series per statistic, placed in seconds from the first bucket
+    long[] times = (long[]) initData.get("time");
+    long firstTime = times.length > 0 ? times[0] : 0;
+    double lastX = 0;
+    for (Map.Entry<String, Object> column : initData.entrySet()) {
+      if (!(column.getValue() instanceof double[]) || column.getKey().endsWith("_COUNT")) {
+        continue;
+      }
+      double[] values = (double[]) column.getValue();
+      XYChart.Series<Number, Number> series = new XYChart.Series<>();
+      series.setName(column.getKey());
+      for (int i = 0; i < values.length; i++) {
+        if (!Double.isNaN(values[i])) {
+          double x = (times[i] - firstTime) / 1000.0;
+          series.getData().add(new XYChart.Data<>(x, values[i]));
+          lastX = Math.max(lastX, x);
         }
-      } catch (Exception e) {
-        e.printStackTrace();
       }
+      lineChart.getData().add(series);
     }
 
-    // Add series to chart
-    lineChart.getData().addAll(minSeries, maxSeries, medianSeries, avgSeries, quartSeries);
-
     // Set axis labels
     NumberAxis xAxis = (NumberAxis) lineChart.getXAxis();
     NumberAxis yAxis = (NumberAxis) lineChart.getYAxis();
@@ -122,7 +107,7 @@ public class Controller {
     // Update xAxis range
     xAxis.setAutoRanging(false);
     xAxis.setLowerBound(0);
-    xAxis.setUpperBound(initData.length * period);
+    xAxis.setUpperBound(Math.max(lastX, period));
     xAxis.setTickUnit(period);
   }
 
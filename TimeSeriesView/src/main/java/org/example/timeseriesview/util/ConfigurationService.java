@@ -70,41 +70,28 @@ public class ConfigurationService {
     return null;
   }
 
-  public static String[] getInitView(String serverIp, String name, String aggregation, String nbv, Map<Integer, String> params) {
+  /**
+   * Asks for the initial view in compressed binary columns: the "time" column gives the start of each bucket in
+   * epoch milliseconds and every statistic comes as a double[].
+   */
+  public static Map<String, Object> getInitViewColumns(String serverIp, String name, String aggregation, String nbv, Map<Integer, String> params) {
     String url = "http://" + serverIp + ":8081/fr.ubo.fast.data.provider-0.0.1-SNAPSHOT/data-setup/get-initview/?nbv=%s&name=%s&aggregation=%s";
     url = String.format(url, nbv, name, aggregation);
 
-    // Convert params map to JSON string
     ObjectMapper mapper = new ObjectMapper();
-    String jsonParams = "";
-    try {
-      jsonParams = mapper.writeValueAsString(params);
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.out.println("Error converting params to JSON: " + e.getMessage());
-      return null;
-    }
-
-    // Add JSON string as a query parameter
-    url += "&zoom=" + java.net.URLEncoder.encode(jsonParams, java.nio.charset.StandardCharsets.UTF_8);
-
     try {
+      url += "&zoom=" + java.net.URLEncoder.encode(mapper.writeValueAsString(params), java.nio.charset.StandardCharsets.UTF_8);
       HttpRequest request = HttpRequest.newBuilder()
           .uri(new java.net.URI(url))
-          .header("Content-Type", "application/json")
+          .header("Accept", SeriesDecoder.COMPRESSED_MEDIA_TYPE)
           .GET()
           .build();
-      HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-      if (response.statusCode() == 200) {
-        String responseBody = response.body();
-        if (responseBody == null || responseBody.isEmpty()) {
-          return null;
+      HttpResponse<java.io.InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+      try (java.io.InputStream body = response.body()) {
+        if (response.statusCode() == 200) {
+          return SeriesDecoder.decode(body);
         }
-        String[] result = responseBody.split("\n");
-        return result;
-      } else {
-        System.out.println("Failed to load metadata: " + response.statusCode() + " - " + response.body());
-        return null;
+        System.out.println("Failed to load view: " + response.statusCode());
       }
     } catch (Exception e) {
       e.printStackTrace();
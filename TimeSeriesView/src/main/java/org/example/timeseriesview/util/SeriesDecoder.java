@@ -0,0 +1,97 @@
+package org.example.timeseriesview.util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the binary columnar format served by the data provider as "application/x-fast-series".
+ * Time columns are decoded to long[] (epoch milliseconds) and value columns to double[] (NaN when missing).
+ */
+public class SeriesDecoder {
+
+  public static final String MEDIA_TYPE = "application/x-fast-series";
+  public static final String COMPRESSED_MEDIA_TYPE = MEDIA_TYPE + ";compression=xor";
+
+  private static final int MAGIC = 0x46415354;
+  private static final int FLAG_COMPRESSED = 1;
+  private static final int TYPE_TIME = 1;
+
+  public static Map<String, Object> decode(InputStream input) throws IOException {
+    DataInputStream in = new DataInputStream(input);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a series stream");
+    }
+    in.readByte(); // version
+    boolean compressed = (in.readByte() & FLAG_COMPRESSED) != 0;
+    int columnCount = in.readUnsignedShort();
+
+    Map<String, Object> columns = new LinkedHashMap<>();
+    for (int c = 0; c < columnCount; c++) {
+      String name = in.readUTF();
+      byte type = in.readByte();
+      int length = in.readInt();
+      if (type == TYPE_TIME) {
+        columns.put(name, readTimes(in, length, compressed));
+      } else {
+        columns.put(name, readValues(in, length, compressed));
+      }
+    }
+    return columns;
+  }
+
+  private static long[] readTimes(DataInputStream in, int length, boolean compressed) throws IOException {
+    long[] times = new long[length];
+    long previous = 0;
+    long previousDelta = 0;
+    for (int i = 0; i < length; i++) {
+      if (!compressed) {
+        times[i] = in.readLong();
+        continue;
+      }
+      long encoded = readVarLong(in);
+      long delta = previousDelta + ((encoded >>> 1) ^ -(encoded & 1));
+      previous += delta;
+      previousDelta = delta;
+      times[i] = previous;
+    }
+    return times;
+  }
+
+  private static double[] readValues(DataInputStream in, int length, boolean compressed) throws IOException {
+    double[] values = new double[length];
+    long previous = 0;
+    for (int i = 0; i < length; i++) {
+      if (!compressed) {
+        values[i] = in.readDouble();
+        continue;
+      }
+      int header = in.readUnsignedByte();
+      long xor = 0;
+      if (header != 0x80) {
+        int leading = header >>> 4;
+        int trailing = header & 0x0F;
+        for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8) {
+          xor |= (long) in.readUnsignedByte() << shift;
+        }
+      }
+      previous ^= xor;
+      values[i] = Double.longBitsToDouble(previous);
+    }
+    return values;
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
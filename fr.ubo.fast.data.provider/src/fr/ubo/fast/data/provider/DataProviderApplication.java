@@ -0,0 +1,18 @@
+package fr.ubo.fast.data.provider;
+
+import javax.servlet.ServletContext;
+import javax.ws.rs.core.Context;
+
+import org.glassfish.jersey.server.ResourceConfig;
+
+/**
+ * The {@link DataProviderApplication} class configures the Jersey application: it scans the resources and binds the
+ * services opened by {@link DataProviderContextListener}.
+ */
+public class DataProviderApplication extends ResourceConfig {
+
+	public DataProviderApplication(@Context ServletContext context) {
+		packages("fr.ubo.fast.data.provider");
+		register(new DataProviderBinder(DataProviderContextListener.getServices(context)));
+	}
+}
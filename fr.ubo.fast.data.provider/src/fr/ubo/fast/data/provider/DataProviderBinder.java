@@ -0,0 +1,43 @@
+package fr.ubo.fast.data.provider;
+
+import org.glassfish.jersey.internal.inject.AbstractBinder;
+
+import fr.ubo.fast.common.model.Database;
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.database.Hypertables;
+import fr.ubo.fast.data.provider.database.SeriesRegistry;
+import fr.ubo.fast.data.provider.service.ConfigBuilds;
+import fr.ubo.fast.data.provider.service.ImportJobs;
+import fr.ubo.fast.data.provider.service.TimeSeriesDataSupplier;
+import fr.ubo.fast.data.provider.service.TimeSeriesDataViews;
+import fr.ubo.fast.data.provider.service.UploadSessions;
+import fr.ubo.fast.data.provider.service.impl.TimeSeriesDataAdminImpl;
+import fr.ubo.fast.data.provider.service.impl.TimeSeriesDataConfigImpl;
+
+/**
+ * The {@link DataProviderBinder} class makes the application-scoped services injectable into the resources.
+ */
+public class DataProviderBinder extends AbstractBinder {
+
+	/** The service graph of the application. */
+	private final DataProviderServices services;
+
+	public DataProviderBinder(DataProviderServices services) {
+		this.services = services;
+	}
+
+	@Override
+	protected void configure() {
+		bind(services.getDatabase()).to(Database.class);
+		bind(services.getConnectionPool()).to(DatabaseConnectionPool.class);
+		bind(services.getSeriesRegistry()).to(SeriesRegistry.class);
+		bind(services.getHypertables()).to(Hypertables.class);
+		bind(services.getSupplierService()).to(TimeSeriesDataSupplier.class);
+		bind(services.getViewsService()).to(TimeSeriesDataViews.class);
+		bind(services.getAdminService()).to(TimeSeriesDataAdminImpl.class);
+		bind(services.getConfigService()).to(TimeSeriesDataConfigImpl.class);
+		bind(services.getConfigBuilds()).to(ConfigBuilds.class);
+		bind(services.getImportJobs()).to(ImportJobs.class);
+		bind(services.getUploadSessions()).to(UploadSessions.class);
+	}
+}
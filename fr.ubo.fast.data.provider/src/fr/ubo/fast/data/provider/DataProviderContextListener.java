@@ -0,0 +1,63 @@
+package fr.ubo.fast.data.provider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import fr.ubo.fast.common.model.Database;
+
+/**
+ * The {@link DataProviderContextListener} class opens the resources shared by the whole web application when it
+ * starts and releases them when it stops.
+ */
+public class DataProviderContextListener implements ServletContextListener {
+
+	/** The (internal) path of the database properties file. */
+	public static final String DATABASE_PROPERTIES_FILE = "WEB-INF/conf/database.properties";
+
+	/** The name of the servlet context attribute holding the service graph. */
+	private static final String SERVICES_ATTRIBUTE = DataProviderServices.class.getName();
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		Database database = null;
+		Properties properties = new Properties();
+
+		try (InputStream input = context.getResourceAsStream(DATABASE_PROPERTIES_FILE)) {
+			database = new Database(input);
+		} catch (IOException exception) {
+			exception.printStackTrace();
+		}
+		try (InputStream input = context.getResourceAsStream(DATABASE_PROPERTIES_FILE)) {
+			properties.load(input);
+		} catch (IOException exception) {
+			exception.printStackTrace();
+		}
+
+		context.setAttribute(SERVICES_ATTRIBUTE, new DataProviderServices(database, properties));
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		DataProviderServices services = getServices(event.getServletContext());
+		if (services != null) {
+			services.close();
+		}
+		event.getServletContext().removeAttribute(SERVICES_ATTRIBUTE);
+	}
+
+	/**
+	 * Gives the service graph of the application.
+	 *
+	 * @param context : The servlet context of the application.
+	 * @return The services opened when the application started.
+	 */
+	public static DataProviderServices getServices(ServletContext context) {
+		return (DataProviderServices) context.getAttribute(SERVICES_ATTRIBUTE);
+	}
+}
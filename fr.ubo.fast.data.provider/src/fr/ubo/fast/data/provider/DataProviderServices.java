@@ -0,0 +1,141 @@
+package fr.ubo.fast.data.provider;
+
+import java.util.Properties;
+
+import fr.ubo.fast.common.model.Database;
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.database.Hypertables;
+import fr.ubo.fast.data.provider.database.SeriesRegistry;
+import fr.ubo.fast.data.provider.ingest.ImportSettings;
+import fr.ubo.fast.data.provider.service.ConfigBuilds;
+import fr.ubo.fast.data.provider.service.ImportJobs;
+import fr.ubo.fast.data.provider.service.TimeSeriesDataSupplier;
+import fr.ubo.fast.data.provider.service.TimeSeriesDataViews;
+import fr.ubo.fast.data.provider.service.UploadSessions;
+import fr.ubo.fast.data.provider.service.impl.TimeSeriesDataAdminImpl;
+import fr.ubo.fast.data.provider.service.impl.TimeSeriesDataConfigImpl;
+
+/**
+ * The {@link DataProviderServices} class holds the application-scoped service graph: it is created once when the web
+ * application starts and closed when it stops, so the caches and executors of the services outlive the requests.
+ */
+public class DataProviderServices implements AutoCloseable {
+
+	/** The database that contains the time series data. */
+	private final Database database;
+
+	/** The shared connection pool. */
+	private final DatabaseConnectionPool pool;
+
+	/** The known time series. */
+	private final SeriesRegistry registry;
+
+	/** The observations tables as hypertables. */
+	private final Hypertables hypertables;
+
+	/** An access to supplier of data. */
+	private final TimeSeriesDataSupplier supplierService;
+
+	/** An access to views. */
+	private final TimeSeriesDataViews viewsService;
+
+	/** An access to setup. */
+	private final TimeSeriesDataAdminImpl adminService;
+
+	/** An access to configuration. */
+	private final TimeSeriesDataConfigImpl configService;
+
+	/** The builds of configurations running in the background. */
+	private final ConfigBuilds configBuilds;
+
+	/** The imports of observations running in the background. */
+	private final ImportJobs importJobs;
+
+	/** The resumable uploads of observations. */
+	private final UploadSessions uploadSessions;
+
+	/**
+	 * Creates the connection pool, the series registry and every service using them.
+	 *
+	 * @param database   : The database parameters.
+	 * @param properties : The database properties, including the pool, import and build settings.
+	 */
+	public DataProviderServices(Database database, Properties properties) {
+		this.database = database;
+		this.pool = new DatabaseConnectionPool(database, properties);
+		ImportSettings importSettings = new ImportSettings(properties);
+		try {
+			importSettings.checkConnections(pool.getMaximumSize(), ConfigBuilds.getThreads(properties));
+		} catch (IllegalStateException e) {
+			pool.close();
+			throw e;
+		}
+		this.registry = new SeriesRegistry(pool);
+		this.hypertables = new Hypertables(pool, registry, properties);
+		this.supplierService = new TimeSeriesDataSupplier(pool, registry);
+		this.viewsService = new TimeSeriesDataViews(pool, supplierService);
+		this.configService = new TimeSeriesDataConfigImpl(pool, registry, hypertables);
+		this.adminService = new TimeSeriesDataAdminImpl(pool, database, registry, importSettings, configService,
+				viewsService, hypertables);
+		this.configBuilds = new ConfigBuilds(configService, pool, properties);
+		this.importJobs = new ImportJobs(adminService, importSettings);
+		this.uploadSessions = new UploadSessions(importJobs);
+	}
+
+	public Database getDatabase() {
+		return database;
+	}
+
+	public DatabaseConnectionPool getConnectionPool() {
+		return pool;
+	}
+
+	public SeriesRegistry getSeriesRegistry() {
+		return registry;
+	}
+
+	public Hypertables getHypertables() {
+		return hypertables;
+	}
+
+	public TimeSeriesDataSupplier getSupplierService() {
+		return supplierService;
+	}
+
+	public TimeSeriesDataViews getViewsService() {
+		return viewsService;
+	}
+
+	public TimeSeriesDataAdminImpl getAdminService() {
+		return adminService;
+	}
+
+	public TimeSeriesDataConfigImpl getConfigService() {
+		return configService;
+	}
+
+	public ConfigBuilds getConfigBuilds() {
+		return configBuilds;
+	}
+
+	public ImportJobs getImportJobs() {
+		return importJobs;
+	}
+
+	public UploadSessions getUploadSessions() {
+		return uploadSessions;
+	}
+
+	/**
+	 * Stops the background work of the services, then closes the connection pool.
+	 */
+	@Override
+	public void close() {
+		uploadSessions.close();
+		importJobs.close();
+		adminService.close();
+		configBuilds.close();
+		viewsService.close();
+		pool.close();
+	}
+}
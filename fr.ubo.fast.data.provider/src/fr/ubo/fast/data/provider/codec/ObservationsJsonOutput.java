@@ -0,0 +1,103 @@
+package fr.ubo.fast.data.provider.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+
+/**
+ * The {@link ObservationsJsonOutput} class writes the rows of a query straight from a forward-only cursor to the
+ * response, so that the memory used does not depend on the time range.
+ * <p>
+ * The JSON is the one of {@code DataStructureHelper.convertMapToJsonString}: an array holding, for each row, an object
+ * whose only key is the time and whose value is the array of the values. The query must be ordered by time.
+ */
+public class ObservationsJsonOutput implements StreamingOutput {
+
+	/** The zone the times are written in, as {@code DataProviderDatabaseHelper} does. */
+	private static final ZoneId ZONE = ZoneId.of("Europe/Brussels");
+
+	/** Creates the JSON generators. */
+	private static final JsonFactory JSON = new JsonFactory();
+
+	/** The shared connection pool. */
+	private final DatabaseConnectionPool pool;
+
+	/** The number of rows fetched per round trip. */
+	private final int fetchSize;
+
+	/** The query, ordered by time. */
+	private final String query;
+
+	/** The time column of the query. */
+	private final String timeColumn;
+
+	/** The value columns of the query. */
+	private final String[] valueColumns;
+
+	/**
+	 * Creates the output. The query only runs when the response is written.
+	 *
+	 * @param pool         : The shared connection pool.
+	 * @param fetchSize    : The number of rows fetched per round trip.
+	 * @param query        : The query, ordered by time.
+	 * @param timeColumn   : The time column of the query.
+	 * @param valueColumns : The value columns of the query.
+	 */
+	public ObservationsJsonOutput(DatabaseConnectionPool pool, int fetchSize, String query, String timeColumn,
+			String... valueColumns) {
+		this.pool = pool;
+		this.fetchSize = fetchSize;
+		this.query = query;
+		this.timeColumn = timeColumn;
+		this.valueColumns = valueColumns;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		try (Connection connection = pool.getConnection()) {
+			// Cursors only stream inside a transaction
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY)) {
+				statement.setFetchSize(fetchSize);
+				try (ResultSet rs = statement.executeQuery();
+						JsonGenerator generator = JSON.createGenerator(output, JsonEncoding.UTF8)) {
+					// The response stream belongs to the container
+					generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+					generator.writeStartArray();
+					while (rs.next()) {
+						OffsetDateTime time = OffsetDateTime.ofInstant(rs.getTimestamp(timeColumn, utc).toInstant(), ZONE);
+						generator.writeStartObject();
+						generator.writeArrayFieldStart(time.toString());
+						for (String column : valueColumns) {
+							generator.writeNumber(rs.getDouble(column));
+						}
+						generator.writeEndArray();
+						generator.writeEndObject();
+					}
+					generator.writeEndArray();
+				}
+			}
+		} catch (SQLException exception) {
+			exception.printStackTrace();
+			throw new WebApplicationException(exception);
+		}
+	}
+}
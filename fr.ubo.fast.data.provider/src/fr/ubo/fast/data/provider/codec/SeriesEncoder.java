@@ -0,0 +1,192 @@
+package fr.ubo.fast.data.provider.codec;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * The {@link SeriesEncoder} class writes series in the compact binary columnar format served as
+ * {@value #MEDIA_TYPE}.
+ * <p>
+ * The stream starts with the magic number "FAST", a version byte, a flags byte and the number of columns. Each column
+ * then gives its name (modified UTF-8), its type (0 for doubles, 1 for epoch milliseconds), its length and its
+ * values, all big-endian. When the {@link #FLAG_COMPRESSED} flag is set, times are written as zigzag varints of their
+ * delta-of-delta and doubles as the non-zero bytes of their XOR with the previous value, preceded by a byte giving
+ * the number of leading (high nibble) and trailing (low nibble) zero bytes.
+ */
+public class SeriesEncoder {
+
+	/** The media type of the binary format. */
+	public static final String MEDIA_TYPE = "application/x-fast-series";
+
+	/** The media type parameter asking for the compressed variant, as in "application/x-fast-series;compression=xor". */
+	public static final String COMPRESSION_PARAMETER = "compression";
+
+	/** The only supported compression. */
+	public static final String XOR_COMPRESSION = "xor";
+
+	/** The magic number starting the stream. */
+	public static final int MAGIC = 0x46415354;
+
+	/** The version of the format. */
+	public static final byte VERSION = 1;
+
+	/** The flag set when the columns are compressed. */
+	public static final byte FLAG_COMPRESSED = 1;
+
+	/** The type of a column of doubles. */
+	public static final byte TYPE_DOUBLE = 0;
+
+	/** The type of a column of epoch milliseconds. */
+	public static final byte TYPE_TIME = 1;
+
+	/** The output. */
+	private final DataOutputStream out;
+
+	/** Whether the columns are compressed. */
+	private final boolean compressed;
+
+	/**
+	 * Creates the encoder and writes the header.
+	 *
+	 * @param output      : The output.
+	 * @param compressed  : Whether the columns are compressed.
+	 * @param columnCount : The number of columns that will be written.
+	 * @throws IOException if the header cannot be written.
+	 */
+	public SeriesEncoder(OutputStream output, boolean compressed, int columnCount) throws IOException {
+		this.out = new DataOutputStream(output);
+		this.compressed = compressed;
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(compressed ? FLAG_COMPRESSED : 0);
+		out.writeShort(columnCount);
+	}
+
+	/**
+	 * Writes a column of epoch milliseconds.
+	 *
+	 * @param name   : The name of the column.
+	 * @param times  : The values.
+	 * @param length : The number of values to write.
+	 * @throws IOException if the column cannot be written.
+	 */
+	public void writeTimes(String name, long[] times, int length) throws IOException {
+		out.writeUTF(name);
+		out.writeByte(TYPE_TIME);
+		out.writeInt(length);
+		if (!compressed) {
+			for (int i = 0; i < length; i++) {
+				out.writeLong(times[i]);
+			}
+			return;
+		}
+		long previous = 0;
+		long previousDelta = 0;
+		for (int i = 0; i < length; i++) {
+			long delta = times[i] - previous;
+			writeVarLong(zigzag(delta - previousDelta));
+			previous = times[i];
+			previousDelta = delta;
+		}
+	}
+
+	/**
+	 * Writes a column of doubles.
+	 *
+	 * @param name   : The name of the column.
+	 * @param values : The values, NaN for a missing one.
+	 * @param length : The number of values to write.
+	 * @throws IOException if the column cannot be written.
+	 */
+	public void writeValues(String name, double[] values, int length) throws IOException {
+		out.writeUTF(name);
+		out.writeByte(TYPE_DOUBLE);
+		out.writeInt(length);
+		if (!compressed) {
+			for (int i = 0; i < length; i++) {
+				out.writeDouble(values[i]);
+			}
+			return;
+		}
+		long previous = 0;
+		for (int i = 0; i < length; i++) {
+			long bits = Double.doubleToRawLongBits(values[i]);
+			long xor = bits ^ previous;
+			previous = bits;
+			if (xor == 0) {
+				out.writeByte(0x80);
+				continue;
+			}
+			int leading = Long.numberOfLeadingZeros(xor) / 8;
+			int trailing = Long.numberOfTrailingZeros(xor) / 8;
+			out.writeByte((leading << 4) | trailing);
+			for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8) {
+				out.writeByte((int) (xor >>> shift));
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes.
+	 *
+	 * @throws IOException if the output fails.
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Checks whether a request accepts the binary format.
+	 *
+	 * @param acceptable : The acceptable media types of the request, by preference.
+	 * @return The binary media type to answer with, carrying the compression parameter when it was asked for, or
+	 *         null if the request prefers another type.
+	 */
+	public static MediaType negotiate(List<MediaType> acceptable) {
+		MediaType binary = MediaType.valueOf(MEDIA_TYPE);
+		for (MediaType type : acceptable) {
+			if (type.isWildcardType() || type.isWildcardSubtype()) {
+				// Clients which do not ask for it keep JSON
+				return null;
+			}
+			if (binary.isCompatible(type)) {
+				// Only the compression parameter is kept: the response must not echo a quality factor
+				return isCompressed(type)
+						? new MediaType(binary.getType(), binary.getSubtype(),
+								Collections.singletonMap(COMPRESSION_PARAMETER, XOR_COMPRESSION))
+						: binary;
+			}
+			if (MediaType.APPLICATION_JSON_TYPE.isCompatible(type)) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether an accepted binary media type asks for compression.
+	 *
+	 * @param type : The accepted media type.
+	 * @return true if the columns must be compressed.
+	 */
+	public static boolean isCompressed(MediaType type) {
+		return XOR_COMPRESSION.equalsIgnoreCase(type.getParameters().get(COMPRESSION_PARAMETER));
+	}
+
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+}
@@ -0,0 +1,102 @@
+package fr.ubo.fast.data.provider.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import fr.ubo.fast.data.provider.model.SeriesFrame;
+
+/**
+ * The {@link SeriesFrameWriter} class serializes a {@link SeriesFrame} straight from its arrays, either as a JSON
+ * object giving the "time" array and one array per statistic, where null marks a bucket without value, or in the
+ * binary columnar format of {@link SeriesEncoder}.
+ */
+@Provider
+@Produces({ MediaType.APPLICATION_JSON, SeriesEncoder.MEDIA_TYPE })
+public class SeriesFrameWriter implements MessageBodyWriter<SeriesFrame> {
+
+	/** The name of the column of the bucket times. */
+	public static final String TIME_COLUMN = "time";
+
+	/** Creates the JSON generators. */
+	private static final JsonFactory JSON = new JsonFactory();
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return SeriesFrame.class.isAssignableFrom(type);
+	}
+
+	@Override
+	public void writeTo(SeriesFrame frame, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+			throws IOException, WebApplicationException {
+		if (mediaType != null && mediaType.isCompatible(MediaType.valueOf(SeriesEncoder.MEDIA_TYPE))) {
+			writeBinary(frame, SeriesEncoder.isCompressed(mediaType), entityStream);
+		} else {
+			writeJson(frame, entityStream);
+		}
+	}
+
+	/**
+	 * Writes a frame in the binary columnar format.
+	 *
+	 * @param frame      : The frame.
+	 * @param compressed : Whether the columns are compressed.
+	 * @param output     : The output.
+	 * @throws IOException if the output fails.
+	 */
+	public static void writeBinary(SeriesFrame frame, boolean compressed, OutputStream output) throws IOException {
+		SeriesEncoder encoder = new SeriesEncoder(output, compressed, frame.getColumnNames().size() + 1);
+		encoder.writeTimes(TIME_COLUMN, frame.getTimes(), frame.getSize());
+		for (String column : frame.getColumnNames()) {
+			encoder.writeValues(column, frame.getColumn(column), frame.getSize());
+		}
+		encoder.flush();
+	}
+
+	/**
+	 * Writes a frame as a JSON object of arrays.
+	 *
+	 * @param frame  : The frame.
+	 * @param output : The output.
+	 * @throws IOException if the output fails.
+	 */
+	public static void writeJson(SeriesFrame frame, OutputStream output) throws IOException {
+		try (JsonGenerator generator = JSON.createGenerator(output, JsonEncoding.UTF8)) {
+			// The response stream belongs to the container
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartObject();
+			generator.writeArrayFieldStart(TIME_COLUMN);
+			long[] times = frame.getTimes();
+			for (int i = 0; i < frame.getSize(); i++) {
+				generator.writeNumber(times[i]);
+			}
+			generator.writeEndArray();
+			for (String column : frame.getColumnNames()) {
+				generator.writeArrayFieldStart(column);
+				double[] values = frame.getColumn(column);
+				for (int i = 0; i < frame.getSize(); i++) {
+					if (Double.isNaN(values[i])) {
+						generator.writeNull();
+					} else {
+						generator.writeNumber(values[i]);
+					}
+				}
+				generator.writeEndArray();
+			}
+			generator.writeEndObject();
+		}
+	}
+}
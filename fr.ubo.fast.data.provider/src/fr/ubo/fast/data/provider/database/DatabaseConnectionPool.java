@@ -0,0 +1,142 @@
+package fr.ubo.fast.data.provider.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import fr.ubo.fast.common.model.Database;
+
+/**
+ * The {@link DatabaseConnectionPool} class holds the bounded pool of JDBC connections shared by the whole application.
+ */
+public class DatabaseConnectionPool implements AutoCloseable {
+
+	/** The property giving the minimum number of idle connections kept in the pool. */
+	public static final String POOL_MIN_SIZE = "DATABASE_POOL_MIN_SIZE";
+
+	/** The property giving the maximum number of connections opened by the pool. */
+	public static final String POOL_MAX_SIZE = "DATABASE_POOL_MAX_SIZE";
+
+	/** The property giving the time (ms) after which an idle connection is closed. */
+	public static final String POOL_IDLE_TIMEOUT = "DATABASE_POOL_IDLE_TIMEOUT";
+
+	/** The property giving the query used to check a connection before handing it out. */
+	public static final String POOL_VALIDATION_QUERY = "DATABASE_POOL_VALIDATION_QUERY";
+
+	/** The property giving the time (ms) a caller waits for a free connection before failing. */
+	public static final String POOL_ACQUIRE_TIMEOUT = "DATABASE_POOL_ACQUIRE_TIMEOUT";
+
+	/** The property giving the number of executions after which the driver prepares a statement on the server. */
+	public static final String PREPARE_THRESHOLD = "DATABASE_PREPARE_THRESHOLD";
+
+	/** The property giving the number of prepared statements the driver keeps per connection. */
+	public static final String PREPARED_STATEMENT_CACHE_SIZE = "DATABASE_PREPARED_STATEMENT_CACHE_SIZE";
+
+	/** The JDBC URL template. */
+	private static final String DATABASE_URL_TEMPLATE = "jdbc:%s://%s:%d/%s";
+
+	/** The underlying data source. */
+	private final HikariDataSource dataSource;
+
+	/** The number of rows fetched per round trip by cursors. */
+	private final int fetchSize;
+
+	/**
+	 * Creates the pool and opens its minimum number of connections.
+	 *
+	 * @param database   : The database parameters.
+	 * @param properties : The database properties, including the pool settings.
+	 */
+	public DatabaseConnectionPool(Database database, Properties properties) {
+		HikariConfig config = new HikariConfig();
+		config.setPoolName("time-series-data-provider");
+		config.setDriverClassName("org.postgresql.Driver");
+		config.setJdbcUrl(String.format(DATABASE_URL_TEMPLATE, database.getManagementSystem(), database.getHostname(),
+				database.getPort(), database.getName()));
+		config.setUsername(database.getUsername());
+		config.setPassword(database.getPassword());
+		config.setMinimumIdle(getInt(properties, POOL_MIN_SIZE, 2));
+		config.setMaximumPoolSize(getInt(properties, POOL_MAX_SIZE, 10));
+		config.setIdleTimeout(getInt(properties, POOL_IDLE_TIMEOUT, 600000));
+		config.setConnectionTimeout(getInt(properties, POOL_ACQUIRE_TIMEOUT, 30000));
+		String validationQuery = properties.getProperty(POOL_VALIDATION_QUERY);
+		if (validationQuery != null && !validationQuery.trim().isEmpty()) {
+			config.setConnectionTestQuery(validationQuery.trim());
+		}
+		config.setRegisterMbeans(true);
+		// The statements of QueryCatalog keep the same text, so each connection reuses their server-side plans
+		config.addDataSourceProperty("prepareThreshold", String.valueOf(getInt(properties, PREPARE_THRESHOLD, 1)));
+		config.addDataSourceProperty("preparedStatementCacheQueries",
+				String.valueOf(getInt(properties, PREPARED_STATEMENT_CACHE_SIZE, 256)));
+
+		this.dataSource = new HikariDataSource(config);
+		this.fetchSize = database.getFetchSize();
+	}
+
+	/**
+	 * Borrows a connection from the pool. It must be closed to be given back.
+	 *
+	 * @return A pooled connection.
+	 * @throws SQLException if no connection is available before the acquire timeout.
+	 */
+	public Connection getConnection() throws SQLException {
+		return dataSource.getConnection();
+	}
+
+	/**
+	 * @return The number of rows fetched per round trip by cursors.
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @return The largest number of connections the pool opens.
+	 */
+	public int getMaximumSize() {
+		return dataSource.getMaximumPoolSize();
+	}
+
+	/**
+	 * Describes the current usage of the pool.
+	 *
+	 * @return A string contents the active, idle, total and waiting counts.
+	 */
+	public String getUsage() {
+		HikariPoolMXBean bean = dataSource.getHikariPoolMXBean();
+		if (bean == null) {
+			return "closed: true\n";
+		}
+		return String.format("active: %d\nidle: %d\ntotal: %d\nwaiting: %d\nmin: %d\nmax: %d\n",
+				bean.getActiveConnections(), bean.getIdleConnections(), bean.getTotalConnections(),
+				bean.getThreadsAwaitingConnection(), dataSource.getMinimumIdle(), dataSource.getMaximumPoolSize());
+	}
+
+	/**
+	 * Closes every connection of the pool.
+	 */
+	@Override
+	public void close() {
+		dataSource.close();
+	}
+
+	/**
+	 * Reads an integer property.
+	 *
+	 * @param properties   : The properties.
+	 * @param key          : The property name.
+	 * @param defaultValue : The value used when the property is missing.
+	 * @return The property value.
+	 */
+	private static int getInt(Properties properties, String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
+	}
+}
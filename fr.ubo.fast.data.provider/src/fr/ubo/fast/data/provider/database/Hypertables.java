@@ -0,0 +1,346 @@
+package fr.ubo.fast.data.provider.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import fr.ubo.fast.data.provider.model.SeriesStorage;
+
+/**
+ * The {@link Hypertables} class manages the observations tables as TimescaleDB hypertables, split into chunks of a
+ * time range each, so the scans of a time range only read the chunks overlapping it.
+ * <p>
+ * The width of the chunks follows the period of the series: a chunk holds about {@value #DEFAULT_CHUNK_ROWS}
+ * observations unless set otherwise, which keeps the chunks read by the recent views in memory without planning over
+ * thousands of them. Without TimescaleDB, the observations tables stay plain tables.
+ */
+public class Hypertables {
+
+	/** The property giving the number of observations a chunk is sized for. */
+	public static final String CHUNK_ROWS = "HYPERTABLE_CHUNK_ROWS";
+
+	/** The number of observations a chunk is sized for when the property is missing. */
+	public static final int DEFAULT_CHUNK_ROWS = 1000000;
+
+	/** The width of the chunks of a series without period, in seconds. */
+	private static final long DEFAULT_CHUNK_INTERVAL = TimeUnit.DAYS.toSeconds(7);
+
+	/** The narrowest chunks, in seconds. */
+	private static final long MIN_CHUNK_INTERVAL = TimeUnit.HOURS.toSeconds(1);
+
+	/** The widest chunks, in seconds. */
+	private static final long MAX_CHUNK_INTERVAL = TimeUnit.DAYS.toSeconds(366);
+
+	/** The suffix of the hypertable an observations table is copied to while it is migrated. */
+	private static final String MIGRATION_SUFFIX = "_migrating";
+
+	/** The shared connection pool. */
+	private final DatabaseConnectionPool pool;
+
+	/** The known time series. */
+	private final SeriesRegistry registry;
+
+	/** The number of observations a chunk is sized for. */
+	private final long chunkRows;
+
+	/** Whether TimescaleDB is installed, null until checked. */
+	private volatile Boolean available;
+
+	/**
+	 * Reads the settings of the chunks.
+	 *
+	 * @param pool       : The shared connection pool.
+	 * @param registry   : The known time series.
+	 * @param properties : The database properties.
+	 */
+	public Hypertables(DatabaseConnectionPool pool, SeriesRegistry registry, Properties properties) {
+		this.pool = pool;
+		this.registry = registry;
+		String value = properties.getProperty(CHUNK_ROWS);
+		this.chunkRows = value == null || value.trim().isEmpty() ? DEFAULT_CHUNK_ROWS
+				: Math.max(Long.parseLong(value.trim()), 1);
+	}
+
+	/**
+	 * Gives the width of the chunks of a time series.
+	 *
+	 * @param period : The time between two observations, in seconds, 0 or less if unknown.
+	 * @return The width of the chunks, in seconds.
+	 */
+	public long chunkInterval(double period) {
+		if (!(period > 0)) {
+			return DEFAULT_CHUNK_INTERVAL;
+		}
+		double interval = period * chunkRows;
+		return (long) Math.max(MIN_CHUNK_INTERVAL, Math.min(MAX_CHUNK_INTERVAL, interval));
+	}
+
+	/**
+	 * Creates the observations table of a time series if it does not exist, as a hypertable when TimescaleDB is
+	 * installed.
+	 *
+	 * @param conn   : The connection to use, outside of a transaction.
+	 * @param table  : The observations table, from {@link SeriesRegistry}.
+	 * @param period : The time between two observations, in seconds, 0 or less if unknown.
+	 * @throws SQLException if the table cannot be created.
+	 */
+	public void createTable(Connection conn, String table, double period) throws SQLException {
+		if (exists(conn, table)) {
+			return;
+		}
+		try (Statement statement = conn.createStatement()) {
+			statement.execute(String.format(QueryCatalog.CREATE_OBSERVATIONS_TEMPLATE, table));
+		}
+		if (isAvailable(conn)) {
+			try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.CREATE_HYPERTABLE)) {
+				statement.setString(1, table);
+				statement.setLong(2, chunkInterval(period));
+				statement.execute();
+			}
+		}
+	}
+
+	/**
+	 * Tells whether an observations table is a hypertable.
+	 *
+	 * @param conn  : The connection to use.
+	 * @param table : The observations table, from {@link SeriesRegistry}.
+	 * @return true if TimescaleDB is installed and the table is a hypertable.
+	 * @throws SQLException if the catalog cannot be read.
+	 */
+	public boolean isHypertable(Connection conn, String table) throws SQLException {
+		return isAvailable(conn) && chunkInterval(conn, table) > 0;
+	}
+
+	/**
+	 * Turns the observations table of a time series into a hypertable while it is in use, or sets the width of the
+	 * next chunks of a hypertable from the period of the series.
+	 * <p>
+	 * The observations are copied to a new hypertable one chunk at a time, each in its own transaction, while the table
+	 * is read and written as usual. The writes are then blocked, reads going on, while the observations added or
+	 * removed in the meantime are brought over, and the hypertable replaces the table.
+	 *
+	 * @param name : The name of the time series.
+	 * @return false if TimescaleDB is not installed, true otherwise.
+	 * @throws SQLException if the migration fails, the table being left as it was.
+	 * @throws IllegalArgumentException if the time series is unknown.
+	 */
+	public boolean migrate(String name) throws SQLException {
+		String table = registry.observationsTable(name);
+		try (Connection conn = pool.getConnection()) {
+			if (!isAvailable(conn)) {
+				return false;
+			}
+			long interval = chunkInterval(period(conn, name));
+			if (chunkInterval(conn, table) > 0) {
+				try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SET_CHUNK_INTERVAL)) {
+					statement.setString(1, table);
+					statement.setLong(2, interval);
+					statement.execute();
+				}
+				return true;
+			}
+
+			String target = table + MIGRATION_SUFFIX;
+			try (Statement statement = conn.createStatement()) {
+				statement.execute(String.format(QueryCatalog.DROP_TABLE_TEMPLATE, target));
+				statement.execute(String.format(QueryCatalog.CREATE_TABLE_LIKE_TEMPLATE, target, table));
+			}
+			try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.CREATE_HYPERTABLE)) {
+				statement.setString(1, target);
+				statement.setLong(2, interval);
+				statement.execute();
+			}
+
+			try {
+				copyByChunks(conn, table, target, interval);
+				swap(conn, table, target);
+			} catch (SQLException e) {
+				if (!conn.getAutoCommit()) {
+					conn.rollback();
+					conn.setAutoCommit(true);
+				}
+				try (Statement statement = conn.createStatement()) {
+					statement.execute(String.format(QueryCatalog.DROP_TABLE_TEMPLATE, target));
+				}
+				throw e;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Describes the storage of the observations of a time series.
+	 *
+	 * @param name : The name of the time series.
+	 * @return The description, or null if the time series has no observations table yet.
+	 * @throws SQLException if the catalog cannot be read.
+	 * @throws IllegalArgumentException if the time series is unknown.
+	 */
+	public SeriesStorage describe(String name) throws SQLException {
+		String table = registry.observationsTable(name);
+		try (Connection conn = pool.getConnection()) {
+			return describe(conn, name, table);
+		}
+	}
+
+	/**
+	 * Describes the storage of the observations of every time series.
+	 *
+	 * @return The descriptions, for the time series having an observations table.
+	 * @throws SQLException if the catalog cannot be read.
+	 */
+	public List<SeriesStorage> describeAll() throws SQLException {
+		List<SeriesStorage> storages = new ArrayList<>();
+		try (Connection conn = pool.getConnection()) {
+			List<String> names = new ArrayList<>();
+			try (Statement statement = conn.createStatement();
+					ResultSet rs = statement.executeQuery(QueryCatalog.SELECT_OBSERVATION_NAMES)) {
+				while (rs.next()) {
+					names.add(rs.getString(1));
+				}
+			}
+			for (String name : names) {
+				String table;
+				try {
+					table = registry.observationsTable(name);
+				} catch (IllegalArgumentException e) {
+					continue; // A name which cannot be a table name has no observations table
+				}
+				SeriesStorage storage = describe(conn, name, table);
+				if (storage != null) {
+					storages.add(storage);
+				}
+			}
+		}
+		return storages;
+	}
+
+	private SeriesStorage describe(Connection conn, String name, String table) throws SQLException {
+		if (!exists(conn, table)) {
+			return null;
+		}
+		long interval = isAvailable(conn) ? chunkInterval(conn, table) : 0;
+		SeriesStorage storage;
+		try (PreparedStatement statement = conn.prepareStatement(
+				interval > 0 ? QueryCatalog.SELECT_HYPERTABLE_SIZE : QueryCatalog.SELECT_TABLE_SIZE)) {
+			statement.setString(1, table);
+			ResultSet rs = statement.executeQuery();
+			rs.next();
+			storage = new SeriesStorage(name, interval > 0, interval, rs.getLong(1));
+		}
+		if (interval > 0) {
+			try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_CHUNKS)) {
+				statement.setString(1, table);
+				statement.setString(2, table.toLowerCase());
+				ResultSet rs = statement.executeQuery();
+				while (rs.next()) {
+					storage.addChunk(new SeriesStorage.Chunk(rs.getString("chunk_name"),
+							String.valueOf(rs.getObject("range_start", OffsetDateTime.class)),
+							String.valueOf(rs.getObject("range_end", OffsetDateTime.class)), rs.getLong("total_bytes")));
+				}
+			}
+		}
+		return storage;
+	}
+
+	/**
+	 * Copies the observations of a table to the hypertable replacing it, one chunk at a time.
+	 */
+	private static void copyByChunks(Connection conn, String table, String target, long interval)
+			throws SQLException {
+		OffsetDateTime first = null;
+		OffsetDateTime last = null;
+		try (PreparedStatement statement = conn.prepareStatement(
+				String.format(QueryCatalog.SELECT_OBSERVATIONS_BOUNDS_TEMPLATE, table))) {
+			ResultSet rs = statement.executeQuery();
+			if (rs.next()) {
+				first = rs.getObject("min_time", OffsetDateTime.class);
+				last = rs.getObject("max_time", OffsetDateTime.class);
+			}
+		}
+		if (first == null || last == null) {
+			return;
+		}
+		try (PreparedStatement statement = conn.prepareStatement(
+				String.format(QueryCatalog.COPY_OBSERVATIONS_RANGE_TEMPLATE, target, table))) {
+			for (OffsetDateTime from = first; !from.isAfter(last); from = from.plusSeconds(interval)) {
+				statement.setObject(1, from);
+				statement.setObject(2, from.plusSeconds(interval));
+				statement.executeUpdate();
+			}
+		}
+	}
+
+	/**
+	 * Brings the changes made during the copy over to the hypertable, writes blocked, then puts the hypertable in
+	 * place of the table.
+	 */
+	private static void swap(Connection conn, String table, String target) throws SQLException {
+		conn.setAutoCommit(false);
+		try (Statement statement = conn.createStatement()) {
+			statement.execute(String.format(QueryCatalog.LOCK_WRITES_TEMPLATE, table));
+			statement.executeUpdate(String.format(QueryCatalog.COPY_MISSING_OBSERVATIONS_TEMPLATE, target, table));
+			statement.executeUpdate(String.format(QueryCatalog.DELETE_REMOVED_OBSERVATIONS_TEMPLATE, target, table));
+			statement.execute(String.format(QueryCatalog.DROP_TABLE_TEMPLATE, table));
+			statement.execute(String.format(QueryCatalog.RENAME_TABLE_TEMPLATE, target, table));
+			statement.execute(String.format(QueryCatalog.RENAME_INDEX_TEMPLATE, target + "_pkey", table + "_pkey"));
+		}
+		conn.commit();
+		conn.setAutoCommit(true);
+	}
+
+	/**
+	 * @return Whether TimescaleDB is installed, checked once.
+	 */
+	private boolean isAvailable(Connection conn) throws SQLException {
+		Boolean installed = available;
+		if (installed == null) {
+			try (Statement statement = conn.createStatement();
+					ResultSet rs = statement.executeQuery(QueryCatalog.SELECT_TIMESCALEDB_INSTALLED)) {
+				rs.next();
+				installed = rs.getBoolean(1);
+			}
+			available = installed;
+		}
+		return installed;
+	}
+
+	/**
+	 * @return The width of the chunks of a hypertable in seconds, 0 for a plain table.
+	 */
+	private static long chunkInterval(Connection conn, String table) throws SQLException {
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_CHUNK_INTERVAL)) {
+			// The catalog holds the names as folded by PostgreSQL
+			statement.setString(1, table.toLowerCase());
+			ResultSet rs = statement.executeQuery();
+			return rs.next() ? rs.getLong("chunk_interval") : 0;
+		}
+	}
+
+	/**
+	 * @return The time between two observations of a time series, in seconds, 0 if unknown.
+	 */
+	private static double period(Connection conn, String name) throws SQLException {
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_TIME_SERIES_SETTINGS)) {
+			statement.setString(1, name);
+			ResultSet rs = statement.executeQuery();
+			return rs.next() ? rs.getDouble("period") : 0;
+		}
+	}
+
+	private static boolean exists(Connection conn, String table) throws SQLException {
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_TABLE_EXISTS)) {
+			statement.setString(1, table);
+			ResultSet rs = statement.executeQuery();
+			return rs.next() && rs.getBoolean(1);
+		}
+	}
+}
@@ -0,0 +1,484 @@
+package fr.ubo.fast.data.provider.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * The {@link QueryCatalog} class gathers the SQL statements of the data-setup services.
+ * <p>
+ * Values are always bound as parameters so that the text of a statement never changes: the driver then keeps it
+ * prepared on the server for each pooled connection and the hot queries skip parsing and planning. The templates
+ * whose name ends with {@code _TEMPLATE} take a table name, which must come from {@link SeriesRegistry}.
+ */
+public final class QueryCatalog {
+
+	/** Gives the metadata of a time series. */
+	public static final String SELECT_METADATA = "SELECT start_date, end_date, period, qmin, qmax, unit FROM "
+			+ "time_series JOIN measured_variables ON name = observations_name WHERE name = ?;";
+
+	/** Gives the names of all time series. */
+	public static final String SELECT_OBSERVATION_NAMES = "SELECT observations_name FROM time_series;";
+
+	/** Gives the first and last dates of a time series. */
+	public static final String SELECT_TIME_SERIES_DATES = "SELECT start_date, end_date FROM time_series "
+			+ "WHERE observations_name = ?;";
+
+	/** Gives the dates, the quality range and the period of a time series. */
+	public static final String SELECT_TIME_SERIES_SETTINGS = "SELECT start_date, end_date, qmin, qmax, period "
+			+ "FROM time_series WHERE observations_name = ?;";
+
+	/** Locks the row of a time series until the end of the transaction. */
+	public static final String LOCK_TIME_SERIES = "SELECT 1 FROM time_series WHERE observations_name = ? FOR UPDATE;";
+
+	/** Sets the first and last dates of a time series. */
+	public static final String UPDATE_TIME_SERIES_DATES = "UPDATE time_series SET start_date = ?, end_date = ? "
+			+ "WHERE observations_name = ?;";
+
+	/** Sets the period and the quality range of a time series. */
+	public static final String UPDATE_TIME_SERIES_SETTINGS = "UPDATE time_series SET period = ?, qmin = ?, qmax = ? "
+			+ "WHERE observations_name = ?;";
+
+	/** Adds a time series. */
+	public static final String INSERT_TIME_SERIES = "INSERT INTO time_series (period, observations_name, "
+			+ "measured_variable_id, qmin, qmax) VALUES (?, ?, ?, ?, ?) ON CONFLICT (observations_name) DO NOTHING;";
+
+	/** Removes a time series. */
+	public static final String DELETE_TIME_SERIES = "DELETE FROM time_series WHERE observations_name = ?;";
+
+	/** Adds a measured variable. */
+	public static final String INSERT_MEASURED_VARIABLE = "INSERT INTO measured_variables (name, unit) VALUES (?, ?) "
+			+ "ON CONFLICT (name) DO NOTHING;";
+
+	/** Gives the identifier of a measured variable. */
+	public static final String SELECT_MEASURED_VARIABLE_ID = "SELECT measured_variable_id FROM measured_variables "
+			+ "WHERE name = ?;";
+
+	/** Sets the unit of a measured variable. */
+	public static final String UPDATE_MEASURED_VARIABLE_UNIT = "UPDATE measured_variables SET unit = ? WHERE name = ?;";
+
+	/** Removes a measured variable. */
+	public static final String DELETE_MEASURED_VARIABLE = "DELETE FROM measured_variables WHERE name = ?;";
+
+	/** Creates the configuration table. */
+	public static final String CREATE_CONFIGURATION_TABLE = "CREATE TABLE IF NOT EXISTS configuration ("
+			+ "table_name TEXT NOT NULL, zoom_id INTEGER, zoom_coef TEXT NOT NULL, data_stat TEXT NOT NULL, "
+			+ "delta INTEGER, kind TEXT NOT NULL DEFAULT 'table');";
+
+	/** Tells whether the configuration table has the kind of the precomputed tables. */
+	public static final String SELECT_CONFIGURATION_HAS_KIND = "SELECT EXISTS (SELECT 1 FROM information_schema.columns "
+			+ "WHERE table_schema = current_schema() AND table_name = 'configuration' AND column_name = 'kind');";
+
+	/** Adds the kind of the precomputed tables to a configuration table created without it. */
+	public static final String ADD_CONFIGURATION_KIND = "ALTER TABLE configuration ADD COLUMN IF NOT EXISTS "
+			+ "kind TEXT NOT NULL DEFAULT 'table';";
+
+	/** Finds the precomputed tables of several statistics for a bucket width. */
+	public static final String SELECT_CONFIGURATIONS = "SELECT table_name, data_stat, zoom_id, zoom_coef "
+			+ "FROM configuration WHERE table_name = ? AND delta = ? AND data_stat = ANY (?);";
+
+	/** Gives all configurations. */
+	public static final String SELECT_ALL_CONFIGURATIONS = "SELECT table_name, data_stat, zoom_id, zoom_coef "
+			+ "FROM configuration;";
+
+	/** Gives the precomputed tables of a time series. */
+	public static final String SELECT_SERIES_CONFIGURATIONS = "SELECT DISTINCT data_stat, delta, zoom_id, zoom_coef, "
+			+ "kind FROM configuration WHERE table_name = ?;";
+
+	/** Removes the continuous aggregates and the pyramid views of a time series from the configuration. */
+	public static final String DELETE_DERIVED_CONFIGURATIONS = "DELETE FROM configuration WHERE table_name = ? "
+			+ "AND kind <> 'table';";
+
+	/** Gives the kind and the bucket width of a precomputed table. */
+	public static final String SELECT_CONFIGURATION_KIND = "SELECT kind, delta FROM configuration WHERE table_name = ? "
+			+ "AND zoom_id = ? AND zoom_coef = ? AND data_stat = ? LIMIT 1;";
+
+	/** Gives the bucket widths of the levels of the aggregation pyramid of a time series, finest first. */
+	public static final String SELECT_PYRAMID_LEVELS = "SELECT DISTINCT delta FROM configuration WHERE table_name = ? "
+			+ "AND kind = 'pyramid' AND data_stat = ANY (?) ORDER BY delta;";
+
+	/** Counts the statistics read from a level of the aggregation pyramid of a time series. */
+	public static final String COUNT_PYRAMID_VIEWS = "SELECT COUNT(*) FROM configuration WHERE table_name = ? "
+			+ "AND kind = 'pyramid' AND delta = ? AND data_stat = ANY (?);";
+
+	/**
+	 * Gives the precomputed tables of a statistic whose buckets make up those of a wider bucket width, coarsest first.
+	 */
+	public static final String SELECT_FINER_CONFIGURATIONS = "SELECT zoom_id, zoom_coef FROM configuration "
+			+ "WHERE table_name = ? AND data_stat = ? AND delta > 0 AND delta < ? AND ? % delta = 0 ORDER BY delta DESC;";
+
+	/** Tells whether a table exists. */
+	public static final String SELECT_TABLE_EXISTS = "SELECT to_regclass(?) IS NOT NULL;";
+
+	/** Tells whether a table, a view or a continuous aggregate has a column. */
+	public static final String SELECT_COLUMN_EXISTS = "SELECT EXISTS (SELECT 1 FROM pg_attribute "
+			+ "WHERE attrelid = to_regclass(?) AND attname = ? AND NOT attisdropped);";
+
+	/** Adds the sum of the values to an average table created without it. */
+	public static final String ADD_SUM_COLUMN_TEMPLATE = "ALTER TABLE %s ADD COLUMN sum_value DOUBLE PRECISION;";
+
+	/** Fills the sum of the values of an average table from its averages and counts. */
+	public static final String FILL_SUM_COLUMN_TEMPLATE = "UPDATE %s SET sum_value = avg_value * datanumbers;";
+
+	/** Records a precomputed table. */
+	public static final String INSERT_CONFIGURATION = "INSERT INTO configuration (table_name, data_stat, delta, "
+			+ "zoom_id, zoom_coef, kind) VALUES (?, ?, ?, ?, ?, ?);";
+
+	/** Removes a precomputed table from the configuration. */
+	public static final String DELETE_CONFIGURATION = "DELETE FROM configuration WHERE table_name = ? AND zoom_id = ? "
+			+ "AND zoom_coef = ? AND data_stat = ?;";
+
+	/** Creates the table of the observations of a time series. */
+	public static final String CREATE_OBSERVATIONS_TEMPLATE = "CREATE TABLE IF NOT EXISTS %s (time TIMESTAMPTZ NOT NULL, "
+			+ "value DOUBLE PRECISION, quality INTEGER, PRIMARY KEY(time));";
+
+	/** Tells whether TimescaleDB is installed in the database. */
+	public static final String SELECT_TIMESCALEDB_INSTALLED = "SELECT EXISTS (SELECT 1 FROM pg_extension "
+			+ "WHERE extname = 'timescaledb');";
+
+	/** Turns an empty observations table into a hypertable. Takes the table, then the width of the chunks in seconds. */
+	public static final String CREATE_HYPERTABLE = "SELECT create_hypertable(?::regclass, 'time', "
+			+ "chunk_time_interval => ? * INTERVAL '1 second', if_not_exists => TRUE);";
+
+	/** Sets the width of the next chunks of a hypertable. Takes the table, then the width in seconds. */
+	public static final String SET_CHUNK_INTERVAL = "SELECT set_chunk_time_interval(?::regclass, "
+			+ "? * INTERVAL '1 second');";
+
+	/** Gives the width of the chunks of a hypertable in seconds, and nothing for a plain table. */
+	public static final String SELECT_CHUNK_INTERVAL = "SELECT EXTRACT(EPOCH FROM time_interval)::bigint "
+			+ "AS chunk_interval FROM timescaledb_information.dimensions WHERE hypertable_schema = current_schema() "
+			+ "AND hypertable_name = ? AND column_name = 'time';";
+
+	/** Gives the chunks of a hypertable in time order, with their size. Takes the table twice. */
+	public static final String SELECT_CHUNKS = "SELECT c.chunk_name, c.range_start, c.range_end, s.total_bytes "
+			+ "FROM timescaledb_information.chunks c JOIN chunks_detailed_size(?::regclass) s "
+			+ "ON s.chunk_schema = c.chunk_schema AND s.chunk_name = c.chunk_name "
+			+ "WHERE c.hypertable_schema = current_schema() AND c.hypertable_name = ? ORDER BY c.range_start;";
+
+	/** Gives the size of a hypertable with its chunks and indexes. */
+	public static final String SELECT_HYPERTABLE_SIZE = "SELECT hypertable_size(?::regclass);";
+
+	/** Gives the size of a table with its indexes. */
+	public static final String SELECT_TABLE_SIZE = "SELECT pg_total_relation_size(?::regclass);";
+
+	/**
+	 * Creates an empty table with the columns, the keys and the indexes of another. Takes the new table, then the
+	 * other.
+	 */
+	public static final String CREATE_TABLE_LIKE_TEMPLATE = "CREATE TABLE %s (LIKE %s INCLUDING ALL);";
+
+	/**
+	 * Copies the observations of a time range to another table, skipping those already there. Takes the target table,
+	 * then the source table.
+	 */
+	public static final String COPY_OBSERVATIONS_RANGE_TEMPLATE = "INSERT INTO %s SELECT time, value, quality FROM %s "
+			+ "WHERE time >= ? AND time < ? ON CONFLICT (time) DO NOTHING;";
+
+	/**
+	 * Copies the observations missing from another table. Takes the target table, then the source table.
+	 */
+	public static final String COPY_MISSING_OBSERVATIONS_TEMPLATE = "INSERT INTO %s SELECT time, value, quality "
+			+ "FROM %s ON CONFLICT (time) DO NOTHING;";
+
+	/**
+	 * Removes the observations which are no longer in another table. Takes the target table, then the source table.
+	 */
+	public static final String DELETE_REMOVED_OBSERVATIONS_TEMPLATE = "DELETE FROM %s t WHERE NOT EXISTS "
+			+ "(SELECT 1 FROM %s o WHERE o.time = t.time);";
+
+	/** Blocks the writes to a table until the end of the transaction, reads going on. */
+	public static final String LOCK_WRITES_TEMPLATE = "LOCK TABLE %s IN EXCLUSIVE MODE;";
+
+	/** Renames a table. Takes the table, then its new name. */
+	public static final String RENAME_TABLE_TEMPLATE = "ALTER TABLE %s RENAME TO %s;";
+
+	/** Renames an index. Takes the index, then its new name. */
+	public static final String RENAME_INDEX_TEMPLATE = "ALTER INDEX IF EXISTS %s RENAME TO %s;";
+
+	/** Removes the observations of a time range, giving the number removed and the first and last times removed. */
+	public static final String DELETE_OBSERVATIONS_TEMPLATE = "WITH deleted AS (DELETE FROM %s WHERE time "
+			+ "BETWEEN ?::timestamptz AND ?::timestamptz RETURNING time) SELECT COUNT(*) AS deleted, MIN(time) "
+			+ "AS min_time, MAX(time) AS max_time FROM deleted;";
+
+	/** Gives the first and last times of the observations. */
+	public static final String SELECT_OBSERVATIONS_BOUNDS_TEMPLATE = "SELECT MIN(time) AS min_time, MAX(time) "
+			+ "AS max_time FROM %s;";
+
+	/** Counts the observations of a time range. */
+	public static final String COUNT_OBSERVATIONS_TEMPLATE = "SELECT COUNT(value) FROM %s WHERE time > ? AND time <= ?;";
+
+	/** Gives the raw observations of a time range in time order, with their time in milliseconds since the epoch. */
+	public static final String SELECT_POINTS_TEMPLATE = "SELECT (EXTRACT(EPOCH FROM time) * 1000)::bigint AS time_ms, "
+			+ "value FROM %s WHERE time > ? AND time <= ? AND value IS NOT NULL ORDER BY time LIMIT ?;";
+
+	/**
+	 * Creates the unlogged table receiving the observations of an import, with the columns of an observations table,
+	 * without its key, plus the rank of each row in the import. Takes the staging table, then the observations table.
+	 */
+	public static final String CREATE_STAGING_TEMPLATE = "CREATE UNLOGGED TABLE %s (LIKE %s, ordinal BIGINT);";
+
+	/** Loads observations from COPY text giving the time, the value, the quality and the rank of each row. */
+	public static final String COPY_STAGING_TEMPLATE = "COPY %s (time, value, quality, ordinal) FROM STDIN";
+
+	/**
+	 * Moves the staged observations to an observations table, keeping the first one of each time and skipping the
+	 * times already in the table. Takes the observations table, then the staging table.
+	 */
+	public static final String INSERT_STAGED_TEMPLATE = "INSERT INTO %s (time, value, quality) "
+			+ "SELECT DISTINCT ON (time) time, value, quality FROM %s ORDER BY time, ordinal "
+			+ "ON CONFLICT (time) DO NOTHING;";
+
+	/**
+	 * Removes the buckets of a precomputed table which overlap a time range. Takes the table, then the bucket width in
+	 * seconds, the start and the end of the range.
+	 */
+	public static final String DELETE_STAT_BUCKETS_TEMPLATE = "DELETE FROM %s WHERE time >= time_bucket(? * INTERVAL "
+			+ "'1 second', ?::timestamptz) AND time <= ?::timestamptz;";
+
+	/**
+	 * Computes again the buckets of a precomputed table which overlap a time range, within the dates of the series.
+	 * Takes the table, the aggregate list, the observations table, then the bucket width in seconds, the bucket width,
+	 * the start of the range, the bucket width, the end of the range, the bucket width, and the first and last dates
+	 * of the series.
+	 */
+	public static final String INSERT_STAT_BUCKETS_TEMPLATE = "INSERT INTO %s SELECT time_bucket(? * INTERVAL "
+			+ "'1 second', time) AS time, %s FROM %s WHERE time >= time_bucket(? * INTERVAL '1 second', ?::timestamptz) "
+			+ "AND time < time_bucket(? * INTERVAL '1 second', ?::timestamptz) + ? * INTERVAL '1 second' "
+			+ "AND time >= ? AND time <= ? GROUP BY 1 ORDER BY 1;";
+
+	/**
+	 * Creates the precomputed table of a statistic by buckets, unless it exists. Takes the table, the bucket width in
+	 * seconds, the aggregate list, the observations table, then the first and last dates of the series.
+	 */
+	public static final String CREATE_STAT_TABLE_TEMPLATE = "CREATE TABLE IF NOT EXISTS %s AS SELECT time_bucket('%d', "
+			+ "time) AS time, %s FROM %s WHERE time >= '%s' AND time <= '%s' GROUP BY 1 ORDER BY 1;";
+
+	/** Indexes a precomputed table on the start time of its buckets. Takes the table twice. */
+	public static final String CREATE_STAT_INDEX_TEMPLATE = "CREATE INDEX IF NOT EXISTS %s_time_idx ON %s (time);";
+
+	/** Drops a table. */
+	public static final String DROP_TABLE_TEMPLATE = "DROP TABLE IF EXISTS %s;";
+
+	/** Drops a view. */
+	public static final String DROP_VIEW_TEMPLATE = "DROP VIEW IF EXISTS %s;";
+
+	/** Creates the view of a statistic over a level of the aggregation pyramid. Takes the view, the columns, the level. */
+	public static final String CREATE_STAT_VIEW_TEMPLATE = "CREATE VIEW %s AS SELECT time, %s FROM %s;";
+
+	/** Creates a level of the aggregation pyramid, holding the mergeable partials of each bucket. */
+	public static final String CREATE_PYRAMID_LEVEL_TEMPLATE = "CREATE TABLE %s (time TIMESTAMPTZ NOT NULL, "
+			+ "min_value DOUBLE PRECISION, max_value DOUBLE PRECISION, sum_value DOUBLE PRECISION, "
+			+ "count_value BIGINT, PRIMARY KEY (time));";
+
+	/**
+	 * Merges the buckets of a finer level of the aggregation pyramid into those of a level which overlap a time range.
+	 * Takes the level, the aggregate list, the finer level, then the bucket width in seconds, the bucket width, the
+	 * start of the range, the bucket width, the end of the range and the bucket width.
+	 */
+	public static final String INSERT_LEVEL_BUCKETS_TEMPLATE = "INSERT INTO %s SELECT time_bucket(? * INTERVAL "
+			+ "'1 second', time) AS time, %s FROM %s WHERE time >= time_bucket(? * INTERVAL '1 second', ?::timestamptz) "
+			+ "AND time < time_bucket(? * INTERVAL '1 second', ?::timestamptz) + ? * INTERVAL '1 second' "
+			+ "GROUP BY 1 ORDER BY 1;";
+
+	/** Creates a level of sketches, holding the count of the values of each bucket by bin. */
+	public static final String CREATE_SKETCH_LEVEL_TEMPLATE = "CREATE TABLE %s (time TIMESTAMPTZ NOT NULL, "
+			+ "bin INTEGER NOT NULL, count BIGINT NOT NULL, PRIMARY KEY (time, bin));";
+
+	/**
+	 * Computes again the sketches of a level which overlap a time range, within the dates of the series. Takes the
+	 * level, the bin list, the observations table, then the values bound in {@link #INSERT_STAT_BUCKETS_TEMPLATE}.
+	 */
+	public static final String INSERT_SKETCH_BUCKETS_TEMPLATE = "INSERT INTO %s SELECT time_bucket(? * INTERVAL "
+			+ "'1 second', time) AS time, %s FROM %s WHERE time >= time_bucket(? * INTERVAL '1 second', ?::timestamptz) "
+			+ "AND time < time_bucket(? * INTERVAL '1 second', ?::timestamptz) + ? * INTERVAL '1 second' "
+			+ "AND time >= ? AND time <= ? AND value IS NOT NULL GROUP BY 1, 2 ORDER BY 1, 2;";
+
+	/**
+	 * Merges the sketches of a finer level into those of a level which overlap a time range. Takes the level, the bin
+	 * list, the finer level, then the values bound in {@link #INSERT_LEVEL_BUCKETS_TEMPLATE}.
+	 */
+	public static final String INSERT_SKETCH_LEVEL_BUCKETS_TEMPLATE = "INSERT INTO %s SELECT time_bucket(? * "
+			+ "INTERVAL '1 second', time) AS time, %s FROM %s WHERE time >= time_bucket(? * INTERVAL '1 second', "
+			+ "?::timestamptz) AND time < time_bucket(? * INTERVAL '1 second', ?::timestamptz) + ? * INTERVAL "
+			+ "'1 second' GROUP BY 1, 2 ORDER BY 1, 2;";
+
+	/**
+	 * Ranks the bins of sketches and picks the bin of some quantiles in each bucket. Takes the bucket column, the
+	 * quantile list, then the sketches giving the bucket, the bin and the count of each row.
+	 */
+	public static final String RANKED_SKETCHES_TEMPLATE = "(SELECT %1$s, %2$s FROM (SELECT %1$s, bin, SUM(count) "
+			+ "OVER (PARTITION BY %1$s ORDER BY bin) AS below, SUM(count) OVER (PARTITION BY %1$s) AS total "
+			+ "FROM %3$s) AS ranked GROUP BY %1$s) AS quantiles";
+
+	/** Gives the quantiles of each bucket. Takes the value list, then the ranked sketches. */
+	public static final String SELECT_SKETCH_QUANTILES_TEMPLATE = "SELECT bucket, %s FROM %s ORDER BY bucket;";
+
+	/**
+	 * Sketches observations by buckets of a whole number of seconds. Takes the bin, the table, then the bucket width
+	 * in seconds, the start and the end of the range.
+	 */
+	public static final String REGULAR_SKETCHES_TEMPLATE = "(SELECT time_bucket(? * INTERVAL '1 second', time) "
+			+ "AS bucket, %s AS bin, COUNT(*) AS count FROM %s WHERE time > ? AND time <= ? AND value IS NOT NULL "
+			+ "GROUP BY 1, 2) AS sketches";
+
+	/**
+	 * Merges the sketches of a level by buckets of a multiple of its width, keeping the buckets starting in a time
+	 * range like {@link #SELECT_MERGED_BUCKETS_TEMPLATE}. Takes the level, then the bucket width in seconds, the start
+	 * of the range, its end plus the bucket width, then the start and the end of the range.
+	 */
+	public static final String LEVEL_SKETCHES_TEMPLATE = "(SELECT * FROM (SELECT time_bucket(? * INTERVAL "
+			+ "'1 second', time) AS bucket, bin, SUM(count) AS count FROM %s WHERE time >= ? AND time < ? "
+			+ "GROUP BY 1, 2) AS level WHERE bucket >= ? AND bucket < ?) AS sketches";
+
+	/**
+	 * Sketches observations by n buckets of floor seconds followed by p buckets of ceil seconds. Takes the bin, the
+	 * table, then the values bound by {@link #bindIrregularSketches}.
+	 */
+	public static final String IRREGULAR_SKETCHES_TEMPLATE = "(SELECT CASE WHEN elapsed <= ? THEN CEIL(elapsed / ?) - 1 "
+			+ "ELSE ? + CEIL((elapsed - ?) / ?) - 1 END AS bucket, %s AS bin, COUNT(*) AS count FROM ("
+			+ "SELECT value, EXTRACT(EPOCH FROM time - ?::timestamptz) AS elapsed FROM %s "
+			+ "WHERE time > ?::timestamptz AND time <= ?::timestamptz + ? * INTERVAL '1 second' "
+			+ "AND value IS NOT NULL) AS observations GROUP BY 1, 2) AS sketches";
+
+	/** Drops a continuous aggregate. */
+	public static final String DROP_MATERIALIZED_VIEW_TEMPLATE = "DROP MATERIALIZED VIEW IF EXISTS %s;";
+
+	/**
+	 * Creates a continuous aggregate computing a statistic by buckets, kept up to date by TimescaleDB and completed
+	 * with the observations not yet materialized when it is read. Takes the view, the bucket width in seconds, the
+	 * aggregate list, the observations table, then the bucket width again.
+	 */
+	public static final String CREATE_CONTINUOUS_AGGREGATE_TEMPLATE = "CREATE MATERIALIZED VIEW IF NOT EXISTS %s "
+			+ "WITH (timescaledb.continuous, timescaledb.materialized_only = false) AS "
+			+ "SELECT time_bucket(INTERVAL '%d seconds', time) AS time, %s FROM %s "
+			+ "GROUP BY time_bucket(INTERVAL '%d seconds', time) WITH NO DATA;";
+
+	/**
+	 * Schedules the refresh of a continuous aggregate. Takes the view, the lag of the refreshed range behind the
+	 * present in seconds, then the time between two refreshes in seconds.
+	 */
+	public static final String ADD_REFRESH_POLICY = "SELECT add_continuous_aggregate_policy(?::regclass, "
+			+ "start_offset => NULL, end_offset => ? * INTERVAL '1 second', "
+			+ "schedule_interval => ? * INTERVAL '1 second', if_not_exists => TRUE);";
+
+	/** Materializes the whole of a continuous aggregate, outside of any transaction. */
+	public static final String REFRESH_CONTINUOUS_AGGREGATE = "CALL refresh_continuous_aggregate(?::regclass, "
+			+ "NULL, NULL);";
+
+	/** Gives at most a number of precomputed buckets starting in a time range. */
+	private static final String STAT_RANGE_TEMPLATE = "(SELECT * FROM %s WHERE time >= ? AND time < ? "
+			+ "ORDER BY time LIMIT ?) AS stat%d";
+
+	/**
+	 * Aggregates observations by buckets of a whole number of seconds. Takes the aggregate list, the table, then the
+	 * bucket width in seconds, the start and the end of the range.
+	 */
+	public static final String SELECT_REGULAR_BUCKETS_TEMPLATE = "SELECT time_bucket(? * INTERVAL '1 second', time) "
+			+ "AS time_interval, %s FROM %s WHERE time > ? AND time <= ? GROUP BY time_interval "
+			+ "ORDER BY time_interval ASC;";
+
+	/**
+	 * Merges the buckets of a precomputed table into buckets of a multiple of their width, keeping the merged buckets
+	 * starting in a time range like {@link #STAT_RANGE_TEMPLATE}: a bucket starting before the range would only merge
+	 * part of its buckets. Takes the merge list, the table, then the bucket width in seconds, the start of the range,
+	 * its end plus the bucket width, then the start and the end of the range.
+	 */
+	public static final String SELECT_MERGED_BUCKETS_TEMPLATE = "SELECT * FROM (SELECT time_bucket(? * INTERVAL "
+			+ "'1 second', time) AS time_interval, %s FROM %s WHERE time >= ? AND time < ? GROUP BY time_interval) "
+			+ "AS merged WHERE time_interval >= ? AND time_interval < ? ORDER BY time_interval ASC;";
+
+	/**
+	 * Aggregates observations by n buckets of floor seconds followed by p buckets of ceil seconds, each one
+	 * aggregated from its own time_bucket sub-buckets. Takes the outer aggregate list, the inner aggregate list, the
+	 * table, then the values bound by {@link #bindIrregularBuckets}.
+	 */
+	public static final String SELECT_IRREGULAR_BUCKETS_TEMPLATE = "SELECT buckets.bucket, %s "
+			+ "FROM generate_series(0, ?::bigint) AS buckets(bucket) LEFT JOIN ("
+			+ "SELECT bucket, time_bucket(width * INTERVAL '1 second', time) AS time_interval, %s FROM ("
+			+ "SELECT time, value, CASE WHEN elapsed <= ? THEN CEIL(elapsed / ?) - 1 "
+			+ "ELSE ? + CEIL((elapsed - ?) / ?) - 1 END AS bucket, "
+			+ "CASE WHEN elapsed <= ? THEN ?::bigint ELSE ?::bigint END AS width FROM ("
+			+ "SELECT time, value, EXTRACT(EPOCH FROM time - ?::timestamptz) AS elapsed FROM %s "
+			+ "WHERE time > ?::timestamptz AND time <= ?::timestamptz + ? * INTERVAL '1 second') AS observations"
+			+ ") AS located GROUP BY bucket, time_interval"
+			+ ") AS subquery ON subquery.bucket = buckets.bucket GROUP BY buckets.bucket ORDER BY buckets.bucket;";
+
+	private QueryCatalog() {
+	}
+
+	/**
+	 * Builds the query joining on their bucket time the ranges of several precomputed tables. Each table takes the
+	 * start, the end and the maximum number of buckets, in turn.
+	 *
+	 * @param tables : The precomputed tables, coming from {@link SeriesRegistry}.
+	 * @return The query.
+	 */
+	public static String selectStatRanges(List<String> tables) {
+		StringBuilder query = new StringBuilder("SELECT * FROM ");
+		for (int i = 0; i < tables.size(); i++) {
+			if (i > 0) {
+				query.append(" FULL JOIN ");
+			}
+			query.append(String.format(STAT_RANGE_TEMPLATE, tables.get(i), i));
+			if (i > 0) {
+				query.append(" USING (time)");
+			}
+		}
+		return query.append(" ORDER BY time;").toString();
+	}
+
+	/**
+	 * Binds the values of {@link #SELECT_IRREGULAR_BUCKETS_TEMPLATE}.
+	 *
+	 * @param statement  : The prepared statement.
+	 * @param start      : When the first bucket starts.
+	 * @param n          : The number of buckets of floor seconds.
+	 * @param p          : The number of buckets of ceil seconds.
+	 * @param floorDelta : The width of the first buckets.
+	 * @param ceilDelta  : The width of the last buckets.
+	 * @throws SQLException if a value cannot be bound.
+	 */
+	public static void bindIrregularBuckets(PreparedStatement statement, OffsetDateTime start,
+			long n, long p, long floorDelta, long ceilDelta) throws SQLException {
+		long floorSpan = n * floorDelta;
+		statement.setLong(1, n + p - 1);
+		statement.setLong(2, floorSpan);
+		statement.setLong(3, floorDelta);
+		statement.setLong(4, n);
+		statement.setLong(5, floorSpan);
+		statement.setLong(6, ceilDelta);
+		statement.setLong(7, floorSpan);
+		statement.setLong(8, floorDelta);
+		statement.setLong(9, ceilDelta);
+		statement.setObject(10, start);
+		statement.setObject(11, start);
+		statement.setObject(12, start);
+		statement.setLong(13, floorSpan + p * ceilDelta);
+	}
+
+	/**
+	 * Binds the values of {@link #IRREGULAR_SKETCHES_TEMPLATE}.
+	 *
+	 * @param statement  : The prepared statement.
+	 * @param start      : When the first bucket starts.
+	 * @param n          : The number of buckets of floor seconds.
+	 * @param p          : The number of buckets of ceil seconds.
+	 * @param floorDelta : The width of the first buckets.
+	 * @param ceilDelta  : The width of the last buckets.
+	 * @throws SQLException if a value cannot be bound.
+	 */
+	public static void bindIrregularSketches(PreparedStatement statement, OffsetDateTime start,
+			long n, long p, long floorDelta, long ceilDelta) throws SQLException {
+		long floorSpan = n * floorDelta;
+		statement.setLong(1, floorSpan);
+		statement.setLong(2, floorDelta);
+		statement.setLong(3, n);
+		statement.setLong(4, floorSpan);
+		statement.setLong(5, ceilDelta);
+		statement.setObject(6, start);
+		statement.setObject(7, start);
+		statement.setObject(8, start);
+		statement.setLong(9, floorSpan + p * ceilDelta);
+	}
+}
@@ -0,0 +1,186 @@
+package fr.ubo.fast.data.provider.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The {@link SeriesRegistry} class knows the time series of the database and gives the names of their tables.
+ * <p>
+ * Table names cannot be bound as parameters, so they are only built for registered series whose name is a plain
+ * identifier: a request can never inject SQL through them.
+ */
+public class SeriesRegistry {
+
+	/** The characters allowed in a series name or a zoom unit. */
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_]{1,48}");
+
+	/** The longest name PostgreSQL keeps: a longer one is truncated and could collide with another table. */
+	public static final int MAX_TABLE_NAME = 63;
+
+	/** The statistics that can be precomputed. */
+	private static final Set<String> STATS = new HashSet<>(Arrays.asList("min", "max", "avg", "median", "quart"));
+
+	/** The shared connection pool. */
+	private final DatabaseConnectionPool pool;
+
+	/** The names of the known time series. */
+	private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+	public SeriesRegistry(DatabaseConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Checks whether a time series is known, reloading the names from the database when it is not.
+	 *
+	 * @param name : The name of the time series.
+	 * @return true if the time series exists.
+	 */
+	public boolean contains(String name) {
+		if (name == null) {
+			return false;
+		}
+		if (!names.contains(name)) {
+			reload();
+		}
+		return names.contains(name);
+	}
+
+	/**
+	 * Records a new time series.
+	 *
+	 * @param name : The name of the time series.
+	 * @throws IllegalArgumentException if the name is not a plain identifier.
+	 */
+	public void register(String name) {
+		checkIdentifier(name);
+		names.add(name);
+	}
+
+	/**
+	 * Forgets a deleted time series.
+	 *
+	 * @param name : The name of the time series.
+	 */
+	public void unregister(String name) {
+		if (name != null) {
+			names.remove(name);
+		}
+	}
+
+	/**
+	 * Gives the table of the observations of a time series.
+	 *
+	 * @param name : The name of the time series.
+	 * @return The name of the table.
+	 * @throws IllegalArgumentException if the time series is unknown.
+	 */
+	public String observationsTable(String name) {
+		if (!contains(name)) {
+			throw new IllegalArgumentException("Unknown time series: " + name);
+		}
+		return checkTableName("observations_" + name);
+	}
+
+	/**
+	 * Gives the table of a precomputed statistic of a time series.
+	 *
+	 * @param name     : The name of the time series.
+	 * @param stat     : The statistic (min, max, avg, median or quart).
+	 * @param zoomId   : The zoom value.
+	 * @param zoomCoef : The zoom unit, or "co" for a factor.
+	 * @return The name of the table.
+	 * @throws IllegalArgumentException if the time series is unknown, a part of the name is invalid or the name is
+	 *                                  too long.
+	 */
+	public String statTable(String name, String stat, int zoomId, String zoomCoef) {
+		if (stat == null || !STATS.contains(stat.toLowerCase())) {
+			throw new IllegalArgumentException("Unsupported data type: " + stat);
+		}
+		checkIdentifier(zoomCoef);
+		String table = String.format("%s_%s_%d_%s", observationsTable(name), stat.toLowerCase(), zoomId, zoomCoef);
+		return checkTableName(table);
+	}
+
+	/**
+	 * Gives the table of a level of the aggregation pyramid of a time series.
+	 *
+	 * @param name  : The name of the time series.
+	 * @param delta : The width of the buckets of the level, in seconds.
+	 * @return The name of the table.
+	 * @throws IllegalArgumentException if the time series is unknown or the name is too long.
+	 */
+	public String pyramidTable(String name, long delta) {
+		if (!contains(name)) {
+			throw new IllegalArgumentException("Unknown time series: " + name);
+		}
+		// The prefix differs from that of the observations, so no series name can give the same table
+		return checkTableName(String.format("pyramid_%s_%d", name, delta));
+	}
+
+	/**
+	 * Gives the table of a level of quantile sketches of a time series.
+	 *
+	 * @param name  : The name of the time series.
+	 * @param delta : The width of the buckets of the level, in seconds.
+	 * @return The name of the table.
+	 * @throws IllegalArgumentException if the time series is unknown or the name is too long.
+	 */
+	public String sketchTable(String name, long delta) {
+		if (!contains(name)) {
+			throw new IllegalArgumentException("Unknown time series: " + name);
+		}
+		return checkTableName(String.format("sketch_%s_%d", name, delta));
+	}
+
+	/**
+	 * Checks that a name can be used in a table name.
+	 *
+	 * @param identifier : The name to check.
+	 * @throws IllegalArgumentException if the name is not a plain identifier.
+	 */
+	public static void checkIdentifier(String identifier) {
+		if (identifier == null || !IDENTIFIER.matcher(identifier).matches()) {
+			throw new IllegalArgumentException("Invalid name: " + identifier);
+		}
+	}
+
+	/**
+	 * Checks that a table name is kept whole by PostgreSQL.
+	 *
+	 * @param table : The name of the table.
+	 * @return The name of the table.
+	 * @throws IllegalArgumentException if the name is longer than {@link #MAX_TABLE_NAME}.
+	 */
+	private static String checkTableName(String table) {
+		if (table.length() > MAX_TABLE_NAME) {
+			throw new IllegalArgumentException("Table name too long: " + table);
+		}
+		return table;
+	}
+
+	/**
+	 * Loads the names of the time series from the database.
+	 */
+	private void reload() {
+		try (Connection conn = pool.getConnection();
+				PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_OBSERVATION_NAMES);
+				ResultSet rs = statement.executeQuery()) {
+			while (rs.next()) {
+				String name = rs.getString("observations_name");
+				if (name != null && IDENTIFIER.matcher(name).matches()) {
+					names.add(name);
+				}
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package fr.ubo.fast.data.provider.downsampling;
+
+/**
+ * The {@link Downsampler} interface reduces a time-ordered stream of points in a single pass, keeping the points that
+ * preserve the shape of the series once plotted.
+ */
+public interface Downsampler {
+
+	/**
+	 * Adds the next point of the series. Points must come in increasing time order.
+	 *
+	 * @param time  : The time of the point, in milliseconds since the epoch.
+	 * @param value : The value of the point.
+	 */
+	void add(long time, double value);
+
+	/**
+	 * Signals the end of the series and gives the remaining kept points.
+	 */
+	void finish();
+}
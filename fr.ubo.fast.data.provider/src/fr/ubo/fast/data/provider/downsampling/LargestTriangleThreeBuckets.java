@@ -0,0 +1,202 @@
+package fr.ubo.fast.data.provider.downsampling;
+
+import java.util.Arrays;
+
+/**
+ * The {@link LargestTriangleThreeBuckets} class implements the Largest-Triangle-Three-Buckets downsampling.
+ * <p>
+ * The first and last points are kept, the other ones are split by rank into threshold - 2 buckets and, in each
+ * bucket, the point forming the largest triangle with the point kept in the previous bucket and the average of the
+ * next bucket is kept. Only two buckets are held at a time, in arrays allocated once.
+ */
+public class LargestTriangleThreeBuckets implements Downsampler {
+
+	/** Receives the kept points. */
+	private final PointConsumer consumer;
+
+	/** The number of points to keep. */
+	private final int threshold;
+
+	/** The number of points per bucket. */
+	private final double every;
+
+	/** The points of the bucket in which a point will be chosen next. */
+	private long[] candidateTimes;
+	private double[] candidateValues;
+	private int candidateSize;
+
+	/** The points of the bucket being filled, whose average drives the choice in the candidate bucket. */
+	private long[] fillingTimes;
+	private double[] fillingValues;
+	private int fillingSize;
+
+	/** The index of the bucket being filled. */
+	private int fillingBucket;
+
+	/** The index of the first point of the next bucket. */
+	private long nextBoundary;
+
+	/** The number of points given to the buckets, the first one included. */
+	private long index;
+
+	/** The last point kept. */
+	private long keptTime;
+	private double keptValue;
+
+	/** The last point received, held back because it could be the last point of the series. */
+	private long pendingTime;
+	private double pendingValue;
+	private boolean pending;
+
+	/**
+	 * Creates the downsampler.
+	 *
+	 * @param count     : The number of points of the series.
+	 * @param threshold : The number of points to keep.
+	 * @param consumer  : Receives the kept points.
+	 */
+	public LargestTriangleThreeBuckets(long count, int threshold, PointConsumer consumer) {
+		this.consumer = consumer;
+		this.threshold = threshold;
+		if (threshold >= 3 && count > threshold) {
+			this.every = (double) (count - 2) / (threshold - 2);
+			int capacity = (int) Math.ceil(every) + 1;
+			this.candidateTimes = new long[capacity];
+			this.candidateValues = new double[capacity];
+			this.fillingTimes = new long[capacity];
+			this.fillingValues = new double[capacity];
+			this.nextBoundary = boundary(1);
+		} else {
+			// Nothing to reduce: every point is kept
+			this.every = 0;
+		}
+	}
+
+	@Override
+	public void add(long time, double value) {
+		if (every == 0) {
+			consumer.accept(time, value);
+			return;
+		}
+		if (pending) {
+			push(pendingTime, pendingValue);
+		}
+		pendingTime = time;
+		pendingValue = value;
+		pending = true;
+	}
+
+	@Override
+	public void finish() {
+		if (every == 0 || !pending) {
+			return;
+		}
+		if (index == 0) {
+			// A single point
+			consumer.accept(pendingTime, pendingValue);
+			return;
+		}
+		if (fillingSize > 0) {
+			if (candidateSize > 0) {
+				select(candidateTimes, candidateValues, candidateSize, fillingTimes, fillingValues, fillingSize);
+			}
+			selectTowardsLast(fillingTimes, fillingValues, fillingSize, pendingTime, pendingValue);
+		} else if (candidateSize > 0) {
+			selectTowardsLast(candidateTimes, candidateValues, candidateSize, pendingTime, pendingValue);
+		}
+		consumer.accept(pendingTime, pendingValue);
+		pending = false;
+	}
+
+	/**
+	 * Gives a point, which is not the last one, to its bucket.
+	 *
+	 * @param time  : The time of the point.
+	 * @param value : The value of the point.
+	 */
+	private void push(long time, double value) {
+		if (index == 0) {
+			keptTime = time;
+			keptValue = value;
+			consumer.accept(time, value);
+			index++;
+			return;
+		}
+		if (index >= nextBoundary && fillingBucket < threshold - 3) {
+			// The filling bucket is complete: choose in the candidate bucket, then move on
+			if (candidateSize > 0) {
+				select(candidateTimes, candidateValues, candidateSize, fillingTimes, fillingValues, fillingSize);
+			}
+			long[] times = candidateTimes;
+			double[] values = candidateValues;
+			candidateTimes = fillingTimes;
+			candidateValues = fillingValues;
+			candidateSize = fillingSize;
+			fillingTimes = times;
+			fillingValues = values;
+			fillingSize = 0;
+			fillingBucket++;
+			nextBoundary = boundary(fillingBucket + 1);
+		}
+		if (fillingSize == fillingTimes.length) {
+			// Only when the series has more points than counted
+			fillingTimes = Arrays.copyOf(fillingTimes, fillingSize * 2);
+			fillingValues = Arrays.copyOf(fillingValues, fillingSize * 2);
+		}
+		fillingTimes[fillingSize] = time;
+		fillingValues[fillingSize] = value;
+		fillingSize++;
+		index++;
+	}
+
+	/**
+	 * Chooses a point of a bucket using the average of the next bucket.
+	 */
+	private void select(long[] times, double[] values, int size, long[] nextTimes, double[] nextValues,
+			int nextSize) {
+		double averageTime = 0;
+		double averageValue = 0;
+		for (int i = 0; i < nextSize; i++) {
+			averageTime += nextTimes[i] - keptTime;
+			averageValue += nextValues[i];
+		}
+		selectTowards(times, values, size, averageTime / nextSize, averageValue / nextSize);
+	}
+
+	/**
+	 * Chooses a point of a bucket using the last point of the series.
+	 */
+	private void selectTowardsLast(long[] times, double[] values, int size, long lastTime, double lastValue) {
+		selectTowards(times, values, size, lastTime - keptTime, lastValue);
+	}
+
+	/**
+	 * Keeps the point of a bucket forming the largest triangle with the last kept point and a given point. Times are
+	 * taken relative to the last kept point.
+	 */
+	private void selectTowards(long[] times, double[] values, int size, double nextTime, double nextValue) {
+		double maxArea = -1;
+		int chosen = 0;
+		for (int i = 0; i < size; i++) {
+			double time = times[i] - keptTime;
+			double area = Math.abs(-time * (nextValue - keptValue) + nextTime * (values[i] - keptValue));
+			if (area > maxArea) {
+				maxArea = area;
+				chosen = i;
+			}
+		}
+		keptTime = times[chosen];
+		keptValue = values[chosen];
+		consumer.accept(keptTime, keptValue);
+	}
+
+	/**
+	 * Gives the index of the first point of a bucket.
+	 *
+	 * @param bucket : The index of the bucket.
+	 * @return The index of its first point in the series.
+	 */
+	private long boundary(int bucket) {
+		return (long) Math.floor(bucket * every) + 1;
+	}
+}
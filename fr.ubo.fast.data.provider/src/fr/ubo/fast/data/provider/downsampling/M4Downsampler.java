@@ -0,0 +1,103 @@
+package fr.ubo.fast.data.provider.downsampling;
+
+/**
+ * The {@link M4Downsampler} class implements the M4 downsampling.
+ * <p>
+ * The time range is split into threshold / 4 columns of equal duration, as the pixel columns of a chart, and the
+ * first, last, minimum and maximum points of each column are kept. A line drawn through them covers the same pixels
+ * as the raw series, with at most threshold points.
+ */
+public class M4Downsampler implements Downsampler {
+
+	/** Receives the kept points. */
+	private final PointConsumer consumer;
+
+	/** The start of the time range, in milliseconds since the epoch. */
+	private final long start;
+
+	/** The duration of the time range, in milliseconds. */
+	private final double duration;
+
+	/** The number of columns. */
+	private final int columns;
+
+	/** The column being read, or -1 before the first point. */
+	private int column = -1;
+
+	/** The first, last, minimum and maximum points of the column, then sorted by time when emitted. */
+	private final long[] times = new long[4];
+	private final double[] values = new double[4];
+
+	/**
+	 * Creates the downsampler.
+	 *
+	 * @param start     : The start of the time range, in milliseconds since the epoch.
+	 * @param end       : The end of the time range, in milliseconds since the epoch.
+	 * @param threshold : The maximum number of points to keep.
+	 * @param consumer  : Receives the kept points.
+	 */
+	public M4Downsampler(long start, long end, int threshold, PointConsumer consumer) {
+		this.consumer = consumer;
+		this.start = start;
+		this.duration = Math.max(1, end - start);
+		this.columns = Math.max(1, threshold / 4);
+	}
+
+	@Override
+	public void add(long time, double value) {
+		int pointColumn = (int) Math.min(columns - 1, Math.max(0, Math.floor((time - start) * columns / duration)));
+		if (pointColumn != column) {
+			flush();
+			column = pointColumn;
+			for (int i = 0; i < 4; i++) {
+				times[i] = time;
+				values[i] = value;
+			}
+			return;
+		}
+		// Index 0 is the first point, 1 the last, 2 the minimum and 3 the maximum
+		times[1] = time;
+		values[1] = value;
+		if (value < values[2]) {
+			times[2] = time;
+			values[2] = value;
+		}
+		if (value > values[3]) {
+			times[3] = time;
+			values[3] = value;
+		}
+	}
+
+	@Override
+	public void finish() {
+		flush();
+		column = -1;
+	}
+
+	/**
+	 * Gives the distinct points of the current column in time order.
+	 */
+	private void flush() {
+		if (column < 0) {
+			return;
+		}
+		// Insertion sort of the four points by time
+		for (int i = 1; i < 4; i++) {
+			long time = times[i];
+			double value = values[i];
+			int j = i - 1;
+			while (j >= 0 && times[j] > time) {
+				times[j + 1] = times[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			times[j + 1] = time;
+			values[j + 1] = value;
+		}
+		for (int i = 0; i < 4; i++) {
+			if (i == 0 || times[i] != times[i - 1]) {
+				consumer.accept(times[i], values[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package fr.ubo.fast.data.provider.downsampling;
+
+/**
+ * The {@link PointConsumer} interface receives the points kept by a {@link Downsampler}, in time order.
+ */
+@FunctionalInterface
+public interface PointConsumer {
+
+	/**
+	 * Receives a kept point.
+	 *
+	 * @param time  : The time of the point, in milliseconds since the epoch.
+	 * @param value : The value of the point.
+	 */
+	void accept(long time, double value);
+}
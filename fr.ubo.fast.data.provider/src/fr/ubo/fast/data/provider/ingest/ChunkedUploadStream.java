@@ -0,0 +1,239 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@link ChunkedUploadStream} class reassembles the chunks of an upload, sent at their offset in any order, into
+ * the stream read by the import.
+ * <p>
+ * A chunk is acknowledged once every byte before it has arrived: it is then handed to the reader. Chunks after a gap
+ * wait in memory, which the client bounds by the number of chunks it keeps in flight, and bytes already acknowledged
+ * are ignored when a chunk is sent again. A writer waits while the reader lags more than a given number of bytes
+ * behind, which slows the upload down to the pace of the import, but for a bounded time only: the chunk is then refused
+ * so the request thread is given back, and the client sends it again later. Once the reader has closed the stream, the
+ * chunks are still acknowledged but dropped.
+ */
+public class ChunkedUploadStream extends InputStream {
+
+	/** The number of acknowledged bytes a writer lets the reader lag behind. */
+	private final long maxBuffered;
+
+	/** The longest time a writer waits for the reader to catch up, in milliseconds. */
+	private final long maxWait;
+
+	/** The chunks waiting for a gap before them to be filled, by offset. */
+	private final TreeMap<Long, byte[]> pending = new TreeMap<>();
+
+	/** The acknowledged chunks not read yet. */
+	private final ArrayDeque<byte[]> ready = new ArrayDeque<>();
+
+	/** The position in the first ready chunk. */
+	private int position;
+
+	/** The number of acknowledged bytes not read yet. */
+	private long buffered;
+
+	/** The number of bytes acknowledged, every byte before being received. */
+	private long acknowledged;
+
+	/** The length of the upload, once committed. */
+	private long length = -1;
+
+	/** Why the upload was aborted, if it was. */
+	private String abortReason;
+
+	/** Whether the reader has closed the stream. */
+	private boolean closed;
+
+	/**
+	 * Creates the stream.
+	 *
+	 * @param maxBuffered : The number of acknowledged bytes a writer lets the reader lag behind.
+	 * @param maxWait     : The longest time a writer waits for the reader to catch up, in milliseconds.
+	 */
+	public ChunkedUploadStream(long maxBuffered, long maxWait) {
+		this.maxBuffered = maxBuffered;
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Waits for the reader to catch up, then adds a chunk.
+	 *
+	 * @param offset : The offset of the chunk in the upload.
+	 * @param data   : The bytes of the chunk.
+	 * @return The number of bytes acknowledged.
+	 * @throws UploadBusyException if the reader still lags too far behind after the longest wait.
+	 * @throws IOException         if the upload was aborted or the chunk goes past its length.
+	 */
+	public synchronized long write(long offset, byte[] data) throws IOException {
+		checkOpen();
+		if (offset < 0 || (length >= 0 && offset + data.length > length)) {
+			throw new IOException("Chunk out of the upload: " + offset + "+" + data.length);
+		}
+		long end = offset + data.length;
+		if (end > acknowledged) {
+			waitForReader();
+			if (offset < acknowledged) {
+				// Only the part not acknowledged yet is kept
+				byte[] rest = new byte[(int) (end - acknowledged)];
+				System.arraycopy(data, (int) (acknowledged - offset), rest, 0, rest.length);
+				offset = acknowledged;
+				data = rest;
+			}
+			byte[] previous = pending.get(offset);
+			if (previous == null || previous.length < data.length) {
+				pending.put(offset, data);
+			}
+			acknowledge();
+		}
+		return acknowledged;
+	}
+
+	/**
+	 * Ends the upload: the reader reaches the end of the stream after the given number of bytes.
+	 *
+	 * @param length : The length of the upload.
+	 * @throws IOException if bytes are missing before that length or were received after it.
+	 */
+	public synchronized void commit(long length) throws IOException {
+		checkOpen();
+		if (acknowledged != length || !pending.isEmpty()) {
+			throw new IOException("Upload incomplete: " + acknowledged + " of " + length + " bytes acknowledged");
+		}
+		this.length = length;
+		notifyAll();
+	}
+
+	/**
+	 * Aborts the upload: the reader and the writers fail.
+	 *
+	 * @param reason : Why the upload was aborted.
+	 */
+	public synchronized void abort(String reason) {
+		if (abortReason == null) {
+			abortReason = reason;
+		}
+		pending.clear();
+		ready.clear();
+		position = 0;
+		buffered = 0;
+		notifyAll();
+	}
+
+	/**
+	 * @return The number of bytes acknowledged, every byte before being received.
+	 */
+	public synchronized long getAcknowledged() {
+		return acknowledged;
+	}
+
+	/**
+	 * Closes the stream on the side of the reader: the bytes not read yet are dropped and writers no longer wait.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		ready.clear();
+		position = 0;
+		buffered = 0;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+		byte[] one = new byte[1];
+		return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		try {
+			while (ready.isEmpty() && abortReason == null && (length < 0 || acknowledged < length)) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the upload", e);
+		}
+		checkOpen();
+		if (ready.isEmpty()) {
+			return -1;
+		}
+		byte[] chunk = ready.peekFirst();
+		int count = Math.min(len, chunk.length - position);
+		System.arraycopy(chunk, position, b, off, count);
+		position += count;
+		if (position == chunk.length) {
+			ready.pollFirst();
+			position = 0;
+		}
+		buffered -= count;
+		notifyAll();
+		return count;
+	}
+
+	@Override
+	public synchronized int available() {
+		return (int) Math.min(buffered, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Moves the chunks following the acknowledged bytes to the reader.
+	 */
+	private void acknowledge() {
+		Map.Entry<Long, byte[]> first;
+		while ((first = pending.firstEntry()) != null && first.getKey() <= acknowledged) {
+			pending.pollFirstEntry();
+			byte[] data = first.getValue();
+			long end = first.getKey() + data.length;
+			if (end <= acknowledged) {
+				continue;
+			}
+			if (first.getKey() < acknowledged) {
+				byte[] rest = new byte[(int) (end - acknowledged)];
+				System.arraycopy(data, (int) (acknowledged - first.getKey()), rest, 0, rest.length);
+				data = rest;
+			}
+			if (!closed) {
+				ready.addLast(data);
+				buffered += data.length;
+			}
+			acknowledged = end;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Waits, for a bounded time, until the reader lags at most the given number of bytes behind.
+	 */
+	private void waitForReader() throws IOException {
+		long deadline = System.currentTimeMillis() + maxWait;
+		try {
+			long remaining;
+			while (buffered > maxBuffered && abortReason == null && !closed
+					&& (remaining = deadline - System.currentTimeMillis()) > 0) {
+				wait(remaining);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the import", e);
+		}
+		checkOpen();
+		if (buffered > maxBuffered && !closed) {
+			throw new UploadBusyException("The import lags " + buffered + " bytes behind the upload");
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (abortReason != null) {
+			throw new IOException("Upload aborted: " + abortReason);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The {@link ContentEncodings} class decompresses the uploads of observations as they are read, following their HTTP
+ * content encoding: "gzip" for the gzip format and "deflate" for the zlib format. Nothing is buffered beyond the
+ * window of the inflater, so a compressed upload goes to the readers at the same pace as a plain one.
+ */
+public class ContentEncodings {
+
+	/** The gzip format. */
+	public static final String GZIP = "gzip";
+
+	/** The zlib format, as named by HTTP. */
+	public static final String DEFLATE = "deflate";
+
+	/** The content encoding of an uncompressed body. */
+	public static final String IDENTITY = "identity";
+
+	/** The size of the buffer of the compressed bytes. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private ContentEncodings() {
+	}
+
+	/**
+	 * @param encoding : A content encoding, possibly null.
+	 * @return Whether an upload with this content encoding can be read.
+	 */
+	public static boolean isSupported(String encoding) {
+		return normalize(encoding) != null;
+	}
+
+	/**
+	 * Decompresses an upload.
+	 * <p>
+	 * The gzip header is read here, so the call waits for the first bytes of the upload.
+	 *
+	 * @param input    : The upload, as received.
+	 * @param encoding : Its content encoding, possibly null for an uncompressed upload.
+	 * @return The uncompressed upload.
+	 * @throws IOException if the encoding is not supported or the gzip header is invalid.
+	 */
+	public static InputStream decode(InputStream input, String encoding) throws IOException {
+		String normalized = normalize(encoding);
+		if (normalized == null) {
+			throw new IOException("Unsupported content encoding: " + encoding);
+		}
+		switch (normalized) {
+			case GZIP:
+				return new GZIPInputStream(input, BUFFER_SIZE);
+			case DEFLATE:
+				return new InflaterInputStream(input, new Inflater(), BUFFER_SIZE) {
+					@Override
+					public void close() throws IOException {
+						// An inflater given to the stream is not ended by it
+						super.close();
+						inf.end();
+					}
+				};
+			default:
+				return input;
+		}
+	}
+
+	/**
+	 * @return The supported encoding named, or null if it is not supported.
+	 */
+	private static String normalize(String encoding) {
+		if (encoding == null) {
+			return IDENTITY;
+		}
+		String name = encoding.trim().toLowerCase();
+		if (name.isEmpty() || IDENTITY.equals(name)) {
+			return IDENTITY;
+		}
+		if (GZIP.equals(name) || "x-gzip".equals(name)) {
+			return GZIP;
+		}
+		if (DEFLATE.equals(name)) {
+			return DEFLATE;
+		}
+		return null;
+	}
+}
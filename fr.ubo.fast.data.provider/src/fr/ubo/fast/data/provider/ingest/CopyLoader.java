@@ -0,0 +1,264 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.postgresql.PGConnection;
+
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.database.QueryCatalog;
+import fr.ubo.fast.data.provider.database.SeriesRegistry;
+
+/**
+ * The {@link CopyLoader} class writes observations to their table through a staging table, by batches copied in
+ * parallel.
+ * <p>
+ * The batches are sent with COPY FROM STDIN to an unlogged table without key, each on a pooled connection of its own,
+ * by workers shared with the other imports, so the copies never need more connections than the workers. At most twice
+ * as many batches as workers wait or are being sent: beyond that, the caller blocks until one is done, so a fast input
+ * cannot fill the memory. A batch which fails is sent again on
+ * another connection; as a COPY is a single statement, a failed one leaves no row behind. The rows are then moved to
+ * their table, on the connection and in the transaction of the import, by a single INSERT ... ON CONFLICT DO NOTHING
+ * which keeps the first observation of each time and skips the times the table already has. The staging table is
+ * dropped when the loader is closed.
+ */
+public class CopyLoader implements ObservationSink, AutoCloseable {
+
+	/** The pool lending the connections of the workers. */
+	private final DatabaseConnectionPool pool;
+
+	/** The connection of the import. */
+	private final Connection conn;
+
+	/** The staging table. */
+	private final String stagingTable;
+
+	/** The statement copying a batch to the staging table. */
+	private final String copySql;
+
+	/** The statement moving the staged rows to the observations table. */
+	private final String insertSql;
+
+	/** The number of rows sent per COPY. */
+	private final int batchSize;
+
+	/** The number of times a batch is sent before the import fails. */
+	private final int copyAttempts;
+
+	/** The number of workers. */
+	private final int workers;
+
+	/** Receives the number of rows staged. */
+	private final ImportProgress progress;
+
+	/** Sends the batches, on the workers shared by the imports. */
+	private final Executor executor;
+
+	/** The batches which may still be queued or sent. */
+	private final Semaphore inFlight;
+
+	/** The first failure of a worker. */
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+	/** Whether the loader is closed, so that its batches still queued are not sent. */
+	private volatile boolean closed;
+
+	/** The rows of the current batch, as COPY text. */
+	private StringBuilder batch = new StringBuilder();
+
+	/** The number of rows of the current batch. */
+	private int batchRows;
+
+	/** The rank of the next row in the input. */
+	private long ordinal;
+
+	/** The number of rows sent to the staging table. */
+	private final AtomicLong staged = new AtomicLong();
+
+	/** The number of rows written to the observations table. */
+	private long inserted;
+
+	/**
+	 * Creates the loader and its staging table. The connection of the import must not be in auto-commit mode.
+	 *
+	 * @param pool     : The pool lending the connections of the workers.
+	 * @param executor : The workers shared by the imports, as many as {@link ImportSettings#getCopyWorkers()}.
+	 * @param conn     : The connection of the import.
+	 * @param table    : The table of the observations, coming from the series registry.
+	 * @param settings : The number of workers, the batch size and the number of attempts per batch.
+	 * @param progress : Receives the number of rows staged, as each batch is.
+	 * @throws SQLException if the staging table cannot be created.
+	 */
+	public CopyLoader(DatabaseConnectionPool pool, Executor executor, Connection conn, String table,
+			ImportSettings settings, ImportProgress progress) throws SQLException {
+		this.pool = pool;
+		this.executor = executor;
+		this.conn = conn;
+		// The name of the observations table would make it too long to be kept whole by PostgreSQL
+		this.stagingTable = "staging_" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+		if (stagingTable.length() > SeriesRegistry.MAX_TABLE_NAME) {
+			throw new IllegalStateException("Staging table name too long: " + stagingTable);
+		}
+		this.copySql = String.format(QueryCatalog.COPY_STAGING_TEMPLATE, stagingTable);
+		this.insertSql = String.format(QueryCatalog.INSERT_STAGED_TEMPLATE, table, stagingTable);
+		this.batchSize = settings.getBatchSize();
+		this.copyAttempts = settings.getCopyAttempts();
+		this.workers = settings.getCopyWorkers();
+		this.progress = progress;
+		// The workers use other connections: the staging table must be committed before they start
+		try (Connection setup = pool.getConnection(); Statement statement = setup.createStatement()) {
+			statement.execute(String.format(QueryCatalog.CREATE_STAGING_TEMPLATE, stagingTable, table));
+		}
+		this.inFlight = new Semaphore(2 * workers);
+	}
+
+	@Override
+	public void accept(long time, double value, int quality) throws IOException, SQLException {
+		batch.append(Instant.ofEpochMilli(time)).append('\t');
+		if (Double.isNaN(value)) {
+			batch.append("\\N");
+		} else {
+			batch.append(value);
+		}
+		batch.append('\t').append(quality).append('\t').append(ordinal++).append('\n');
+		if (++batchRows >= batchSize) {
+			submit();
+		}
+	}
+
+	/**
+	 * Sends the last batch, waits for the workers, then moves the staged rows to the observations table.
+	 *
+	 * @throws IOException  if interrupted while waiting for the workers.
+	 * @throws SQLException if a batch could not be sent or the database refused the rows.
+	 */
+	public void finish() throws IOException, SQLException {
+		submit();
+		acquire(2 * workers);
+		inFlight.release(2 * workers);
+		rethrow();
+		try (Statement statement = conn.createStatement()) {
+			inserted = statement.executeUpdate(insertSql);
+		}
+	}
+
+	/**
+	 * Drops the batches not sent yet, waits for those being sent, then drops the staging table. The transaction of the
+	 * import must be over.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		inFlight.acquireUninterruptibly(2 * workers);
+		try (Connection cleanup = pool.getConnection(); Statement statement = cleanup.createStatement()) {
+			statement.execute(String.format(QueryCatalog.DROP_TABLE_TEMPLATE, stagingTable));
+		} catch (SQLException e) {
+			// The rows are already in their table, or rolled back: only an unused table is left
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return The number of rows sent to the staging table.
+	 */
+	public long getStaged() {
+		return staged.get();
+	}
+
+	/**
+	 * @return The number of rows written to the observations table, once finished.
+	 */
+	public long getInserted() {
+		return inserted;
+	}
+
+	/**
+	 * @return The number of staged rows which were not written because their time was taken, once finished.
+	 */
+	public long getDuplicates() {
+		return staged.get() - inserted;
+	}
+
+	/**
+	 * Hands the current batch to the workers, once one of them can take it.
+	 */
+	private void submit() throws IOException, SQLException {
+		rethrow();
+		if (batchRows == 0) {
+			return;
+		}
+		String rows = batch.toString();
+		batch = new StringBuilder(rows.length());
+		batchRows = 0;
+		acquire(1);
+		try {
+			executor.execute(() -> {
+				try {
+					copy(rows);
+				} catch (Exception e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					inFlight.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlight.release(); // The workers are stopped: the application is shutting down
+			throw new SQLException("Failed to copy observations", e);
+		}
+	}
+
+	/**
+	 * Sends a batch to the staging table, on a new connection for each attempt.
+	 */
+	private void copy(String rows) throws IOException, SQLException, InterruptedException {
+		for (int attempt = 1;; attempt++) {
+			if (closed || failure.get() != null) {
+				return; // The import has already failed or ended
+			}
+			try (Connection worker = pool.getConnection()) {
+				long copied = worker.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql, new StringReader(rows));
+				staged.addAndGet(copied);
+				progress.addStaged(copied);
+				return;
+			} catch (IOException | SQLException e) {
+				if (attempt >= copyAttempts) {
+					throw e;
+				}
+				e.printStackTrace();
+				Thread.sleep(100L * attempt);
+			}
+		}
+	}
+
+	private void acquire(int permits) throws IOException {
+		try {
+			inFlight.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while copying observations", e);
+		}
+	}
+
+	/**
+	 * Throws the first failure of a worker, if any.
+	 */
+	private void rethrow() throws SQLException {
+		Exception e = failure.get();
+		if (e instanceof SQLException) {
+			throw (SQLException) e;
+		}
+		if (e != null) {
+			throw new SQLException("Failed to copy observations", e);
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * The {@link CsvObservationReader} class reads observations from CSV text whose header names the time, value and
+ * quality columns, in any order, such as {@code time,value,quality}.
+ * <p>
+ * The bytes are tokenized in a reused buffer, without building a string per cell: qualities are parsed as integers
+ * in place and times in the ISO-8601 form ("2024-01-01T00:00:00Z", "2024-01-01 00:00:00.250+01:00") as epoch
+ * milliseconds, other forms falling back to {@link JsonObservationReader#parseTime}. The delimiter is a comma, a
+ * semicolon or a tab, as found in the header; cells may be quoted with double quotes. An empty value is stored as
+ * missing, but a row whose time, value or quality cannot be read is rejected and counted, as with JSON.
+ */
+public class CsvObservationReader implements ObservationReader {
+
+	/** The size of the read buffer. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The number of days of each month of a common year. */
+	private static final int[] MONTH_DAYS = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	/** The number of observations read. */
+	private long parsed;
+
+	/** The number of observations which could not be read. */
+	private long rejected;
+
+	/** The bytes of the current row, its cells following each other. */
+	private byte[] row = new byte[256];
+	private int rowLength;
+
+	/** Where each cell of the current row starts and ends. */
+	private int[] cellStarts = new int[8];
+	private int[] cellEnds = new int[8];
+	private int cellCount;
+
+	/** The delimiter, known once the header is read. */
+	private byte delimiter;
+
+	/** The columns of the time, the value and the quality. */
+	private int timeColumn = -1;
+	private int valueColumn = -1;
+	private int qualityColumn = -1;
+
+	@Override
+	public void read(InputStream input, ObservationSink sink) throws IOException, SQLException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		boolean header = true;
+		boolean quoted = false;
+		boolean quoteClosed = false;
+		int cellStart = 0;
+		int count;
+		while ((count = input.read(buffer)) != -1) {
+			for (int i = 0; i < count; i++) {
+				byte b = buffer[i];
+				if (quoteClosed) {
+					quoteClosed = false;
+					if (b == '"') {
+						// A doubled quote stands for a quote
+						append(b);
+						quoted = true;
+						continue;
+					}
+				}
+				if (quoted) {
+					if (b == '"') {
+						quoted = false;
+						quoteClosed = true;
+					} else {
+						append(b);
+					}
+				} else if (b == '\n') {
+					endCell(cellStart);
+					header = endRow(header, sink);
+					cellStart = 0;
+				} else if (b == '\r') {
+					continue;
+				} else if (header && delimiter == 0 && (b == ',' || b == ';' || b == '\t')) {
+					delimiter = b;
+					endCell(cellStart);
+					cellStart = rowLength;
+				} else if (b == delimiter) {
+					endCell(cellStart);
+					cellStart = rowLength;
+				} else if (b == '"' && rowLength == cellStart) {
+					quoted = true;
+				} else {
+					append(b);
+				}
+			}
+		}
+		if (rowLength > 0 || cellCount > 0) {
+			endCell(cellStart);
+			endRow(header, sink);
+		}
+		if (timeColumn < 0) {
+			throw new IOException("Expected a header naming the time and quality columns");
+		}
+	}
+
+	@Override
+	public long getParsed() {
+		return parsed;
+	}
+
+	@Override
+	public long getRejected() {
+		return rejected;
+	}
+
+	private void append(byte b) {
+		if (rowLength == row.length) {
+			row = Arrays.copyOf(row, rowLength * 2);
+		}
+		row[rowLength++] = b;
+	}
+
+	private void endCell(int cellStart) {
+		if (cellCount == cellStarts.length) {
+			cellStarts = Arrays.copyOf(cellStarts, cellCount * 2);
+			cellEnds = Arrays.copyOf(cellEnds, cellCount * 2);
+		}
+		cellStarts[cellCount] = cellStart;
+		cellEnds[cellCount] = rowLength;
+		cellCount++;
+	}
+
+	/**
+	 * Handles a complete row, then starts a new one.
+	 *
+	 * @return Whether the header is still expected.
+	 */
+	private boolean endRow(boolean header, ObservationSink sink) throws IOException, SQLException {
+		try {
+			if (cellCount == 1 && cellEnds[0] == cellStarts[0]) {
+				return header; // An empty line
+			}
+			if (header) {
+				readHeader();
+				return false;
+			}
+			parsed++;
+			long time;
+			double value;
+			int quality;
+			try {
+				if (timeColumn >= cellCount || qualityColumn >= cellCount) {
+					throw new NumberFormatException("Missing cells");
+				}
+				time = parseTime(cellStarts[timeColumn], cellEnds[timeColumn]);
+				value = parseDouble(valueColumn);
+				quality = parseInt(qualityColumn);
+			} catch (DateTimeParseException | NumberFormatException e) {
+				System.err.println("Invalid observation: " + new String(row, 0, rowLength, StandardCharsets.UTF_8));
+				rejected++;
+				return false;
+			}
+			sink.accept(time, value, quality);
+			return false;
+		} finally {
+			rowLength = 0;
+			cellCount = 0;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		for (int i = 0; i < cellCount; i++) {
+			String name = cell(i).replace("\uFEFF", "").trim().toLowerCase();
+			if ("time".equals(name)) {
+				timeColumn = i;
+			} else if ("value".equals(name)) {
+				valueColumn = i;
+			} else if ("quality".equals(name)) {
+				qualityColumn = i;
+			}
+		}
+		if (timeColumn < 0 || qualityColumn < 0) {
+			throw new IOException("Expected a header naming the time and quality columns");
+		}
+	}
+
+	private String cell(int column) {
+		return new String(row, cellStarts[column], cellEnds[column] - cellStarts[column], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses a cell as an integer, without sign other than a leading minus.
+	 */
+	private int parseInt(int column) {
+		int start = cellStarts[column];
+		int end = cellEnds[column];
+		while (start < end && row[start] == ' ') {
+			start++;
+		}
+		while (end > start && row[end - 1] == ' ') {
+			end--;
+		}
+		boolean negative = start < end && row[start] == '-';
+		if (negative) {
+			start++;
+		}
+		if (start == end || end - start > 9) {
+			return Integer.parseInt(cell(column).trim());
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = row[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return Integer.parseInt(cell(column).trim());
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a cell as a double, NaN when the column is missing or the cell empty.
+	 *
+	 * @throws NumberFormatException if the cell is not a number.
+	 */
+	private double parseDouble(int column) {
+		if (column < 0 || column >= cellCount) {
+			return Double.NaN;
+		}
+		String text = cell(column).trim();
+		return text.isEmpty() ? Double.NaN : Double.parseDouble(text);
+	}
+
+	/**
+	 * Parses an ISO-8601 time with an offset, falling back to {@link JsonObservationReader#parseTime} for other forms.
+	 */
+	private long parseTime(int start, int end) {
+		while (start < end && row[start] == ' ') {
+			start++;
+		}
+		while (end > start && row[end - 1] == ' ') {
+			end--;
+		}
+		long time = parseIsoTime(start, end);
+		if (time == Long.MIN_VALUE) {
+			return JsonObservationReader.parseTime(new String(row, start, end - start, StandardCharsets.UTF_8));
+		}
+		return time;
+	}
+
+	/**
+	 * Parses "yyyy-MM-dd[T ]HH:mm:ss[.SSS...](Z|+HH:mm|+HHmm|+HH)".
+	 *
+	 * @return The time in milliseconds since the epoch, or Long.MIN_VALUE if the cell has another form.
+	 */
+	private long parseIsoTime(int start, int end) {
+		int length = end - start;
+		if (length < 20 || row[start + 4] != '-' || row[start + 7] != '-'
+				|| (row[start + 10] != 'T' && row[start + 10] != ' ') || row[start + 13] != ':'
+				|| row[start + 16] != ':') {
+			return Long.MIN_VALUE;
+		}
+		int year = digits(start, 4);
+		int month = digits(start + 5, 2);
+		int day = digits(start + 8, 2);
+		int hour = digits(start + 11, 2);
+		int minute = digits(start + 14, 2);
+		int second = digits(start + 17, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+				|| second < 0 || second > 59) {
+			return Long.MIN_VALUE;
+		}
+		boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+		if (day > MONTH_DAYS[month - 1] + (month == 2 && leap ? 1 : 0)) {
+			return Long.MIN_VALUE;
+		}
+		int i = start + 19;
+		int millis = 0;
+		if (row[i] == '.') {
+			int scale = 100;
+			i++;
+			while (i < end && row[i] >= '0' && row[i] <= '9') {
+				millis += (row[i] - '0') * scale;
+				scale /= 10;
+				i++;
+			}
+		}
+		int offsetSeconds;
+		if (i == end - 1 && row[i] == 'Z') {
+			offsetSeconds = 0;
+		} else if (i < end && (row[i] == '+' || row[i] == '-')) {
+			int sign = row[i] == '-' ? -1 : 1;
+			int rest = end - i - 1;
+			int offsetHours = digits(i + 1, 2);
+			int offsetMinutes;
+			if (rest == 2) {
+				offsetMinutes = 0;
+			} else if (rest == 4) {
+				offsetMinutes = digits(i + 3, 2);
+			} else if (rest == 5 && row[i + 3] == ':') {
+				offsetMinutes = digits(i + 4, 2);
+			} else {
+				return Long.MIN_VALUE;
+			}
+			if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+				return Long.MIN_VALUE;
+			}
+			offsetSeconds = sign * (offsetHours * 3600 + offsetMinutes * 60);
+		} else {
+			return Long.MIN_VALUE;
+		}
+		long seconds = epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offsetSeconds;
+		return seconds * 1000L + millis;
+	}
+
+	/**
+	 * Reads a number of decimal digits.
+	 *
+	 * @return The number, or -1 if a byte is not a digit.
+	 */
+	private int digits(int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = row[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Gives the number of days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+	 */
+	private static long epochDay(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+}
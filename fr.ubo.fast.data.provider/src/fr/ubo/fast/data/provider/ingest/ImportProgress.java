@@ -0,0 +1,255 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link ImportProgress} class follows an import of observations while it runs, for the clients polling it.
+ * <p>
+ * The import updates it from its own thread: the bytes and the rows read are published each time the reader takes a
+ * buffer from the input, and the rows staged each time a batch reaches the database, so the counts lag the import by
+ * a buffer or a batch at most. The numbers of inserted and duplicate rows are only known once the import ends.
+ */
+public class ImportProgress {
+
+	/** The state of an import waiting for a thread. */
+	public static final String QUEUED = "queued";
+
+	/** The state of an import running. */
+	public static final String RUNNING = "running";
+
+	/** The state of a successful import. */
+	public static final String COMPLETED = "completed";
+
+	/** The state of an import which failed. */
+	public static final String FAILED = "failed";
+
+	/** The identifier of the import. */
+	private final String id;
+
+	/** The name of the time series. */
+	private final String name;
+
+	/** One of the states above. */
+	private volatile String state = QUEUED;
+
+	/** What the import ended with, once it has. */
+	private volatile String message;
+
+	/** The number of bytes of input, -1 while unknown. */
+	private volatile long totalBytes = -1;
+
+	/** The number of bytes of input read, before decompression. */
+	private volatile long bytesRead;
+
+	/** The numbers of observations read and rejected by the reader. */
+	private volatile long parsed;
+	private volatile long rejected;
+
+	/** The number of rows sent to the staging table. */
+	private final AtomicLong staged = new AtomicLong();
+
+	/** The report of the import, once it has ended. */
+	private volatile ImportReport report;
+
+	/** When the import started and ended, in milliseconds since the epoch. */
+	private volatile long startTime;
+	private volatile long endTime;
+
+	/**
+	 * Creates the progress of a queued import.
+	 *
+	 * @param id   : The identifier of the import.
+	 * @param name : The name of the time series.
+	 */
+	public ImportProgress(String id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	/**
+	 * Counts the bytes read from an input, and the observations its reader has read so far.
+	 *
+	 * @param input  : The input of the import, as received.
+	 * @param reader : The reader of the observations, which must read from the returned stream in this thread.
+	 * @return The input to read.
+	 */
+	public InputStream track(InputStream input, ObservationReader reader) {
+		return new FilterInputStream(input) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					published(1, reader);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int count = super.read(b, off, len);
+				if (count > 0) {
+					published(count, reader);
+				}
+				return count;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				long count = super.skip(n);
+				published(count, reader);
+				return count;
+			}
+		};
+	}
+
+	private void published(long count, ObservationReader reader) {
+		bytesRead += count;
+		parsed = reader.getParsed();
+		rejected = reader.getRejected();
+	}
+
+	/**
+	 * Marks the import as running.
+	 */
+	public void started() {
+		startTime = System.currentTimeMillis();
+		state = RUNNING;
+	}
+
+	/**
+	 * Adds rows sent to the staging table.
+	 *
+	 * @param rows : The number of rows of a batch.
+	 */
+	public void addStaged(long rows) {
+		staged.addAndGet(rows);
+	}
+
+	/**
+	 * @param totalBytes : The number of bytes of input, once known.
+	 */
+	public void setTotalBytes(long totalBytes) {
+		this.totalBytes = totalBytes;
+	}
+
+	/**
+	 * Marks the import as ended.
+	 *
+	 * @param report  : The report of the import.
+	 * @param message : The outcome, for the client.
+	 */
+	public void ended(ImportReport report, String message) {
+		endTime = System.currentTimeMillis();
+		this.report = report;
+		this.message = message;
+		if (report.getStatus() == ImportReport.COMPLETED) {
+			parsed = report.getRead();
+			state = COMPLETED;
+		} else {
+			state = FAILED;
+		}
+	}
+
+	/**
+	 * @return Whether the import has ended.
+	 */
+	public boolean isEnded() {
+		return report != null;
+	}
+
+	/**
+	 * @return When the import ended, in milliseconds since the epoch, 0 while it runs.
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return "queued", "running", "completed" or "failed".
+	 */
+	public String getState() {
+		return state;
+	}
+
+	/**
+	 * @return The outcome of the import, null while it runs.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return The number of bytes of input, -1 while unknown.
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return The number of bytes of input read, before decompression.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return The number of observations read.
+	 */
+	public long getParsed() {
+		return parsed;
+	}
+
+	/**
+	 * @return The number of observations rejected, those off quality or period counted once the import ends.
+	 */
+	public long getRejected() {
+		ImportReport ended = report;
+		return ended != null && ended.getStatus() == ImportReport.COMPLETED ? ended.getRejected() : rejected;
+	}
+
+	/**
+	 * @return The number of rows sent to the database.
+	 */
+	public long getStaged() {
+		return staged.get();
+	}
+
+	/**
+	 * @return The number of observations inserted, once the import has ended.
+	 */
+	public long getInserted() {
+		ImportReport ended = report;
+		return ended == null ? 0 : ended.getInserted();
+	}
+
+	/**
+	 * @return The number of duplicate observations, once the import has ended.
+	 */
+	public long getDuplicates() {
+		ImportReport ended = report;
+		return ended == null ? 0 : ended.getDuplicates();
+	}
+
+	/**
+	 * @return The number of observations read per second since the import started.
+	 */
+	public long getRowsPerSecond() {
+		long start = startTime;
+		if (start == 0) {
+			return 0;
+		}
+		long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+		return end == start ? parsed : parsed * 1000 / (end - start);
+	}
+}
@@ -0,0 +1,104 @@
+package fr.ubo.fast.data.provider.ingest;
+
+/**
+ * The {@link ImportReport} class gives the outcome of an import of observations.
+ * <p>
+ * Each observation read is either inserted, a duplicate of an observation at the same time, or rejected because it
+ * could not be read, its quality is out of range or it is off the period of the series.
+ */
+public class ImportReport {
+
+	/** The status of a failed import, whose input could not be read. */
+	public static final int FAILED = 0;
+
+	/** The status of a successful import. */
+	public static final int COMPLETED = 1;
+
+	/** The status of an import the database refused. */
+	public static final int DATABASE_FAILED = 2;
+
+	/** A value of 1 indicates success, 0 indicates failure, and 2 indicates a failure of the database. */
+	private final int status;
+
+	/** The number of observations read. */
+	private final long read;
+
+	/** The number of observations inserted. */
+	private final long inserted;
+
+	/** The number of observations dropped because one exists at that time. */
+	private final long duplicates;
+
+	/** The number of observations rejected. */
+	private final long rejected;
+
+	/**
+	 * Creates the report of a completed import.
+	 *
+	 * @param read       : The number of observations read.
+	 * @param inserted   : The number of observations inserted.
+	 * @param duplicates : The number of observations dropped because one exists at that time.
+	 * @param rejected   : The number of observations rejected.
+	 */
+	public ImportReport(long read, long inserted, long duplicates, long rejected) {
+		this(COMPLETED, read, inserted, duplicates, rejected);
+	}
+
+	private ImportReport(int status, long read, long inserted, long duplicates, long rejected) {
+		this.status = status;
+		this.read = read;
+		this.inserted = inserted;
+		this.duplicates = duplicates;
+		this.rejected = rejected;
+	}
+
+	/**
+	 * Creates the report of an import which wrote nothing.
+	 *
+	 * @param status : {@link #FAILED} or {@link #DATABASE_FAILED}.
+	 * @return The report.
+	 */
+	public static ImportReport failed(int status) {
+		return new ImportReport(status, 0, 0, 0, 0);
+	}
+
+	/**
+	 * @return A value of 1 indicates success, 0 indicates failure, and 2 indicates a failure of the database.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return The number of observations read.
+	 */
+	public long getRead() {
+		return read;
+	}
+
+	/**
+	 * @return The number of observations inserted.
+	 */
+	public long getInserted() {
+		return inserted;
+	}
+
+	/**
+	 * @return The number of observations dropped because one exists at that time.
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return The number of observations rejected.
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public String toString() {
+		return read + " read, " + inserted + " inserted, " + duplicates + " duplicates, " + rejected + " rejected";
+	}
+}
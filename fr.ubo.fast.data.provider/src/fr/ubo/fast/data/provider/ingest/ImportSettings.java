@@ -0,0 +1,128 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.util.Properties;
+
+/**
+ * The {@link ImportSettings} class holds the settings of the imports of observations, read from the database
+ * properties.
+ * <p>
+ * Each running import holds a connection for its transaction, and the copy workers, shared by all the imports, hold
+ * one each: with the builds of configurations and the connections kept for the reads, they must fit in the pool, or
+ * the workers wait for connections until their attempts run out.
+ */
+public class ImportSettings {
+
+	/** The property giving the number of pooled connections copying batches at the same time, for all the imports. */
+	public static final String COPY_WORKERS = "IMPORT_COPY_WORKERS";
+
+	/** The property giving the number of rows sent per COPY. */
+	public static final String BATCH_SIZE = "IMPORT_BATCH_SIZE";
+
+	/** The property giving the number of times a batch is sent before the import fails. */
+	public static final String COPY_ATTEMPTS = "IMPORT_COPY_ATTEMPTS";
+
+	/** The property giving the number of imports running at the same time. */
+	public static final String JOB_THREADS = "IMPORT_JOB_THREADS";
+
+	/** The property giving the number of the import threads kept for the upload sessions. */
+	public static final String UPLOAD_THREADS = "IMPORT_UPLOAD_THREADS";
+
+	/** The number of connections left to the reads and to the short setup steps of the imports. */
+	public static final int RESERVED_CONNECTIONS = 2;
+
+	/** The number of pooled connections copying batches at the same time, for all the imports. */
+	private final int copyWorkers;
+
+	/** The number of rows sent per COPY. */
+	private final int batchSize;
+
+	/** The number of times a batch is sent before the import fails. */
+	private final int copyAttempts;
+
+	/** The number of imports running at the same time. */
+	private final int jobThreads;
+
+	/** The number of the import threads kept for the upload sessions. */
+	private final int uploadThreads;
+
+	/**
+	 * Reads the settings.
+	 *
+	 * @param properties : The database properties.
+	 */
+	public ImportSettings(Properties properties) {
+		this.copyWorkers = Math.max(getInt(properties, COPY_WORKERS, 4), 1);
+		this.batchSize = Math.max(getInt(properties, BATCH_SIZE, 10000), 1);
+		this.copyAttempts = Math.max(getInt(properties, COPY_ATTEMPTS, 3), 1);
+		// At least one thread is kept for the upload sessions, and one for the other imports
+		this.uploadThreads = Math.max(getInt(properties, UPLOAD_THREADS, 1), 1);
+		this.jobThreads = Math.max(getInt(properties, JOB_THREADS, 2), uploadThreads + 1);
+	}
+
+	/**
+	 * @return The number of pooled connections copying batches at the same time, for all the imports.
+	 */
+	public int getCopyWorkers() {
+		return copyWorkers;
+	}
+
+	/**
+	 * @return The number of rows sent per COPY.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return The number of times a batch is sent before the import fails.
+	 */
+	public int getCopyAttempts() {
+		return copyAttempts;
+	}
+
+	/**
+	 * @return The number of imports running at the same time.
+	 */
+	public int getJobThreads() {
+		return jobThreads;
+	}
+
+	/**
+	 * @return The number of the import threads kept for the upload sessions, included in {@link #getJobThreads()}.
+	 */
+	public int getUploadThreads() {
+		return uploadThreads;
+	}
+
+	/**
+	 * Checks that the imports, the builds of configurations and the reserved connections fit in the pool.
+	 *
+	 * @param poolSize     : The largest number of connections of the pool.
+	 * @param buildThreads : The number of relations built at the same time.
+	 * @throws IllegalStateException if they need more connections than the pool has.
+	 */
+	public void checkConnections(int poolSize, int buildThreads) {
+		int needed = jobThreads + copyWorkers + buildThreads + RESERVED_CONNECTIONS;
+		if (needed > poolSize) {
+			throw new IllegalStateException(String.format(
+					"%s (%d) + %s (%d) + CONFIG_BUILD_THREADS (%d) + %d reserved connections exceed the pool size (%d)",
+					JOB_THREADS, jobThreads, COPY_WORKERS, copyWorkers, buildThreads, RESERVED_CONNECTIONS, poolSize));
+		}
+	}
+
+	/**
+	 * Reads an integer property.
+	 *
+	 * @param properties   : The properties.
+	 * @param key          : The property name.
+	 * @param defaultValue : The value used when the property is missing.
+	 * @return The property value.
+	 */
+	private static int getInt(Properties properties, String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
+	}
+}
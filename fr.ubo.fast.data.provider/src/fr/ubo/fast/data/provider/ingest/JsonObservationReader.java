@@ -0,0 +1,122 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * The {@link JsonObservationReader} class reads an array of observations such as
+ * {@code [{"time": "2024-01-01 00:00:00+00:00", "value": 12.5, "quality": 1}, ...]} from the token stream of the
+ * upload, without building any tree, and passes each one to a sink.
+ * <p>
+ * Values and qualities may be given as numbers or strings. A missing, null or empty value is stored as missing, but an
+ * observation whose time, value or quality cannot be read is rejected and counted.
+ */
+public class JsonObservationReader implements ObservationReader {
+
+	/** Creates the JSON parsers. */
+	private static final JsonFactory JSON = new JsonFactory();
+
+	/** The number of observations read. */
+	private long parsed;
+
+	/** The number of observations which could not be read. */
+	private long rejected;
+
+	@Override
+	public void read(InputStream input, ObservationSink sink) throws IOException, SQLException {
+		try (JsonParser parser = JSON.createParser(input)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new IOException("Expected data to start with an Array");
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				String time = null;
+				double value = Double.NaN;
+				boolean invalidValue = false;
+				String quality = null;
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.getCurrentName();
+					JsonToken token = parser.nextToken();
+					if ("time".equals(field)) {
+						time = parser.getValueAsString();
+					} else if ("value".equals(field)) {
+						try {
+							value = readValue(parser, token);
+						} catch (NumberFormatException e) {
+							invalidValue = true;
+						}
+					} else if ("quality".equals(field)) {
+						quality = parser.getValueAsString();
+					} else {
+						parser.skipChildren();
+					}
+				}
+				parsed++;
+
+				long millis;
+				int code;
+				try {
+					millis = parseTime(time);
+					code = Integer.parseInt(quality);
+					if (invalidValue) {
+						throw new NumberFormatException("Invalid value");
+					}
+				} catch (DateTimeParseException | NumberFormatException | NullPointerException e) {
+					System.err.println("Invalid observation: time " + time + ", quality " + quality
+							+ (invalidValue ? ", invalid value" : ""));
+					rejected++;
+					continue;
+				}
+				sink.accept(millis, value, code);
+			}
+		}
+	}
+
+	@Override
+	public long getParsed() {
+		return parsed;
+	}
+
+	@Override
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Parses a time such as "2024-01-01 00:00:00+00:00" or "2024-01-01T00:00:00Z".
+	 *
+	 * @param time : The time.
+	 * @return The time in milliseconds since the epoch.
+	 */
+	public static long parseTime(String time) {
+		return OffsetDateTime.parse(time.replace(" ", "T"), DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant()
+				.toEpochMilli();
+	}
+
+	/**
+	 * Reads a value, NaN when it is null or an empty string.
+	 *
+	 * @throws NumberFormatException if the value is not a number.
+	 */
+	private static double readValue(JsonParser parser, JsonToken token) throws IOException {
+		if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+			return parser.getDoubleValue();
+		}
+		if (token == JsonToken.VALUE_NULL) {
+			return Double.NaN;
+		}
+		if (token == JsonToken.VALUE_STRING) {
+			String text = parser.getText().trim();
+			return text.isEmpty() ? Double.NaN : Double.parseDouble(text);
+		}
+		parser.skipChildren();
+		throw new NumberFormatException("Not a number: " + token);
+	}
+}
@@ -0,0 +1,132 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * The {@link ObservationFilter} class keeps the observations which may be imported into a time series and passes them
+ * on to the loader.
+ * <p>
+ * An observation is kept when its quality is in the range of the series, when it falls on a whole number of periods
+ * from the start of the series, so that the series stays regular. Duplicates are left to the loader, which skips them
+ * in one statement. The first and last dates of the series follow the kept observations, whose time range tells which
+ * buckets of the precomputed tables change.
+ */
+public class ObservationFilter implements ObservationSink {
+
+	/** Receives the kept observations. */
+	private final ObservationSink loader;
+
+	/** The quality range. */
+	private final int qmin;
+	private final int qmax;
+
+	/** The period of the series, in seconds. */
+	private final long period;
+
+	/** The first and last dates of the series, in seconds since the epoch, when the series has some. */
+	private Long startSecond;
+	private Long endSecond;
+
+	/** The times of the first and last observations kept, in milliseconds since the epoch, once one is. */
+	private long firstKept = Long.MAX_VALUE;
+	private long lastKept = Long.MIN_VALUE;
+
+	/** The number of observations dropped for their quality. */
+	private long badQuality;
+
+	/** The number of observations dropped because they are off the period. */
+	private long offPeriod;
+
+	/**
+	 * Creates the filter.
+	 *
+	 * @param loader    : Receives the kept observations.
+	 * @param qmin      : The minimum quality.
+	 * @param qmax      : The maximum quality.
+	 * @param period    : The period of the series, in seconds.
+	 * @param startDate : The first date of the series, or null.
+	 * @param endDate   : The last date of the series, or null.
+	 */
+	public ObservationFilter(ObservationSink loader, int qmin, int qmax, int period, OffsetDateTime startDate,
+			OffsetDateTime endDate) {
+		this.loader = loader;
+		this.qmin = qmin;
+		this.qmax = qmax;
+		this.period = Math.max(period, 1);
+		this.startSecond = startDate == null ? null : startDate.toEpochSecond();
+		this.endSecond = endDate == null ? null : endDate.toEpochSecond();
+	}
+
+	@Override
+	public void accept(long time, double value, int quality) throws IOException, SQLException {
+		if (quality < qmin || quality > qmax) {
+			badQuality++;
+			return;
+		}
+		long second = Math.floorDiv(time, 1000L);
+		// The series only moves to an observation on its period, which keeps it regular
+		if (startSecond == null || (second < startSecond && (startSecond - second) % period == 0)) {
+			startSecond = second;
+		}
+		if (endSecond == null || (second > endSecond && (second - endSecond) % period == 0)) {
+			endSecond = second;
+		}
+		if (Math.abs(second - startSecond) % period != 0) {
+			offPeriod++;
+			return;
+		}
+		firstKept = Math.min(firstKept, time);
+		lastKept = Math.max(lastKept, time);
+		loader.accept(time, value, quality);
+	}
+
+	/**
+	 * @return The first date of the series, or null if it has none.
+	 */
+	public OffsetDateTime getStartDate() {
+		return toDate(startSecond);
+	}
+
+	/**
+	 * @return The last date of the series, or null if it has none.
+	 */
+	public OffsetDateTime getEndDate() {
+		return toDate(endSecond);
+	}
+
+	/**
+	 * @return The time of the earliest observation kept, or null if none was.
+	 */
+	public OffsetDateTime getFirstKept() {
+		return firstKept > lastKept ? null : OffsetDateTime.ofInstant(Instant.ofEpochMilli(firstKept), ZoneOffset.UTC);
+	}
+
+	/**
+	 * @return The time of the latest observation kept, or null if none was.
+	 */
+	public OffsetDateTime getLastKept() {
+		return firstKept > lastKept ? null : OffsetDateTime.ofInstant(Instant.ofEpochMilli(lastKept), ZoneOffset.UTC);
+	}
+
+	/**
+	 * @return The number of observations dropped for their quality.
+	 */
+	public long getBadQuality() {
+		return badQuality;
+	}
+
+	/**
+	 * @return The number of observations dropped because they are off the period.
+	 */
+	public long getOffPeriod() {
+		return offPeriod;
+	}
+
+	private static OffsetDateTime toDate(Long second) {
+		return second == null ? null : OffsetDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneOffset.UTC);
+	}
+}
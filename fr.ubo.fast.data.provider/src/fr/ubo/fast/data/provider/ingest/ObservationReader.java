@@ -0,0 +1,32 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+
+/**
+ * The {@link ObservationReader} interface reads the observations of an upload, in one of the accepted formats, and
+ * passes each one to a sink.
+ */
+public interface ObservationReader {
+
+	/**
+	 * Reads all the observations of a stream.
+	 *
+	 * @param input : The upload.
+	 * @param sink  : Receives the observations, in the order of the stream.
+	 * @throws IOException  if the stream is not in the format of the reader or cannot be read.
+	 * @throws SQLException if the sink cannot write to the database.
+	 */
+	void read(InputStream input, ObservationSink sink) throws IOException, SQLException;
+
+	/**
+	 * @return The number of observations read.
+	 */
+	long getParsed();
+
+	/**
+	 * @return The number of observations which could not be read.
+	 */
+	long getRejected();
+}
@@ -0,0 +1,21 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * The {@link ObservationSink} interface receives the observations of an import, one at a time, as primitives.
+ */
+public interface ObservationSink {
+
+	/**
+	 * Receives an observation.
+	 *
+	 * @param time    : The time of the observation, in milliseconds since the epoch.
+	 * @param value   : The value, NaN when it is missing.
+	 * @param quality : The quality code.
+	 * @throws IOException  if the observation cannot be passed on.
+	 * @throws SQLException if the observation cannot be written to the database.
+	 */
+	void accept(long time, double value, int quality) throws IOException, SQLException;
+}
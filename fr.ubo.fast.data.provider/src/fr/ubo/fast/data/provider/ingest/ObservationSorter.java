@@ -0,0 +1,305 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link ObservationSorter} class passes observations on in time order, in bounded memory.
+ * <p>
+ * Observations are held in primitive arrays of a fixed number of rows. When they are full, the run is sorted and
+ * written to a temporary file as fixed-size records, then the runs are merged when the input ends. The sort is
+ * stable and the merge prefers the earlier run, so observations at the same time keep the order of the input. Input
+ * already in time order, which sensor exports almost always are, is never sorted nor merged: a single run is passed on
+ * from memory, and several runs are read back one after the other.
+ */
+public class ObservationSorter implements ObservationSink, Closeable {
+
+	/** The number of observations held in memory when none is given. */
+	public static final int DEFAULT_RUN_SIZE = 1 << 20;
+
+	/** The size of the buffers of the run files. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Receives the observations in time order. */
+	private final ObservationSink downstream;
+
+	/** The observations of the current run. */
+	private final long[] times;
+	private final double[] values;
+	private final int[] qualities;
+	private int size;
+
+	/** The order of the current run, and room to sort it. */
+	private final int[] order;
+	private final int[] buffer;
+
+	/** Whether the current run is in time order. */
+	private boolean runOrdered = true;
+
+	/** Whether the whole input is in time order. */
+	private boolean ordered = true;
+
+	/** The time of the last observation received. */
+	private long lastTime = Long.MIN_VALUE;
+
+	/** The files of the runs written so far. */
+	private final List<File> runs = new ArrayList<>();
+
+	/**
+	 * Creates the sorter.
+	 *
+	 * @param downstream : Receives the observations in time order.
+	 * @param runSize    : The number of observations held in memory.
+	 */
+	public ObservationSorter(ObservationSink downstream, int runSize) {
+		this.downstream = downstream;
+		this.times = new long[runSize];
+		this.values = new double[runSize];
+		this.qualities = new int[runSize];
+		this.order = new int[runSize];
+		this.buffer = new int[runSize];
+	}
+
+	@Override
+	public void accept(long time, double value, int quality) throws IOException, SQLException {
+		if (size == times.length) {
+			spill();
+		}
+		if (time < lastTime) {
+			ordered = false;
+			if (size > 0 && time < times[size - 1]) {
+				runOrdered = false;
+			}
+		}
+		lastTime = time;
+		times[size] = time;
+		values[size] = value;
+		qualities[size] = quality;
+		size++;
+	}
+
+	/**
+	 * Passes every observation on, in time order.
+	 *
+	 * @throws IOException  if a run file cannot be read or written.
+	 * @throws SQLException if the downstream sink cannot write to the database.
+	 */
+	public void finish() throws IOException, SQLException {
+		if (runs.isEmpty()) {
+			sortRun();
+			for (int i = 0; i < size; i++) {
+				int row = order[i];
+				downstream.accept(times[row], values[row], qualities[row]);
+			}
+			size = 0;
+			return;
+		}
+		spill();
+		if (ordered) {
+			for (File run : runs) {
+				try (RunReader reader = new RunReader(run)) {
+					while (reader.next()) {
+						downstream.accept(reader.time, reader.value, reader.quality);
+					}
+				}
+			}
+		} else {
+			merge();
+		}
+	}
+
+	/**
+	 * Deletes the run files.
+	 */
+	@Override
+	public void close() throws IOException {
+		for (File run : runs) {
+			Files.deleteIfExists(run.toPath());
+		}
+		runs.clear();
+	}
+
+	/**
+	 * Sorts the current run and writes it to a new run file.
+	 */
+	private void spill() throws IOException {
+		sortRun();
+		File run = File.createTempFile("observations", ".run");
+		runs.add(run);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+			for (int i = 0; i < size; i++) {
+				int row = order[i];
+				out.writeLong(times[row]);
+				out.writeDouble(values[row]);
+				out.writeInt(qualities[row]);
+			}
+		}
+		size = 0;
+		runOrdered = true;
+	}
+
+	/**
+	 * Fills the order of the current run, sorting it by time unless it is already in order.
+	 */
+	private void sortRun() {
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		if (runOrdered) {
+			return;
+		}
+		// Bottom-up merge sort of the rows: stable, and the times are only compared, never parsed
+		int[] from = order;
+		int[] to = buffer;
+		for (int width = 1; width < size; width *= 2) {
+			for (int low = 0; low < size; low += 2 * width) {
+				int middle = Math.min(low + width, size);
+				int high = Math.min(low + 2 * width, size);
+				int i = low;
+				int j = middle;
+				for (int k = low; k < high; k++) {
+					if (i < middle && (j >= high || times[from[i]] <= times[from[j]])) {
+						to[k] = from[i++];
+					} else {
+						to[k] = from[j++];
+					}
+				}
+			}
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+		if (from != order) {
+			System.arraycopy(from, 0, order, 0, size);
+		}
+	}
+
+	/**
+	 * Merges the run files, using a heap of the runs ordered by their current time, then by their rank.
+	 */
+	private void merge() throws IOException, SQLException {
+		List<RunReader> readers = new ArrayList<>();
+		try {
+			for (File run : runs) {
+				readers.add(new RunReader(run));
+			}
+			RunReader[] heap = new RunReader[readers.size()];
+			int heapSize = 0;
+			for (int rank = 0; rank < readers.size(); rank++) {
+				RunReader reader = readers.get(rank);
+				reader.rank = rank;
+				if (reader.next()) {
+					heap[heapSize] = reader;
+					siftUp(heap, heapSize++);
+				}
+			}
+			while (heapSize > 0) {
+				RunReader first = heap[0];
+				downstream.accept(first.time, first.value, first.quality);
+				if (!first.next()) {
+					heap[0] = heap[--heapSize];
+				}
+				siftDown(heap, heapSize);
+			}
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	private static void siftUp(RunReader[] heap, int index) {
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (!before(heap[index], heap[parent])) {
+				return;
+			}
+			swap(heap, index, parent);
+			index = parent;
+		}
+	}
+
+	private static void siftDown(RunReader[] heap, int heapSize) {
+		int index = 0;
+		while (true) {
+			int smallest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (left < heapSize && before(heap[left], heap[smallest])) {
+				smallest = left;
+			}
+			if (right < heapSize && before(heap[right], heap[smallest])) {
+				smallest = right;
+			}
+			if (smallest == index) {
+				return;
+			}
+			swap(heap, index, smallest);
+			index = smallest;
+		}
+	}
+
+	private static boolean before(RunReader a, RunReader b) {
+		return a.time < b.time || (a.time == b.time && a.rank < b.rank);
+	}
+
+	private static void swap(RunReader[] heap, int i, int j) {
+		RunReader swap = heap[i];
+		heap[i] = heap[j];
+		heap[j] = swap;
+	}
+
+	/**
+	 * Reads the observations of a run file one by one.
+	 */
+	private static class RunReader implements Closeable {
+
+		private final DataInputStream in;
+
+		/** The rank of the run in the input. */
+		private int rank;
+
+		/** The current observation. */
+		private long time;
+		private double value;
+		private int quality;
+
+		RunReader(File run) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+		}
+
+		/**
+		 * Reads the next observation.
+		 *
+		 * @return false at the end of the run.
+		 */
+		boolean next() throws IOException {
+			try {
+				time = in.readLong();
+			} catch (EOFException e) {
+				return false;
+			}
+			value = in.readDouble();
+			quality = in.readInt();
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package fr.ubo.fast.data.provider.ingest;
+
+import java.io.IOException;
+
+/**
+ * The {@link UploadBusyException} class signals a chunk refused because the import lags too far behind the upload: the
+ * chunk was not kept, and the client sends it again later from the acknowledged offset.
+ */
+public class UploadBusyException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message : Why the chunk was refused.
+	 */
+	public UploadBusyException(String message) {
+		super(message);
+	}
+}
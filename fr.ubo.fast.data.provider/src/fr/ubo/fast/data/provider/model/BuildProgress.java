@@ -0,0 +1,281 @@
+package fr.ubo.fast.data.provider.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link BuildProgress} class follows the build of a configuration while it runs, for the clients polling it: the
+ * state and the elapsed time of each relation to create, and of the build as a whole.
+ * <p>
+ * The build is running from its first relation started to its last one ended. It then is completed when every
+ * relation was created, cancelled when it was cancelled before, and failed otherwise.
+ */
+public class BuildProgress {
+
+	/** The state of a build or a relation waiting for a thread. */
+	public static final String QUEUED = "queued";
+
+	/** The state of a build or a relation running. */
+	public static final String RUNNING = "running";
+
+	/** The state of a successful build or relation. */
+	public static final String COMPLETED = "completed";
+
+	/** The state of a build or a relation which failed. */
+	public static final String FAILED = "failed";
+
+	/** The state of a build or a relation cancelled. */
+	public static final String CANCELLED = "cancelled";
+
+	/** The identifier of the build. */
+	private final String id;
+
+	/** The name of the time series. */
+	private final String name;
+
+	/** The relations to create, in the order they were planned. */
+	private final List<Table> tables = new ArrayList<>();
+
+	/** Whether the build was cancelled. */
+	private volatile boolean cancelled;
+
+	/** When the build started and ended, in milliseconds since the epoch. */
+	private volatile long startTime;
+	private volatile long endTime;
+
+	/**
+	 * Creates the progress of a queued build.
+	 *
+	 * @param id   : The identifier of the build.
+	 * @param name : The name of the time series.
+	 */
+	public BuildProgress(String id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	/**
+	 * Adds a relation to create, before the build starts.
+	 *
+	 * @param relation : The name of the relation.
+	 * @return Its progress.
+	 */
+	public Table addTable(String relation) {
+		Table table = new Table(relation);
+		tables.add(table);
+		return table;
+	}
+
+	/**
+	 * Marks the build as cancelled, the relations not started with it.
+	 */
+	public void cancel() {
+		cancelled = true;
+		for (Table table : tables) {
+			table.cancelIfQueued();
+		}
+		endIfDone();
+	}
+
+	/**
+	 * Marks a relation as running, and the build with it.
+	 *
+	 * @param table : The progress of the relation.
+	 */
+	public void started(Table table) {
+		if (startTime == 0) {
+			startTime = System.currentTimeMillis();
+		}
+		table.started();
+	}
+
+	/**
+	 * Marks a relation as ended, and the build once no relation is left.
+	 *
+	 * @param table   : The progress of the relation.
+	 * @param state   : Its state, completed, failed or cancelled.
+	 * @param message : Why the relation was not created, null if it was.
+	 */
+	public void ended(Table table, String state, String message) {
+		table.ended(state, message);
+		endIfDone();
+	}
+
+	/**
+	 * Marks the build as ended once every relation has, at once when there was none to create.
+	 */
+	public void endIfDone() {
+		for (Table table : tables) {
+			if (!table.isEnded()) {
+				return;
+			}
+		}
+		if (endTime == 0) {
+			endTime = System.currentTimeMillis();
+			if (startTime == 0) {
+				startTime = endTime;
+			}
+		}
+	}
+
+	/**
+	 * @return Whether the build was cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return Whether every relation has ended.
+	 */
+	public boolean isEnded() {
+		return endTime != 0;
+	}
+
+	/**
+	 * @return When the build ended, in milliseconds since the epoch, 0 while it runs.
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return "queued", "running", "completed", "failed" or "cancelled".
+	 */
+	public String getState() {
+		if (!isEnded()) {
+			return startTime == 0 ? QUEUED : RUNNING;
+		}
+		if (cancelled) {
+			return CANCELLED;
+		}
+		for (Table table : tables) {
+			if (!COMPLETED.equals(table.getState())) {
+				return FAILED;
+			}
+		}
+		return COMPLETED;
+	}
+
+	/**
+	 * @return The number of relations to create.
+	 */
+	public int getTotal() {
+		return tables.size();
+	}
+
+	/**
+	 * @return The number of relations created.
+	 */
+	public int getCompleted() {
+		int completed = 0;
+		for (Table table : tables) {
+			if (COMPLETED.equals(table.getState())) {
+				completed++;
+			}
+		}
+		return completed;
+	}
+
+	/**
+	 * @return The time since the build started, until it ended, in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return elapsed(startTime, endTime);
+	}
+
+	/**
+	 * @return The relations to create, in the order they were planned.
+	 */
+	public List<Table> getTables() {
+		return Collections.unmodifiableList(tables);
+	}
+
+	private static long elapsed(long start, long end) {
+		if (start == 0) {
+			return 0;
+		}
+		return (end == 0 ? System.currentTimeMillis() : end) - start;
+	}
+
+	/**
+	 * A relation to create: a precomputed table, a continuous aggregate, a level of the pyramid or a view.
+	 */
+	public static class Table {
+
+		/** The name of the relation. */
+		private final String relation;
+
+		/** One of the states of the build. */
+		private volatile String state = QUEUED;
+
+		/** Why the relation was not created, once it has ended. */
+		private volatile String message;
+
+		/** When the relation started and ended, in milliseconds since the epoch. */
+		private volatile long startTime;
+		private volatile long endTime;
+
+		private Table(String relation) {
+			this.relation = relation;
+		}
+
+		private void started() {
+			startTime = System.currentTimeMillis();
+			state = RUNNING;
+		}
+
+		private synchronized void cancelIfQueued() {
+			if (QUEUED.equals(state)) {
+				ended(CANCELLED, null);
+			}
+		}
+
+		private synchronized void ended(String state, String message) {
+			if (isEnded()) {
+				return;
+			}
+			endTime = System.currentTimeMillis();
+			this.message = message;
+			this.state = state;
+		}
+
+		private boolean isEnded() {
+			return endTime != 0;
+		}
+
+		public String getRelation() {
+			return relation;
+		}
+
+		/**
+		 * @return "queued", "running", "completed", "failed" or "cancelled".
+		 */
+		public String getState() {
+			return state;
+		}
+
+		/**
+		 * @return Why the relation was not created, null if it was or while it runs.
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		/**
+		 * @return The time since the relation started, until it ended, in milliseconds.
+		 */
+		public long getElapsedMillis() {
+			return elapsed(startTime, endTime);
+		}
+	}
+}
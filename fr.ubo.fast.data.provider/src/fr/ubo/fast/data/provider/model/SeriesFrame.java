@@ -0,0 +1,203 @@
+package fr.ubo.fast.data.provider.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * The {@link SeriesFrame} class holds the result of a data request: the start of each bucket, in milliseconds since
+ * the epoch, and one column of values per statistic.
+ * <p>
+ * Rows are added in time order and values are stored in primitive arrays, NaN marking a bucket without a value. The
+ * frames coming from several queries are joined on their times with {@link #merge(SeriesFrame)}.
+ */
+public class SeriesFrame {
+
+	/** The number of rows a frame starts with when no capacity is given. */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/** The start of each bucket, in milliseconds since the epoch. */
+	private long[] times;
+
+	/** The values of each statistic, by name, in the order the statistics were added. */
+	private final Map<String, double[]> columns = new LinkedHashMap<>();
+
+	/** The number of rows. */
+	private int size;
+
+	/**
+	 * Creates an empty frame.
+	 */
+	public SeriesFrame() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty frame.
+	 *
+	 * @param capacity : The number of rows expected.
+	 */
+	public SeriesFrame(int capacity) {
+		this.times = new long[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Adds a row without values.
+	 *
+	 * @param time : The start of the bucket, in milliseconds since the epoch.
+	 * @return The index of the row.
+	 */
+	public int addRow(long time) {
+		if (size == times.length) {
+			int capacity = size * 2;
+			times = Arrays.copyOf(times, capacity);
+			for (Entry<String, double[]> entry : columns.entrySet()) {
+				double[] values = Arrays.copyOf(entry.getValue(), capacity);
+				Arrays.fill(values, size, capacity, Double.NaN);
+				entry.setValue(values);
+			}
+		}
+		times[size] = time;
+		return size++;
+	}
+
+	/**
+	 * Sets a value, creating its column when needed.
+	 *
+	 * @param column : The name of the statistic.
+	 * @param row    : The index of the row.
+	 * @param value  : The value.
+	 */
+	public void set(String column, int row, double value) {
+		double[] values = columns.get(column);
+		if (values == null) {
+			values = new double[times.length];
+			Arrays.fill(values, Double.NaN);
+			columns.put(column, values);
+		}
+		values[row] = value;
+	}
+
+	/**
+	 * Adds a column without values, so that it is present even if the range holds no data.
+	 *
+	 * @param column : The name of the statistic.
+	 */
+	public void addColumn(String column) {
+		if (!columns.containsKey(column)) {
+			double[] values = new double[times.length];
+			Arrays.fill(values, Double.NaN);
+			columns.put(column, values);
+		}
+	}
+
+	/**
+	 * Gives the number of rows.
+	 *
+	 * @return The number of rows.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Checks whether the frame has no row.
+	 *
+	 * @return true if the frame is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gives the start of a bucket.
+	 *
+	 * @param row : The index of the row.
+	 * @return The time, in milliseconds since the epoch.
+	 */
+	public long getTime(int row) {
+		return times[row];
+	}
+
+	/**
+	 * Gives the times of the rows. Only the first {@link #getSize()} times are meaningful.
+	 *
+	 * @return The times, in milliseconds since the epoch.
+	 */
+	public long[] getTimes() {
+		return times;
+	}
+
+	/**
+	 * Gives the names of the statistics.
+	 *
+	 * @return The names, in the order they were added.
+	 */
+	public Set<String> getColumnNames() {
+		return Collections.unmodifiableSet(columns.keySet());
+	}
+
+	/**
+	 * Gives the values of a statistic. Only the first {@link #getSize()} values are meaningful.
+	 *
+	 * @param column : The name of the statistic.
+	 * @return The values, NaN for a bucket without value, or null if the statistic is absent.
+	 */
+	public double[] getColumn(String column) {
+		return columns.get(column);
+	}
+
+	/**
+	 * Joins this frame with another one on their times. Both frames must be in time order.
+	 *
+	 * @param other : The other frame.
+	 * @return A new frame holding the rows and statistics of both frames.
+	 */
+	public SeriesFrame merge(SeriesFrame other) {
+		if (other.isEmpty() && other.columns.isEmpty()) {
+			return this;
+		}
+		if (isEmpty() && columns.isEmpty()) {
+			return other;
+		}
+		SeriesFrame merged = new SeriesFrame(size + other.size);
+		for (String column : columns.keySet()) {
+			merged.addColumn(column);
+		}
+		for (String column : other.columns.keySet()) {
+			merged.addColumn(column);
+		}
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size) {
+			long time;
+			if (j >= other.size || (i < size && times[i] < other.times[j])) {
+				time = times[i];
+			} else {
+				time = other.times[j];
+			}
+			int row = merged.addRow(time);
+			if (i < size && times[i] == time) {
+				copyRow(this, i, merged, row);
+				i++;
+			}
+			if (j < other.size && other.times[j] == time) {
+				copyRow(other, j, merged, row);
+				j++;
+			}
+		}
+		return merged;
+	}
+
+	private static void copyRow(SeriesFrame source, int sourceRow, SeriesFrame target, int targetRow) {
+		for (Entry<String, double[]> entry : source.columns.entrySet()) {
+			double value = entry.getValue()[sourceRow];
+			if (!Double.isNaN(value)) {
+				target.set(entry.getKey(), targetRow, value);
+			}
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package fr.ubo.fast.data.provider.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link SeriesStorage} class describes how the observations of a time series are stored: in a plain table, or
+ * in a hypertable split into chunks of a time range each.
+ */
+public class SeriesStorage {
+
+	/** The name of the time series. */
+	private final String name;
+
+	/** Whether the observations are in a hypertable. */
+	private final boolean hypertable;
+
+	/** The width of the next chunks, in seconds, 0 for a plain table. */
+	private final long chunkInterval;
+
+	/** The size of the table with its indexes and chunks, in bytes. */
+	private final long totalBytes;
+
+	/** The chunks in time order, none for a plain table. */
+	private final List<Chunk> chunks = new ArrayList<>();
+
+	/**
+	 * Creates the description of a table.
+	 *
+	 * @param name          : The name of the time series.
+	 * @param hypertable    : Whether the observations are in a hypertable.
+	 * @param chunkInterval : The width of the next chunks, in seconds, 0 for a plain table.
+	 * @param totalBytes    : The size of the table with its indexes and chunks, in bytes.
+	 */
+	public SeriesStorage(String name, boolean hypertable, long chunkInterval, long totalBytes) {
+		this.name = name;
+		this.hypertable = hypertable;
+		this.chunkInterval = chunkInterval;
+		this.totalBytes = totalBytes;
+	}
+
+	/**
+	 * Adds a chunk, after those starting before it.
+	 *
+	 * @param chunk : The chunk.
+	 */
+	public void addChunk(Chunk chunk) {
+		chunks.add(chunk);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isHypertable() {
+		return hypertable;
+	}
+
+	/**
+	 * @return The width of the next chunks, in seconds, 0 for a plain table.
+	 */
+	public long getChunkInterval() {
+		return chunkInterval;
+	}
+
+	/**
+	 * @return The size of the table with its indexes and chunks, in bytes.
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return The number of chunks, 0 for a plain table.
+	 */
+	public int getChunkCount() {
+		return chunks.size();
+	}
+
+	/**
+	 * @return The chunks in time order.
+	 */
+	public List<Chunk> getChunks() {
+		return Collections.unmodifiableList(chunks);
+	}
+
+	/**
+	 * A chunk of a hypertable, holding the observations of a time range.
+	 */
+	public static class Chunk {
+
+		/** The name of the table of the chunk. */
+		private final String name;
+
+		/** The first time of the range, included, in ISO-8601. */
+		private final String rangeStart;
+
+		/** The last time of the range, excluded, in ISO-8601. */
+		private final String rangeEnd;
+
+		/** The size of the chunk with its indexes, in bytes. */
+		private final long totalBytes;
+
+		/**
+		 * Creates the description of a chunk.
+		 *
+		 * @param name       : The name of the table of the chunk.
+		 * @param rangeStart : The first time of the range, included.
+		 * @param rangeEnd   : The last time of the range, excluded.
+		 * @param totalBytes : The size of the chunk with its indexes, in bytes.
+		 */
+		public Chunk(String name, String rangeStart, String rangeEnd, long totalBytes) {
+			this.name = name;
+			this.rangeStart = rangeStart;
+			this.rangeEnd = rangeEnd;
+			this.totalBytes = totalBytes;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getRangeStart() {
+			return rangeStart;
+		}
+
+		public String getRangeEnd() {
+			return rangeEnd;
+		}
+
+		public long getTotalBytes() {
+			return totalBytes;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package fr.ubo.fast.data.provider.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.postgresql.PGConnection;
+
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.model.BuildProgress;
+import fr.ubo.fast.data.provider.service.impl.BuildStep;
+import fr.ubo.fast.data.provider.service.impl.TimeSeriesDataConfigImpl;
+
+/**
+ * The {@link ConfigBuilds} class builds the configurations of the time series in the background, running the
+ * relations which do not depend on each other at the same time, each on a pooled connection of its own.
+ * <p>
+ * A relation starts as soon as those it is built from have been created, so a configuration takes about the time of
+ * its longest chain of relations rather than the sum of them all. The builds share a bounded number of threads,
+ * {@value #DEFAULT_BUILD_THREADS} unless {@value #BUILD_THREADS} sets it, which also bounds the connections they take
+ * from the pool. A build is found by its identifier until an hour after it ended.
+ */
+public class ConfigBuilds {
+
+	/** The property giving the number of relations built at the same time. */
+	public static final String BUILD_THREADS = "CONFIG_BUILD_THREADS";
+
+	/** The number of relations built at the same time when the property is missing. */
+	public static final int DEFAULT_BUILD_THREADS = 2;
+
+	/** The time an ended build is kept, in milliseconds. */
+	private static final long RETENTION = TimeUnit.HOURS.toMillis(1);
+
+	/** The builds, by identifier. */
+	private final Map<String, Build> builds = new ConcurrentHashMap<>();
+
+	/** Creates the relations. */
+	private final ExecutorService executor;
+
+	/** Forgets the builds ended for too long. */
+	private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor();
+
+	/** Plans the configurations. */
+	private final TimeSeriesDataConfigImpl configService;
+
+	/** The shared connection pool. */
+	private final DatabaseConnectionPool pool;
+
+	/**
+	 * Creates the threads of the builds.
+	 *
+	 * @param configService : Plans the configurations.
+	 * @param pool          : The shared connection pool.
+	 * @param properties    : The database properties, which may set the number of relations built at the same time.
+	 */
+	public ConfigBuilds(TimeSeriesDataConfigImpl configService, DatabaseConnectionPool pool, Properties properties) {
+		this.configService = configService;
+		this.pool = pool;
+		this.executor = Executors.newFixedThreadPool(getThreads(properties));
+		sweeper.scheduleWithFixedDelay(this::forgetEndedBuilds, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Reads the number of relations built at the same time, which is also the number of connections the builds take.
+	 *
+	 * @param properties : The database properties.
+	 * @return The number of threads of the builds.
+	 */
+	public static int getThreads(Properties properties) {
+		String value = properties.getProperty(BUILD_THREADS);
+		int threads = value == null || value.trim().isEmpty() ? DEFAULT_BUILD_THREADS : Integer.parseInt(value.trim());
+		return Math.max(threads, 1);
+	}
+
+	/**
+	 * Plans a configuration and starts building it.
+	 *
+	 * @param name : The name of the time series.
+	 * @param data : The statistics to precompute.
+	 * @param Nbv  : The number of values per zoom.
+	 * @param zoom : The zooms.
+	 * @param kind : The kind of the precomputed tables.
+	 * @return The progress of the build, or null if the series is unknown, has no observation or cannot be read.
+	 */
+	public BuildProgress submit(String name, List<String> data, int Nbv, Map<Integer, String> zoom, String kind) {
+		List<BuildStep> steps = configService.plan(name, data, Nbv, zoom, kind);
+		if (steps == null) {
+			return null;
+		}
+		Build build = new Build(new BuildProgress(UUID.randomUUID().toString(), name), steps);
+		builds.put(build.progress.getId(), build);
+		build.start();
+		return build.progress;
+	}
+
+	/**
+	 * @param id : The identifier of a build.
+	 * @return Its progress, or null if the build does not exist or ended too long ago.
+	 */
+	public BuildProgress get(String id) {
+		Build build = builds.get(id);
+		return build == null ? null : build.progress;
+	}
+
+	/**
+	 * Cancels a build: the relations not started are left out, and the queries of those running are cancelled, their
+	 * changes rolled back.
+	 *
+	 * @param id : The identifier of a build.
+	 * @return Its progress, or null if the build does not exist or ended too long ago.
+	 */
+	public BuildProgress cancel(String id) {
+		Build build = builds.get(id);
+		if (build == null) {
+			return null;
+		}
+		build.cancel();
+		return build.progress;
+	}
+
+	/**
+	 * Stops the builds, rolling back the relations running.
+	 */
+	public void close() {
+		sweeper.shutdownNow();
+		for (Build build : builds.values()) {
+			build.cancel();
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 * A configuration being built: its steps, how many steps each one still waits for, and the connections of those
+	 * running. The states change under the lock of the build.
+	 */
+	private class Build {
+
+		/** The progress shown to the clients. */
+		private final BuildProgress progress;
+
+		/** The steps, each after those it depends on. */
+		private final List<BuildStep> steps;
+
+		/** The progress of each step. */
+		private final Map<BuildStep, BuildProgress.Table> tables = new IdentityHashMap<>();
+
+		/** The steps waiting for each step. */
+		private final Map<BuildStep, List<BuildStep>> dependents = new IdentityHashMap<>();
+
+		/** The number of steps each step still waits for. */
+		private final Map<BuildStep, Integer> waiting = new IdentityHashMap<>();
+
+		/** The connections of the steps running, whose queries a cancel stops. */
+		private final Map<BuildStep, Connection> running = new HashMap<>();
+
+		private Build(BuildProgress progress, List<BuildStep> steps) {
+			this.progress = progress;
+			this.steps = steps;
+			for (BuildStep step : steps) {
+				tables.put(step, progress.addTable(step.getRelation()));
+				dependents.put(step, new ArrayList<>());
+			}
+			for (BuildStep step : steps) {
+				waiting.put(step, step.getDependencies().size());
+				for (BuildStep dependency : step.getDependencies()) {
+					dependents.get(dependency).add(step);
+				}
+			}
+		}
+
+		private synchronized void start() {
+			for (BuildStep step : steps) {
+				if (step.getDependencies().isEmpty()) {
+					submit(step);
+				}
+			}
+			progress.endIfDone();
+		}
+
+		private void submit(BuildStep step) {
+			try {
+				executor.execute(() -> run(step));
+			} catch (RejectedExecutionException e) {
+				progress.ended(tables.get(step), BuildProgress.CANCELLED, "The service is stopping.");
+			}
+		}
+
+		private void run(BuildStep step) {
+			BuildProgress.Table table = tables.get(step);
+			try (Connection conn = pool.getConnection()) {
+				synchronized (this) {
+					if (!BuildProgress.QUEUED.equals(table.getState())) {
+						return; // Cancelled while waiting for a thread
+					}
+					progress.started(table);
+					running.put(step, conn);
+				}
+				try {
+					// A cancel between two statements of the step is seen by the step, which rolls back
+					step.run(conn, progress::isCancelled);
+				} finally {
+					// The connection goes back to the pool: no cancel may reach it from now on
+					synchronized (this) {
+						running.remove(step);
+					}
+				}
+				ended(step, BuildProgress.COMPLETED, null);
+			} catch (SQLException | RuntimeException e) {
+				e.printStackTrace();
+				ended(step, progress.isCancelled() ? BuildProgress.CANCELLED : BuildProgress.FAILED, e.getMessage());
+			}
+		}
+
+		private synchronized void ended(BuildStep step, String state, String message) {
+			progress.ended(tables.get(step), state, message);
+			for (BuildStep dependent : dependents.get(step)) {
+				if (!BuildProgress.COMPLETED.equals(state)) {
+					// What a relation is built from must exist first
+					skip(dependent, step.getRelation());
+				} else {
+					int left = waiting.merge(dependent, -1, Integer::sum);
+					if (left == 0) {
+						submit(dependent);
+					}
+				}
+			}
+		}
+
+		private void skip(BuildStep step, String missing) {
+			BuildProgress.Table table = tables.get(step);
+			if (!BuildProgress.QUEUED.equals(table.getState())) {
+				return;
+			}
+			progress.ended(table, progress.isCancelled() ? BuildProgress.CANCELLED : BuildProgress.FAILED,
+					missing + " was not created.");
+			for (BuildStep dependent : dependents.get(step)) {
+				skip(dependent, step.getRelation());
+			}
+		}
+
+		private synchronized void cancel() {
+			if (progress.isEnded()) {
+				return;
+			}
+			progress.cancel();
+			for (Connection conn : running.values()) {
+				try {
+					conn.unwrap(PGConnection.class).cancelQuery();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void forgetEndedBuilds() {
+		long limit = System.currentTimeMillis() - RETENTION;
+		for (Iterator<Build> it = builds.values().iterator(); it.hasNext();) {
+			BuildProgress progress = it.next().progress;
+			if (progress.isEnded() && progress.getEndTime() < limit) {
+				it.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package fr.ubo.fast.data.provider.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import fr.ubo.fast.data.provider.ingest.ContentEncodings;
+import fr.ubo.fast.data.provider.ingest.ImportProgress;
+import fr.ubo.fast.data.provider.ingest.ImportReport;
+import fr.ubo.fast.data.provider.ingest.ImportSettings;
+import fr.ubo.fast.data.provider.ingest.ObservationReader;
+
+/**
+ * The {@link ImportJobs} class runs the imports of observations in the background, on a bounded pool of its own, and
+ * keeps their progress for the clients polling it.
+ * <p>
+ * An import reads the observations while its client sends them, so it never queues: the client would wait for an
+ * import which holds none of them. The job is found by its identifier until an hour after it ended. The imports of
+ * the upload sessions run on threads of their own, taken from the import threads, so that the requests cannot hold
+ * them all; an import is refused when none of its threads is free.
+ */
+public class ImportJobs {
+
+	/** The time an ended job is kept, in milliseconds. */
+	private static final long RETENTION = TimeUnit.HOURS.toMillis(1);
+
+	/** The jobs, by identifier. */
+	private final Map<String, ImportProgress> jobs = new ConcurrentHashMap<>();
+
+	/** Runs the imports of request bodies, without queue. */
+	private final ThreadPoolExecutor executor;
+
+	/** Runs the imports of the upload sessions, without queue. */
+	private final ThreadPoolExecutor uploadExecutor;
+
+	/** Forgets the jobs ended for too long. */
+	private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor();
+
+	/** Imports the observations. */
+	private final TimeSeriesDataAdmin setupService;
+
+	/**
+	 * Creates the pool of the imports.
+	 *
+	 * @param setupService : Imports the observations.
+	 * @param settings     : The number of imports running, and of the threads kept for the uploads.
+	 */
+	public ImportJobs(TimeSeriesDataAdmin setupService, ImportSettings settings) {
+		this.setupService = setupService;
+		int requestThreads = settings.getJobThreads() - settings.getUploadThreads();
+		this.executor = new ThreadPoolExecutor(requestThreads, requestThreads, 0, TimeUnit.MILLISECONDS,
+				new SynchronousQueue<>());
+		this.uploadExecutor = new ThreadPoolExecutor(settings.getUploadThreads(), settings.getUploadThreads(), 0,
+				TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+		sweeper.scheduleWithFixedDelay(this::forgetEndedJobs, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Starts the import of the body of a request, closing it once the import ends.
+	 *
+	 * @param name     : The name of the time series.
+	 * @param input    : The observations, as received.
+	 * @param encoding : The content encoding of the body, null if it is not compressed.
+	 * @param reader   : Reads the observations in the format of the body.
+	 * @return The progress of the job, or null if every thread kept for the requests is busy.
+	 */
+	public ImportProgress importRequest(String name, InputStream input, String encoding, ObservationReader reader) {
+		return start(executor, name, input, encoding, reader);
+	}
+
+	/**
+	 * Starts the import of a stream on a thread kept for the uploads, closing the stream once the import ends.
+	 *
+	 * @param name     : The name of the time series.
+	 * @param input    : The observations, as received.
+	 * @param encoding : The content encoding of the stream, null if it is not compressed.
+	 * @param reader   : Reads the observations in the format of the stream.
+	 * @return The progress of the job, or null if every thread kept for the uploads is busy.
+	 */
+	public ImportProgress importStream(String name, InputStream input, String encoding, ObservationReader reader) {
+		return start(uploadExecutor, name, input, encoding, reader);
+	}
+
+	/**
+	 * @param id : The identifier of a job.
+	 * @return Its progress, or null if the job does not exist or ended too long ago.
+	 */
+	public ImportProgress get(String id) {
+		return jobs.get(id);
+	}
+
+	/**
+	 * Stops the imports, rolling back those running.
+	 */
+	public void close() {
+		sweeper.shutdownNow();
+		executor.shutdownNow();
+		uploadExecutor.shutdownNow();
+	}
+
+	/**
+	 * An import, given its progress.
+	 */
+	private interface Job {
+		ImportReport run(ImportProgress progress);
+	}
+
+	/**
+	 * Starts the import of a stream on a free thread, closing the stream once the import ends or if none is free.
+	 */
+	private ImportProgress start(ThreadPoolExecutor threads, String name, InputStream input, String encoding,
+			ObservationReader reader) {
+		ImportProgress progress = submit(threads, name, job -> run(name, input, encoding, reader, job));
+		if (progress == null) {
+			try {
+				input.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return progress;
+	}
+
+	private ImportProgress submit(ThreadPoolExecutor threads, String name, Job job) {
+		ImportProgress progress = new ImportProgress(UUID.randomUUID().toString(), name);
+		jobs.put(progress.getId(), progress);
+		try {
+			threads.execute(() -> {
+				progress.started();
+				ImportReport report;
+				try {
+					report = job.run(progress);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					report = ImportReport.failed(ImportReport.FAILED);
+				}
+				progress.ended(report, describe(report));
+			});
+		} catch (RejectedExecutionException e) {
+			jobs.remove(progress.getId());
+			return null;
+		}
+		return progress;
+	}
+
+	/**
+	 * Imports an input, decompressed and counted as it is read.
+	 */
+	private ImportReport run(String name, InputStream input, String encoding, ObservationReader reader,
+			ImportProgress progress) {
+		// Closing the input releases the writers of an upload when the import stops before its end
+		try (InputStream decoded = ContentEncodings.decode(progress.track(input, reader), encoding)) {
+			return setupService.addObservations(name, decoded, reader, progress);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return ImportReport.failed(ImportReport.FAILED);
+		} finally {
+			try {
+				input.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Describes the outcome of an import for the client.
+	 *
+	 * @param report : The report of the import.
+	 * @return The counts of the import, or the failure.
+	 */
+	private static String describe(ImportReport report) {
+		switch (report.getStatus()) {
+			case ImportReport.FAILED:
+				return "Failed to convert data.";
+			case ImportReport.COMPLETED:
+				return "Import successfully completed: " + report + ".";
+			default:
+				return "Failed to import into database.";
+		}
+	}
+
+	private void forgetEndedJobs() {
+		long limit = System.currentTimeMillis() - RETENTION;
+		for (Iterator<ImportProgress> it = jobs.values().iterator(); it.hasNext();) {
+			ImportProgress progress = it.next();
+			if (progress.isEnded() && progress.getEndTime() < limit) {
+				it.remove();
+			}
+		}
+	}
+}
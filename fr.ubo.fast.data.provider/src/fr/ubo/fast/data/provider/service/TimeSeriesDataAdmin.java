@@ -1,6 +1,6 @@
 package fr.ubo.fast.data.provider.service;
 
-import java.io.File;
+import java.io.InputStream;
 
 import java.sql.Connection;
 import java.sql.Date;
@@ -11,6 +11,9 @@ import java.util.Map;
 import com.google.common.base.Optional;
 
 import fr.ubo.fast.common.model.Database;
+import fr.ubo.fast.data.provider.ingest.ImportProgress;
+import fr.ubo.fast.data.provider.ingest.ImportReport;
+import fr.ubo.fast.data.provider.ingest.ObservationReader;
 
 /**
  * This interface permits to admin of database data.
@@ -31,14 +34,16 @@ public interface TimeSeriesDataAdmin {
 	int addMeasuredVariables(String name, String unit, Double period, int qmin, int qmax);
 
 	/**
-	 * Allow good data import into the database.
+	 * Allow good data import into the database, reading the data as it arrives.
 	 * 
-	 * @param filename : File containing the data.
+	 * @param input    : The observations.
 	 * @param name     : The name of file.
-	 * @return A value of 1 indicates success, 0 indicates failure, and 2 indicates
-	 *         already existing.
+	 * @param reader   : Reads the observations in the format of the input, JSON or CSV.
+	 * @param progress : Receives the number of rows sent to the database as the import runs.
+	 * @return The numbers of observations inserted, skipped as duplicates and rejected, with a status of 1 for
+	 *         success, 0 for failure and 2 for a failure of the copy into the database.
 	 */
-	int addObservations(String name, File filename);
+	ImportReport addObservations(String name, InputStream input, ObservationReader reader, ImportProgress progress);
 
 	/**
 	 * Delete data on a observation table.
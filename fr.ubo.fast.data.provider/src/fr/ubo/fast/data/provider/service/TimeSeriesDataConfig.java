@@ -8,6 +8,18 @@ import java.util.Map;
  */
 
 public interface TimeSeriesDataConfig {
+
+	/** The kind of the precomputed tables computed once, then refreshed by the imports and deletions. */
+	String KIND_TABLE = "table";
+
+	/** The kind of the precomputed tables kept up to date by TimescaleDB as continuous aggregates. */
+	String KIND_CONTINUOUS = "continuous";
+
+	/**
+	 * The kind of the precomputed tables read as views over the levels of an aggregation pyramid, each level built
+	 * from a finer one when it can.
+	 */
+	String KIND_PYRAMID = "pyramid";
 	
 	/**
 	 * config data to visualize.
@@ -15,8 +27,10 @@ public interface TimeSeriesDataConfig {
 	 * @param data : A list of ask data.
 	 * @param Nbv : number of value.
 	 * @param zoom : A map content the zoom value.
+	 * @param kind : The kind of the precomputed tables, {@link #KIND_TABLE}, {@link #KIND_PYRAMID} or
+	 *             {@link #KIND_CONTINUOUS}.
 	 * @return A Boolean, true if there was no problem when creating the configuration and false otherwise..
 	 */
-	Boolean config(String name, List<String> data, int Nbv, Map<Integer, String> zoom);
+	Boolean config(String name, List<String> data, int Nbv, Map<Integer, String> zoom, String kind);
 
 }
@@ -1,44 +1,56 @@
 package fr.ubo.fast.data.provider.service;
 
-import java.io.File;
 import java.io.*;
-import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
-import java.sql.Connection;
 import java.sql.Date;
 import java.sql.SQLException;
 import java.time.OffsetDateTime;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
-import javax.servlet.ServletContext;
+import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import com.google.common.base.Optional;
 
-import fr.ubo.fast.common.clients.DatabaseClient;
 import fr.ubo.fast.common.constants.DataProviderProperties;
-import fr.ubo.fast.common.model.Database;
+import fr.ubo.fast.data.provider.codec.SeriesEncoder;
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.database.Hypertables;
+import fr.ubo.fast.data.provider.database.SeriesRegistry;
+import fr.ubo.fast.data.provider.ingest.ContentEncodings;
+import fr.ubo.fast.data.provider.ingest.CsvObservationReader;
+import fr.ubo.fast.data.provider.ingest.ImportProgress;
+import fr.ubo.fast.data.provider.ingest.JsonObservationReader;
+import fr.ubo.fast.data.provider.ingest.ObservationReader;
+import fr.ubo.fast.data.provider.ingest.UploadBusyException;
+import fr.ubo.fast.data.provider.model.BuildProgress;
+import fr.ubo.fast.data.provider.model.SeriesFrame;
+import fr.ubo.fast.data.provider.model.SeriesStorage;
 import fr.ubo.fast.data.provider.service.impl.TimeSeriesDataAdminImpl;
 import fr.ubo.fast.data.provider.service.impl.TimeSeriesDataConfigImpl;
 
 @Path("/data-setup")
 public class TimeSeriesDataController {
+
+	/**
+	 * The media type of observations sent as CSV.
+	 */
+	public static final String TEXT_CSV = "text/csv";
 	
 	/**
      * An access to setup. 
@@ -60,51 +72,53 @@ public class TimeSeriesDataController {
      */
     TimeSeriesDataViews viewsService;
     
-    /** 
-     * The database that contains the time series data.
+    /**
+     * The resumable uploads of observations.
      */
-	private Database database;
-	
+    UploadSessions uploadSessions;
+    
+    /**
+     * The imports of observations running in the background.
+     */
+    ImportJobs importJobs;
+    
+    /**
+     * The observations tables as hypertables.
+     */
+    Hypertables hypertables;
+    
+    /**
+     * The builds of configurations running in the background.
+     */
+    ConfigBuilds configBuilds;
+    
+    /**
+     * The known time series.
+     */
+    SeriesRegistry registry;
+    
 	/**
-     * A connection access. 
+     * The shared connection pool. 
      */
-	private Connection conn;
-	
-	
-	/** 
-	 * The (internal) path of the database properties file.
-	 */
-	private static final String DATABASE_PROPERTIES_FILE = "WEB-INF/conf/database.properties";
+	private DatabaseConnectionPool pool;
 	
 	
 
-    public TimeSeriesDataController(@Context ServletContext context) {
-    	try
-		{
-			InputStream input = context.getResourceAsStream(DATABASE_PROPERTIES_FILE);
-			database = new Database(input);
-			input.close();
-		}
-		catch (IOException exception)
-		{
-			exception.printStackTrace();
-		}
-    	
-    	DatabaseClient db = new DatabaseClient(database.getManagementSystem(), database.getName(),
-				   database.getHostname(), database.getPort(), 
-				   database.getUsername(), database.getPassword());
-	 	Connection conn = null;
-	 	if (db.connect()){
-	 	 conn = db.getConnection();
-	 	}else {
-	 		System.out.println("Database connection is not available");
-	 	}
-    	
-    	this.configService = new TimeSeriesDataConfigImpl(conn);
-        this.setupService = new TimeSeriesDataAdminImpl(conn,database);
-        this.supplierService = new TimeSeriesDataSupplier(conn);
-        this.viewsService = new TimeSeriesDataViews(conn);
-        
+    @Inject
+    public TimeSeriesDataController(TimeSeriesDataAdminImpl setupService, TimeSeriesDataConfigImpl configService,
+    		TimeSeriesDataSupplier supplierService, TimeSeriesDataViews viewsService, DatabaseConnectionPool pool,
+    		UploadSessions uploadSessions, ImportJobs importJobs, Hypertables hypertables, ConfigBuilds configBuilds,
+    		SeriesRegistry registry) {
+    	this.configService = configService;
+        this.setupService = setupService;
+        this.supplierService = supplierService;
+        this.viewsService = viewsService;
+        this.pool = pool;
+        this.uploadSessions = uploadSessions;
+        this.importJobs = importJobs;
+        this.hypertables = hypertables;
+        this.configBuilds = configBuilds;
+        this.registry = registry;
     }
     
     
@@ -115,6 +129,13 @@ public class TimeSeriesDataController {
 		return "Hello Sir";
 	}
 
+    @GET
+    @Path("/pool-status")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response getPoolStatus() {
+    	return Response.ok(pool.getUsage()).build();
+    }
+
     @POST
     @Path("/add-variable")
     public Response addMeasuredVariables(@QueryParam("name") String name, @QueryParam("unit") String unit, @QueryParam("period") Double period, @QueryParam("qmin") int qmin, @QueryParam("qmax") int qmax) {
@@ -142,60 +163,195 @@ public class TimeSeriesDataController {
         }
     }
 
+    /**
+     * Receives observations and imports them.
+     * <p>
+     * The body is handed to an import job as it arrives, still compressed when it is, without being stored: the request
+     * returns once the body has been read, with the identifier of the job to poll while it ends.
+     *
+     * @param uploadedInputStream : The observations, as JSON or CSV, possibly compressed.
+     * @param name                : The name of the time series.
+     * @param headers             : The content type and encoding of the body.
+     * @return 202 with the identifier of the import job, 404 if the time series is unknown, or 503 if too many imports
+     *         are running.
+     */
     @POST
     @Path("/add-observations")
-    @Consumes(MediaType.APPLICATION_JSON)
-    public Response importObservations(InputStream uploadedInputStream, @QueryParam("name") String name) {
+    @Consumes({MediaType.APPLICATION_JSON, TEXT_CSV})
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response importObservations(InputStream uploadedInputStream, @QueryParam("name") String name,
+    		@Context HttpHeaders headers) {
       
-        if (name.isEmpty()) {
+        if (name == null || name.isEmpty()) {
             return Response.status(Response.Status.BAD_REQUEST).entity("Missing argument").build();
         }
+        String encoding = headers.getHeaderString(HttpHeaders.CONTENT_ENCODING);
+        if (!ContentEncodings.isSupported(encoding)) {
+            return Response.status(Response.Status.UNSUPPORTED_MEDIA_TYPE).entity("Unsupported content encoding.").build();
+        }
+        if (!registry.contains(name)) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown time series.").build();
+        }
 
-        CompletableFuture<Response> responseFuture = CompletableFuture.supplyAsync(() -> {
-            try {
-
-                File tempJsonFile = File.createTempFile("observations", ".json");
-                try (OutputStream out = new FileOutputStream(tempJsonFile)) {
-                    byte[] buffer = new byte[1024];
-                    int bytesRead;
-                    while ((bytesRead = uploadedInputStream.read(buffer)) != -1) {
-                        out.write(buffer, 0, bytesRead);
-                    }
-                }
-                System.out.println("Avant d'appeler getData");
-                int result = setupService.addObservations(name, tempJsonFile);
-                System.out.println("Après d'appeler getData");
-                if(tempJsonFile.exists()) {
-                	System.out.println("le fichier Json existe bel et bien");
-                }
-                //if(tempJsonFile.conta)
-
-                if (tempJsonFile.exists()) {
-                    Files.delete(tempJsonFile.toPath());
-                }
-
-                switch (result) {
-                    case 0:
-                        return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to convert data.").build();
-                    case 1:
-                        return Response.ok("Import successfully completed.").build();
-                    default:
-                        return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to import into database.").build();
-                }
-            } catch (IOException e) {
-                 e.printStackTrace();
-                return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Error processing file.").build();
-            }
-        });
+        ImportProgress job;
+        try {
+            job = uploadSessions.importBody(name, uploadedInputStream, observationReader(headers.getMediaType()),
+            		encoding);
+        } catch (IOException e) {
+            // The client went away: the import is rolled back
+            e.printStackTrace();
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Error receiving the observations.").build();
+        }
+        if (job == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Too many imports in progress.").build();
+        }
+        return Response.accepted(job.getId()).build();
+    }
+
+    /**
+     * Gives the progress of an import job.
+     *
+     * @param id : The identifier of the job.
+     * @return The state of the job, the bytes and rows read, rejected, sent and inserted, and the rows per second.
+     */
+    @GET
+    @Path("/jobs/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getImportJob(@PathParam("id") String id) {
+        ImportProgress job = importJobs.get(id);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown job.").build();
+        }
+        return Response.ok(job).build();
+    }
 
+    /**
+     * Starts a resumable upload of observations, whose import begins with the first chunk.
+     *
+     * @param name     : The name of the time series.
+     * @param format   : "csv" for CSV text, JSON otherwise.
+     * @param encoding : "gzip" or "deflate" when the upload is compressed as a whole, its chunks being slices of the
+     *                 compressed bytes.
+     * @return The identifier of the upload session.
+     */
+    @POST
+    @Path("/upload-sessions")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response startUpload(@QueryParam("name") String name, @QueryParam("format") String format,
+    		@QueryParam("encoding") String encoding) {
+        if (name == null || name.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Missing argument").build();
+        }
+        if (!ContentEncodings.isSupported(encoding)) {
+            return Response.status(Response.Status.UNSUPPORTED_MEDIA_TYPE).entity("Unsupported content encoding.").build();
+        }
+        String id = uploadSessions.start(name, "csv".equalsIgnoreCase(format)
+        		? new CsvObservationReader() : new JsonObservationReader(), encoding);
+        if (id == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Too many uploads in progress.").build();
+        }
+        return Response.ok(id).build();
+    }
+
+    /**
+     * Adds a chunk to an upload. Chunks may be sent in any order and sent again.
+     *
+     * @param id     : The identifier of the upload session.
+     * @param offset : The offset of the chunk in the upload.
+     * @param chunk  : The bytes of the chunk.
+     * @return The number of bytes acknowledged, from which the upload can go on, or 503 with Retry-After when the import
+     *         lags too far behind to take the chunk.
+     */
+    @PUT
+    @Path("/upload-sessions/{id}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response uploadChunk(@PathParam("id") String id, @QueryParam("offset") long offset, InputStream chunk) {
         try {
-            return responseFuture.get();
-        } catch (InterruptedException | ExecutionException e) {
+            long acknowledged = uploadSessions.write(id, offset, chunk);
+            if (acknowledged < 0) {
+                return Response.status(Response.Status.NOT_FOUND).entity("Unknown upload.").build();
+            }
+            return Response.ok(String.valueOf(acknowledged)).build();
+        } catch (UploadBusyException e) {
+            // The chunk was not kept: the client goes on from the acknowledged offset once the import has caught up
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER,
+            		UploadSessions.RETRY_AFTER).entity(e.getMessage()).build();
+        } catch (IOException e) {
             e.printStackTrace();
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Error processing request.").build();
+            return Response.status(Response.Status.CONFLICT).entity(e.getMessage()).build();
         }
     }
 
+    /**
+     * Gives the offset from which an upload must go on.
+     *
+     * @param id : The identifier of the upload session.
+     * @return The number of bytes acknowledged.
+     */
+    @GET
+    @Path("/upload-sessions/{id}")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response getUploadOffset(@PathParam("id") String id) {
+        long acknowledged = uploadSessions.getAcknowledged(id);
+        if (acknowledged < 0) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown upload.").build();
+        }
+        return Response.ok(String.valueOf(acknowledged)).build();
+    }
+
+    /**
+     * Ends an upload, whose import goes on as a job.
+     *
+     * @param id     : The identifier of the upload session.
+     * @param length : The length of the upload.
+     * @return 202 with the identifier of the import job, the same as the session.
+     */
+    @POST
+    @Path("/upload-sessions/{id}/commit")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response commitUpload(@PathParam("id") String id, @QueryParam("length") long length) {
+        ImportProgress job;
+        try {
+            job = uploadSessions.commit(id, length);
+        } catch (IOException e) {
+            return Response.status(Response.Status.CONFLICT).entity(e.getMessage()).build();
+        }
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown upload.").build();
+        }
+        return Response.accepted(job.getId()).build();
+    }
+
+    /**
+     * Cancels an upload, rolling its import back.
+     *
+     * @param id : The identifier of the upload session.
+     * @return Whether the upload existed.
+     */
+    @DELETE
+    @Path("/upload-sessions/{id}")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response abortUpload(@PathParam("id") String id) {
+        if (!uploadSessions.abort(id)) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown upload.").build();
+        }
+        return Response.ok("Upload cancelled.").build();
+    }
+
+    /**
+     * Chooses the reader of an upload from its media type.
+     *
+     * @param type : The media type of the upload.
+     * @return A CSV reader for text/csv, a JSON reader otherwise.
+     */
+    private static ObservationReader observationReader(MediaType type) {
+        if (type != null && MediaType.valueOf(TEXT_CSV).isCompatible(type)) {
+            return new CsvObservationReader();
+        }
+        return new JsonObservationReader();
+    }
+
     @DELETE
     @Path("/delete-observations")
     @Produces(MediaType.APPLICATION_JSON)
@@ -237,6 +393,57 @@ public class TimeSeriesDataController {
         }
     }
     
+    /**
+     * Turns the observations table of a time series into a hypertable while it stays in use, or sets the width of the
+     * next chunks of a hypertable from the period of the series.
+     *
+     * @param name : The name of the time series.
+     * @return 200 once the table is a hypertable, 501 without TimescaleDB.
+     */
+    @POST
+    @Path("/migrate-hypertable")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response migrateToHypertable(@QueryParam("name") String name) {
+        try {
+            if (!hypertables.migrate(name)) {
+                return Response.status(Response.Status.NOT_IMPLEMENTED).entity("TimescaleDB is not installed.").build();
+            }
+            return Response.ok("Observations table migrated successfully.").build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown time series.").build();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to migrate the observations table.").build();
+        }
+    }
+
+    /**
+     * Gives the chunks of the observations tables, with their counts and sizes.
+     *
+     * @param name : The name of a time series, or none for every time series.
+     * @return The storage of the time series.
+     */
+    @GET
+    @Path("/chunks")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getChunks(@QueryParam("name") String name) {
+        try {
+            if (name == null || name.isEmpty()) {
+                return Response.ok(hypertables.describeAll()).build();
+            }
+            SeriesStorage storage = hypertables.describe(name);
+            if (storage == null) {
+                return Response.status(Response.Status.NOT_FOUND).entity("No observations table.").build();
+            }
+            return Response.ok(storage).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown time series.").build();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to read the chunks.").build();
+        }
+    }
+
     @DELETE
     @Path("/delete-configuration/{configName}")
     public Response deleteConfiguration(@PathParam("configName") String configName) { 
@@ -290,9 +497,9 @@ public class TimeSeriesDataController {
     @GET
     @Path("/get-data/{name}")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, SeriesEncoder.MEDIA_TYPE})
     public Response RetrieveData(@PathParam("name") String name, @QueryParam("data") List<String> data, @QueryParam("startDate") String startDateStr,
-            @QueryParam("endDate") String endDateStr,@QueryParam("Nbv")Integer Nbv) {
+            @QueryParam("endDate") String endDateStr,@QueryParam("Nbv")Integer Nbv, @Context HttpHeaders headers) {
         
 	 	Optional<OffsetDateTime> startDate = TimeSeriesDataAdminImpl.checkDateFormat(startDateStr);
 	 	Optional<OffsetDateTime> endDate = TimeSeriesDataAdminImpl.checkDateFormat(endDateStr);
@@ -313,10 +520,15 @@ public class TimeSeriesDataController {
         if (!(endDate.isPresent())) {
             return Response.status(Response.Status.BAD_REQUEST).entity("Parameter 'endDate' is required.").build();
         }
-        String results = supplierService.getData(name, data, startDateStr, endDateStr, Nbv);
+        SeriesFrame results;
+        try {
+            results = supplierService.getData(name, data, startDateStr, endDateStr, Nbv);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
 
         if (results != null && !results.isEmpty()) {
-            return Response.ok(results).build();
+            return seriesResponse(results, headers);
         } else {
             return Response.status(Response.Status.NOT_FOUND).entity("No data found.").build();
         }
@@ -348,8 +560,9 @@ public class TimeSeriesDataController {
     
     @GET
     @Path("/get-initview")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getInitview(@QueryParam("name") String name, @QueryParam("aggregation") String aggregation, @QueryParam("nbv") int Nbv, Map<Integer, String> zoom) {
+    @Produces({MediaType.APPLICATION_JSON, SeriesEncoder.MEDIA_TYPE})
+    public Response getInitview(@QueryParam("name") String name, @QueryParam("aggregation") String aggregation, @QueryParam("nbv") int Nbv, Map<Integer, String> zoom,
+    		@Context HttpHeaders headers) {
     	 if (name == null || name.isEmpty()) {
              return Response.status(Response.Status.BAD_REQUEST).entity("Parameter 'name' is required.").build();
          }
@@ -364,18 +577,32 @@ public class TimeSeriesDataController {
 
          }
     	
-    	List<Map<String, Object>> result = viewsService.initView(name,aggregation,Nbv,zoom);
+    	SeriesFrame result = viewsService.initView(name,aggregation,Nbv,zoom);
 	 	if(result == null) {
 	 		return Response.status(Response.Status.NOT_FOUND).entity("No data found.").build();
 	 	}
-	 	return Response.ok(result).build();
+	 	return seriesResponse(result, headers);
     }
     
+    /**
+     * Plans the precomputed tables of a time series and starts building them.
+     * <p>
+     * The request returns once the tables are planned, with the identifier of the build to poll: the tables are then
+     * created in the background, those independent of each other at the same time.
+     *
+     * @param name : The name of the time series.
+     * @param data : The statistics to precompute.
+     * @param Nbv  : The number of values per zoom.
+     * @param kind : "pyramid" (default), "table" or "continuous".
+     * @param zoom : The zooms.
+     * @return 202 with the identifier of the build.
+     */
     @POST
     @Path("/config-data/{name}")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response ConfigData(@PathParam("name") String name, @QueryParam("data") List<String> data, @QueryParam("nbv")int Nbv,  Map<Integer,String> zoom ) {
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response ConfigData(@PathParam("name") String name, @QueryParam("data") List<String> data, @QueryParam("nbv")int Nbv,
+    		@QueryParam("kind") String kind, Map<Integer,String> zoom ) {
     
         // Validate parameters
         if (name == null || name.isEmpty()) {
@@ -391,28 +618,61 @@ public class TimeSeriesDataController {
         	return Response.status(Response.Status.BAD_REQUEST).entity("Parameter 'zoom' is required.").build();
 
         }
+        if (kind == null || kind.isEmpty()) {
+        	kind = TimeSeriesDataConfig.KIND_PYRAMID;
+        } else if (!kind.equals(TimeSeriesDataConfig.KIND_TABLE) && !kind.equals(TimeSeriesDataConfig.KIND_PYRAMID)
+        		&& !kind.equals(TimeSeriesDataConfig.KIND_CONTINUOUS)) {
+        	return Response.status(Response.Status.BAD_REQUEST).entity("Parameter 'kind' must be 'table', 'pyramid' or 'continuous'.").build();
+        }
 
-        boolean results = false;
-		try {
-			results = configService.config(name, data, Nbv, zoom);
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-
-        if (results) {
-            return Response.ok().build();
-        } else {
+        BuildProgress build = configBuilds.submit(name, data, Nbv, zoom, kind);
+        if (build == null) {
             return Response.status(Response.Status.NOT_FOUND).entity("No data found.").build();
         }
+        return Response.accepted(build.getId()).build();
+    }
+
+    /**
+     * Gives the progress of a configuration build.
+     *
+     * @param id : The identifier of the build.
+     * @return The state of the build and of each of its tables, with their elapsed times.
+     */
+    @GET
+    @Path("/config-jobs/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getConfigBuild(@PathParam("id") String id) {
+        BuildProgress build = configBuilds.get(id);
+        if (build == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown build.").build();
+        }
+        return Response.ok(build).build();
+    }
+
+    /**
+     * Cancels a configuration build: the tables not started are left out and those running are rolled back.
+     *
+     * @param id : The identifier of the build.
+     * @return The state of the build once cancelled.
+     */
+    @DELETE
+    @Path("/config-jobs/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response cancelConfigBuild(@PathParam("id") String id) {
+        BuildProgress build = configBuilds.cancel(id);
+        if (build == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Unknown build.").build();
+        }
+        return Response.ok(build).build();
     }
     
     @GET
     @Path("/get-views/{name}")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, SeriesEncoder.MEDIA_TYPE})
     public Response GetViewerdata(@PathParam("name") String name, @QueryParam("data") List<String> data, @QueryParam("startDate") String startDateStr,
-            @QueryParam("endDate") String endDateStr,@QueryParam("Nbv")Integer Nbv, Map <Integer, String> zoom, @QueryParam("operation")String operation) {
+            @QueryParam("endDate") String endDateStr,@QueryParam("Nbv")Integer Nbv, Map <Integer, String> zoom, @QueryParam("operation")String operation,
+            @Context HttpHeaders headers) {
         
     	
     	Optional<OffsetDateTime> startDate = TimeSeriesDataAdminImpl.checkDateFormat(startDateStr);
@@ -451,16 +711,26 @@ public class TimeSeriesDataController {
         System.out.println("Zoom: " + zoom);
         System.out.println("Operation: " + operation);
 
-        List<Map<String, Object>> results = new ArrayList<>();
-        
-        results = viewsService.Views(name, data, startDateStr, endDateStr, Nbv, zoom, operation);
+        SeriesFrame results = viewsService.Views(name, data, startDateStr, endDateStr, Nbv, zoom, operation);
         if (results != null && !results.isEmpty()) {
-            return Response.ok(results).build();
+            return seriesResponse(results, headers);
         } else {
             return Response.status(Response.Status.NOT_FOUND).entity("No data found.").build();
         }
     }
     
+    /**
+     * Answers with a frame, in the binary columnar format when the request prefers it and in JSON otherwise.
+     *
+     * @param frame   : The frame.
+     * @param headers : The headers of the request.
+     * @return The response, written by {@link fr.ubo.fast.data.provider.codec.SeriesFrameWriter}.
+     */
+    private Response seriesResponse(SeriesFrame frame, HttpHeaders headers) {
+    	MediaType binary = SeriesEncoder.negotiate(headers.getAcceptableMediaTypes());
+    	return Response.ok(frame, binary != null ? binary : MediaType.APPLICATION_JSON_TYPE).build();
+    }
+    
     @GET
     @Path("/get-configurations")
     public Response GetAllConfig() {
@@ -1,32 +1,32 @@
 package fr.ubo.fast.data.provider.service;
 
-import java.io.IOException;
-
-import java.io.InputStream;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.TreeMap;
 import java.util.concurrent.ThreadLocalRandom;
 
-import javax.servlet.ServletContext;
+import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
-import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import com.google.common.base.Optional;
 
 import fr.ubo.fast.common.model.TimeSeries;
 import fr.ubo.fast.common.model.Database;
-import fr.ubo.fast.common.clients.DatabaseClient;
 import fr.ubo.fast.common.utility.DataStructureHelper;
 import fr.ubo.fast.common.utility.DataProviderDatabaseHelper;
 import fr.ubo.fast.common.constants.DataProviderProperties;
 import fr.ubo.fast.common.constants.DeploymentProperties;
+import fr.ubo.fast.data.provider.codec.ObservationsJsonOutput;
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
 
 /**
  * The {@link TimeSeriesDataProvider} class represents a service that retrieves time series data from a database.
@@ -37,21 +37,14 @@ public class TimeSeriesDataProvider
 	/** The database that contains the time series data. */
 	private Database database;
 	
-	/** The (internal) path of the database properties file. */
-	private static final String DATABASE_PROPERTIES_FILE = "WEB-INF/conf/database.properties";
+	/** The shared connection pool. */
+	private DatabaseConnectionPool pool;
 	
-	public TimeSeriesDataProvider(@Context ServletContext context)
+	@Inject
+	public TimeSeriesDataProvider(Database database, DatabaseConnectionPool pool)
 	{
-		try
-		{
-			InputStream input = context.getResourceAsStream(DATABASE_PROPERTIES_FILE);
-			database = new Database(input);
-			input.close();
-		}
-		catch (IOException exception)
-		{
-			exception.printStackTrace();
-		}
+		this.database = database;
+		this.pool = pool;
 	}
 	
 	@GET
@@ -95,12 +88,12 @@ public class TimeSeriesDataProvider
 	 * @param interval : The interval over which the min-max is calculated.
 	 * @param table : The name of the table which contains the time series.
 	 * @param raw : A boolean value that specifies the type of data to retrieve (raw or min-max).
-	 * @return A formatted string with the retrieved values.
+	 * @return The retrieved values, streamed from the database as they are read.
 	 */
 	@GET
 	@Path("/" + DataProviderProperties.Constants.PATH_TIME_SERIES_DATA + "/{" + DataProviderProperties.Constants.PARAMETER_TIME_SERIES_ID + "}")
 	@Produces({"application/json"})
-	public String retrieveTimeSeriesData(@PathParam(DataProviderProperties.Constants.PARAMETER_TIME_SERIES_ID) int time_series_id, 
+	public Response retrieveTimeSeriesData(@PathParam(DataProviderProperties.Constants.PARAMETER_TIME_SERIES_ID) int time_series_id, 
 										 @QueryParam(DataProviderProperties.Constants.PARAMETER_START_TIME) String start_time, 
 										 @QueryParam(DataProviderProperties.Constants.PARAMETER_END_TIME) String end_time, 
 										 @QueryParam(DataProviderProperties.Constants.PARAMETER_INTERVAL) double interval, 
@@ -127,13 +120,13 @@ public class TimeSeriesDataProvider
 				{
 					if (table.equals(DeploymentProperties.DATABASE_RAW_TIME_SERIES_DATA_TABLE.toString()))
 					{
-						select_query = "SELECT %s, %s FROM %s WHERE %s >= \'%s\' AND %s <= \'%s\' AND %s = %s;";
-						select_query = String.format(select_query, time_column, String.join(", ", value_columns), table, time_column, start_time, time_column, end_time, DeploymentProperties.DATABASE_TIME_SERIES_META_DATA_ID_COLUMN.toString(), String.valueOf(time_series_id));
+						select_query = "SELECT %s, %s FROM %s WHERE %s >= \'%s\' AND %s <= \'%s\' AND %s = %s ORDER BY %s ASC;";
+						select_query = String.format(select_query, time_column, String.join(", ", value_columns), table, time_column, start_time, time_column, end_time, DeploymentProperties.DATABASE_TIME_SERIES_META_DATA_ID_COLUMN.toString(), String.valueOf(time_series_id), time_column);
 					}
 					else
 					{
-						select_query = "SELECT %s, %s FROM %s WHERE %s >= \'%s\' AND %s <= \'%s\';";
-						select_query = String.format(select_query, time_column, String.join(", ", value_columns), table, time_column, start_time, time_column, end_time);
+						select_query = "SELECT %s, %s FROM %s WHERE %s >= \'%s\' AND %s <= \'%s\' ORDER BY %s ASC;";
+						select_query = String.format(select_query, time_column, String.join(", ", value_columns), table, time_column, start_time, time_column, end_time, time_column);
 					}
 				}
 				else
@@ -164,31 +157,21 @@ public class TimeSeriesDataProvider
 
 		if (valid_parameters)
 		{
-			DatabaseClient db = new DatabaseClient(database.getManagementSystem(), database.getName(),
-												   database.getHostname(), database.getPort(), 
-												   database.getUsername(), database.getPassword());
-
-			if (db.connect())
+			// The rows go from the cursor to the response: nothing is held but the current row
+			StreamingOutput output;
+			if (raw)
 			{
-				Connection connection = db.getConnection();
-				TreeMap<OffsetDateTime, Double[]> observations = null;
-
-				if (raw)
-				{
-					observations = DataProviderDatabaseHelper.getTimeSeriesObservations(connection, database.getFetchSize(), select_query, time_column, value_columns);
-				}
-				else
-				{
-					observations = DataProviderDatabaseHelper.getTimeSeriesObservations(connection, database.getFetchSize(), select_query, "time_interval", "min_aggregate", "max_aggregate");
-				}
-				
-				db.disconnect();
-				
-				result = DataStructureHelper.convertMapToJsonString(observations);
+				output = new ObservationsJsonOutput(pool, database.getFetchSize(), select_query, time_column, value_columns);
 			}
+			else
+			{
+				output = new ObservationsJsonOutput(pool, database.getFetchSize(), select_query, "time_interval", "min_aggregate", "max_aggregate");
+			}
+			
+			return Response.ok(output).build();
 		}
 
-		return result;
+		return Response.ok(result).build();
 	}
 	
 	/**
@@ -206,19 +189,16 @@ public class TimeSeriesDataProvider
 		String select_query = "SELECT %s, %s, %s, %s FROM %s WHERE %s = %s;";
 		select_query = String.format(select_query, DeploymentProperties.DATABASE_TIME_SERIES_META_DATA_ID_COLUMN.toString(), DeploymentProperties.DATABASE_TIME_SERIES_META_DATA_PERIOD_COLUMN.toString(), DeploymentProperties.DATABASE_TIME_SERIES_META_DATA_START_DATE_COLUMN.toString(), DeploymentProperties.DATABASE_TIME_SERIES_META_DATA_END_DATE_COLUMN.toString(), DeploymentProperties.DATABASE_TIME_SERIES_META_DATA_TABLE.toString(), DeploymentProperties.DATABASE_TIME_SERIES_META_DATA_ID_COLUMN.toString(), time_series_id);
 
-		DatabaseClient db = new DatabaseClient(database.getManagementSystem(), database.getName(),
-											   database.getHostname(), database.getPort(), 
-											   database.getUsername(), database.getPassword());
-
-		if (db.connect())
+		try (Connection connection = pool.getConnection())
 		{
-			Connection connection = db.getConnection();
-			
 			time_series_data = DataProviderDatabaseHelper.getTimeSeriesMetaData(connection, database.getFetchSize(), select_query);
-			db.disconnect();
 			
 			result = DataStructureHelper.convertTimeSeriesDataToJsonString(time_series_data);
 		}
+		catch (SQLException exception)
+		{
+			exception.printStackTrace();
+		}
 				
 		return result;
 	}
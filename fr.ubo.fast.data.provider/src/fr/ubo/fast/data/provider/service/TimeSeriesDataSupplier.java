@@ -1,23 +1,56 @@
 package fr.ubo.fast.data.provider.service;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.database.QueryCatalog;
+import fr.ubo.fast.data.provider.database.SeriesRegistry;
+import fr.ubo.fast.data.provider.downsampling.Downsampler;
+import fr.ubo.fast.data.provider.downsampling.LargestTriangleThreeBuckets;
+import fr.ubo.fast.data.provider.downsampling.M4Downsampler;
+import fr.ubo.fast.data.provider.downsampling.PointConsumer;
+import fr.ubo.fast.data.provider.model.SeriesFrame;
+import fr.ubo.fast.data.provider.service.impl.AggregationPyramid;
+import fr.ubo.fast.data.provider.service.impl.QuantileSketch;
+import fr.ubo.fast.data.provider.service.impl.QuantileSketch.Quantile;
 
 public class TimeSeriesDataSupplier {
 
+	/** Merges the sums and the counts of sub-buckets into their exact average. */
+	private static final String EXACT_AVG = "SUM(sum_value) / NULLIF(SUM(count_value), 0) AS avg_value, "
+			+ "SUM(count_value) AS count_value";
+
+	/**
+     * The shared connection pool. 
+     */ 
+	private DatabaseConnectionPool pool;
+
+	/**
+     * The known time series. 
+     */ 
+	private SeriesRegistry registry;
+
 	/**
-     * A connection access. 
+     * Finds the levels of sketches the quantiles are merged from. 
      */ 
-	private Connection conn;
+	private AggregationPyramid pyramid;
 
-	public TimeSeriesDataSupplier(Connection connection) {
-		conn = connection;
+	public TimeSeriesDataSupplier(DatabaseConnectionPool connectionPool, SeriesRegistry seriesRegistry) {
+		pool = connectionPool;
+		registry = seriesRegistry;
+		pyramid = new AggregationPyramid(seriesRegistry);
 	}
 
 	/**
@@ -27,9 +60,6 @@ public class TimeSeriesDataSupplier {
 	 * @return A string contents metadata.
 	 */
 	public String getMetadata(String name) {
-		String selectQuery = "SELECT start_date, end_date, period, qmin, qmax, unit  FROM"
-				+ " time_series JOIN measured_variables ON name = observations_name WHERE name = " + "'" + name + "'"
-				+ ";";
 		//String selectCount = "SELECT COUNT(value) AS data_numbers FROM observations_" + name + ";";
 		String result = "";
 		String unit = "";
@@ -40,8 +70,10 @@ public class TimeSeriesDataSupplier {
 		Integer qmax = null;
 		Integer count = null;
 
-		try (Statement statement = conn.createStatement()) {
-			ResultSet rsdata = statement.executeQuery(selectQuery);
+		try (Connection conn = pool.getConnection();
+				PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_METADATA)) {
+			statement.setString(1, name);
+			ResultSet rsdata = statement.executeQuery();
 			if (rsdata.next()) {
 				unit = rsdata.getString("unit");
 				startDate = rsdata.getObject("start_date", OffsetDateTime.class);
@@ -77,11 +109,11 @@ public class TimeSeriesDataSupplier {
      * @return A string containing all observation names.
      */
     public String getAllObservationNames() {
-        String selectQuery = "SELECT observations_name FROM time_series;";
         StringBuilder result = new StringBuilder();
 
-        try (Statement statement = conn.createStatement()) {
-            ResultSet rs = statement.executeQuery(selectQuery);
+        try (Connection conn = pool.getConnection();
+        		PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_OBSERVATION_NAMES)) {
+            ResultSet rs = statement.executeQuery();
             while (rs.next()) {
                 String observationName = rs.getString("observations_name");
                 result.append(observationName).append("\n");
@@ -104,57 +136,76 @@ public class TimeSeriesDataSupplier {
 	 * @param startDate : When data start.
 	 * @param endDate   : When data end.
 	 * @param Nbv       : number of values.
-	 * @return A string contents data.
+	 * @return A frame giving the start of each bucket and the values of each statistic.
 	 */
-	public String getData(String name, List<String> data, String startDate, String endDate, int Nbv) {
+	public SeriesFrame getData(String name, List<String> data, String startDate, String endDate, int Nbv) {
 		if (data.isEmpty()) {
 			throw new IllegalArgumentException("Data list must contain at least one element.");
 		}
 
-		StringBuilder result = new StringBuilder();
-		String timeColumn = "time";
-		String baseSelectData = "SELECT table_name FROM configuration WHERE table_name='%s' AND delta=%f AND data_stat='%s';";
-		String selectStat;
-
+		// The columns are created first so that they keep the order of the request
+		SeriesFrame frame = new SeriesFrame(Nbv);
+		for (String column : data) {
+			for (String frameColumn : frameColumns(column)) {
+				frame.addColumn(frameColumn);
+			}
+		}
+		String observationsTable = registry.observationsTable(name);
 
-		try (Statement statement = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-			statement.setFetchSize(50);
-			long intervalle = OffsetDateTime.parse(endDate).toEpochSecond()
-					- OffsetDateTime.parse(startDate).toEpochSecond();
+		try (Connection conn = pool.getConnection()) {
+			// Cursors only stream inside a transaction
+			conn.setAutoCommit(false);
+			OffsetDateTime start = OffsetDateTime.parse(startDate);
+			OffsetDateTime end = OffsetDateTime.parse(endDate);
+			long intervalle = end.toEpochSecond() - start.toEpochSecond();
 			double deltaFloat = (double) intervalle / Nbv;
+
+			// Precomputed tables only exist for whole deltas
+			Map<String, String> statTables = new LinkedHashMap<>();
+			if (deltaFloat % 1 == 0) {
+				findStatTables(conn, name, (long) deltaFloat, data, statTables);
+			}
+
 			List<String> notConfiguredData = new ArrayList<>();
 			for (String column : data) {
-				String selectData = String.format(baseSelectData, name, deltaFloat, column);
-				ResultSet rsConfig = statement.executeQuery(selectData);
-				if (rsConfig.next()) {
-					String tableName = rsConfig.getString("table_name");
-					selectStat = String.format("SELECT * FROM observations_%s_%s;", tableName, column.toLowerCase());
-					ResultSet rsStat = statement.executeQuery(selectStat);
-					result.append(column.toUpperCase()).append(":\n");
+				if (isDownsampling(column)) {
+					frame = frame.merge(readDownsampled(conn, observationsTable, column, start, end, Nbv));
+				} else if (!statTables.containsKey(column.toLowerCase())) {
+					notConfiguredData.add(column);
+				}
+			}
+
+			if (!statTables.isEmpty()) {
+				List<String> tables = new ArrayList<>(statTables.values());
+				try (PreparedStatement statStatement = conn.prepareStatement(QueryCatalog.selectStatRanges(tables))) {
+					statStatement.setFetchSize(pool.getFetchSize());
+					for (int i = 0; i < tables.size(); i++) {
+						statStatement.setObject(3 * i + 1, start);
+						statStatement.setObject(3 * i + 2, end);
+						statStatement.setInt(3 * i + 3, Nbv);
+					}
+					SeriesFrame statFrame = new SeriesFrame(Nbv);
+					ResultSet rsStat = statStatement.executeQuery();
 					while (rsStat.next()) {
-						switch (column.toLowerCase()) {
-						case "min":
-							result.append(rsStat.getDouble(1)).append("\n");
-							break;
-						case "max":
-							result.append(rsStat.getDouble(1)).append("\n");
-							break;
-						case "median":
-							result.append(rsStat.getDouble(1)).append("\n");
-							break;
-						case "avg":
-							result.append("Value: ").append(rsStat.getDouble(1)).append(", Count: ")
-									.append(rsStat.getDouble(2)).append("\n");
-							break;
-						case "quart":
-							result.append("Q1: ").append(rsStat.getDouble(1)).append(", Q3: ")
-									.append(rsStat.getDouble(2)).append("\n");
-							break;
+						int row = statFrame.addRow(rsStat.getTimestamp("time").getTime());
+						for (String stat : statTables.keySet()) {
+							readStatValue(rsStat, stat, statFrame, row);
 						}
 					}
-					result.append("\n");
-				} else {
-					notConfiguredData.add(column);
+					frame = frame.merge(statFrame);
+				}
+			}
+
+			// A statistic precomputed for narrower buckets making up those asked is merged from them
+			if (deltaFloat % 1 == 0) {
+				for (Iterator<String> it = notConfiguredData.iterator(); it.hasNext();) {
+					String column = it.next();
+					String finerTable = findFinerTable(conn, name, (long) deltaFloat, column.toLowerCase());
+					if (finerTable != null) {
+						frame = frame.merge(readMerged(conn, finerTable, column.toLowerCase(), (long) deltaFloat,
+								start, end, Nbv));
+						it.remove();
+					}
 				}
 			}
 
@@ -164,23 +215,25 @@ public class TimeSeriesDataSupplier {
 				long ceilDelta = (long) Math.ceil(deltaFloat);
 				long p;
 				if (floorDelta > 0) {
-					p = (long) (intervalle % floorDelta);
+					p = intervalle % floorDelta;
 				} else {
-					p = (long) (intervalle % ceilDelta);
+					p = intervalle % ceilDelta;
 				}
 				long n = Nbv - p;
 				
 				if(floorDelta==0) {
 					floorDelta = ceilDelta;
 				}
-				
-
-				DateTimeFormatter formatter = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-				OffsetDateTime currentTime = OffsetDateTime.parse(startDate);
+				if (n < 0) {
+					n = 0;
+				}
 
+				// The quantiles come from sketches, the other statistics from the buckets
 				List<String> columns = new ArrayList<>();
 				List<String> table = new ArrayList<>();
+				Set<Quantile> quantiles = new LinkedHashSet<>();
 				for (String column : notConfiguredData) {
+					quantiles.addAll(QuantileSketch.quantiles(column));
 					switch (column.toLowerCase()) {
 					case "min":
 						columns.add("MIN(value) AS min_value");
@@ -191,109 +244,430 @@ public class TimeSeriesDataSupplier {
 						table.add("MAX(max_value) AS max_value");
 						break;
 					case "avg":
-						columns.add("AVG(value) AS avg_value, COUNT(value) AS count_value");
-						table.add("AVG(avg_value) AS avg_value, COUNT(count_value) AS count_value");
+						columns.add("AVG(value) AS avg_value, SUM(value) AS sum_value, COUNT(value) AS count_value");
+						table.add(EXACT_AVG);
 						break;
 					case "median":
-						columns.add("percentile_cont(0.5) WITHIN GROUP (ORDER BY value) AS median_value");
-						table.add("percentile_cont(0.5) WITHIN GROUP (ORDER BY median_value) AS median_value");
-						break;
 					case "quart":
-						columns.add(
-								"percentile_cont(0.25) WITHIN GROUP (ORDER BY value) AS q1_value, percentile_cont(0.75) WITHIN GROUP (ORDER BY value) AS q3_value");
-						table.add(
-								"percentile_cont(0.25) WITHIN GROUP (ORDER BY q1_value) AS q1_value, percentile_cont(0.75) WITHIN GROUP (ORDER BY q3_value) AS q3_value");
 						break;
 					case "all":
 						columns.add("MIN(value) AS min_value");
 						columns.add("MAX(value) AS max_value");
-						columns.add("AVG(value) AS avg_value, COUNT(value) AS count_value");
-						columns.add("percentile_cont(0.5) WITHIN GROUP (ORDER BY value) AS median_value");
-						columns.add("percentile_cont(0.25) WITHIN GROUP (ORDER BY value) AS q1_value");
-						columns.add("percentile_cont(0.75) WITHIN GROUP (ORDER BY value) AS q3_value");
+						columns.add("AVG(value) AS avg_value, SUM(value) AS sum_value, COUNT(value) AS count_value");
 						table.add("MIN(min_value) AS min_value");
 						table.add("MAX(max_value) AS max_value");
-						table.add("AVG(avg_value) AS avg_value, COUNT(count_value) AS count_value");
-						table.add("percentile_cont(0.5) WITHIN GROUP (ORDER BY median_value) AS median_value");
-						table.add(
-								"percentile_cont(0.25) WITHIN GROUP (ORDER BY q1_value) AS q1_value, percentile_cont(0.75) WITHIN GROUP (ORDER BY q3_value) AS q3_value");
+						table.add(EXACT_AVG);
 						break;
 					default:
 						throw new IllegalArgumentException("Unsupported data type: " + column);
 					}
 				}
 
-				if (deltaFloat % 1 == 0) {
-					String selectPart = String.format(
-							"SELECT time_bucket('%d seconds', %s) AS time_interval, %s FROM observations_%s WHERE %s > '%s' AND %s <= '%s' GROUP BY time_interval ORDER BY time_interval ASC;",
-							(int) deltaFloat, timeColumn, String.join(", ", columns), name, timeColumn, startDate,
-							timeColumn, endDate);
-					executeAndAppendResults(selectPart, result, notConfiguredData);
-				} else {
-					String query = "";
-					String query2 = "";
-					int x= 0;
-					x++;
-					System.out.println("Nombre de fois: " + x);
-
-					for (int i = 0; i < n; i++) {
-						OffsetDateTime bucketEndTime = currentTime.plusSeconds(floorDelta);
-						String selectPart = String.format(
-								"SELECT %s FROM (SELECT time_bucket('%d seconds', %s) AS time_interval, %s FROM observations_%s WHERE %s > '%s' AND %s <= '%s' GROUP BY time_interval ORDER BY time_interval ASC) AS subquery;",
-								String.join(", ", table), floorDelta, timeColumn, String.join(", ", columns), name,
-								timeColumn, currentTime.format(formatter), timeColumn, bucketEndTime.format(formatter));
-						executeAndAppendResults(selectPart, result, notConfiguredData);
-						query = selectPart;
-						currentTime = bucketEndTime;
+				SeriesFrame bucketFrame = new SeriesFrame(Nbv);
+				if (columns.isEmpty()) {
+					// Only quantiles are asked
+				} else if (deltaFloat % 1 == 0) {
+					String selectPart = String.format(QueryCatalog.SELECT_REGULAR_BUCKETS_TEMPLATE,
+							String.join(", ", columns), observationsTable);
+					try (PreparedStatement statement = conn.prepareStatement(selectPart)) {
+						statement.setLong(1, (long) deltaFloat);
+						statement.setObject(2, start);
+						statement.setObject(3, end);
+						statement.setFetchSize(pool.getFetchSize());
+						ResultSet rs = statement.executeQuery();
+						while (rs.next()) {
+							int row = bucketFrame.addRow(rs.getTimestamp("time_interval").getTime());
+							readBucketValues(rs, notConfiguredData, bucketFrame, row);
+						}
 					}
-
-					for (int i = 0; i < p; i++) {
-						OffsetDateTime bucketEndTime = currentTime.plusSeconds(ceilDelta);
-						String selectPart = String.format(
-								"SELECT %s FROM (SELECT time_bucket('%d seconds', %s) AS time_interval, %s FROM observations_%s WHERE %s > '%s' AND %s <= '%s' GROUP BY time_interval ORDER BY time_interval ASC) AS subquery;",
-								String.join(", ", table), ceilDelta, timeColumn, String.join(", ", columns), name,
-								timeColumn, currentTime.format(formatter), timeColumn, bucketEndTime.format(formatter));
-						executeAndAppendResults(selectPart, result, notConfiguredData);
-						query2 = selectPart;
-						currentTime = bucketEndTime;
+				} else {
+					String selectPart = String.format(QueryCatalog.SELECT_IRREGULAR_BUCKETS_TEMPLATE,
+							String.join(", ", table), String.join(", ", columns), observationsTable);
+					try (PreparedStatement statement = conn.prepareStatement(selectPart)) {
+						QueryCatalog.bindIrregularBuckets(statement, start, n, p, floorDelta, ceilDelta);
+						statement.setFetchSize(pool.getFetchSize());
+						long startMillis = start.toInstant().toEpochMilli();
+						ResultSet rs = statement.executeQuery();
+						while (rs.next()) {
+							// The first n buckets last floorDelta seconds, the next ones ceilDelta seconds
+							long bucket = rs.getLong("bucket");
+							long offset = bucket < n ? bucket * floorDelta : n * floorDelta + (bucket - n) * ceilDelta;
+							int row = bucketFrame.addRow(startMillis + offset * 1000);
+							readBucketValues(rs, notConfiguredData, bucketFrame, row);
+						}
 					}
-					System.out.println(query);
-					System.out.println(query2);
 				}
+				frame = frame.merge(bucketFrame);
 
+				if (!quantiles.isEmpty()) {
+					frame = frame.merge(readQuantiles(conn, name, new ArrayList<>(quantiles), start, end, Nbv,
+							deltaFloat, n, p, floorDelta, ceilDelta));
+				}
 			}
 
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
 
-		return result.toString();
+		return frame;
+	}
+
+	/**
+	 * Checks whether a data is a visual downsampling mode rather than a statistic.
+	 * 
+	 * @param column : The ask data.
+	 * @return true for "lttb" and "m4".
+	 */
+	private static boolean isDownsampling(String column) {
+		return column.equalsIgnoreCase("lttb") || column.equalsIgnoreCase("m4");
+	}
+
+	/**
+	 * Gives the columns of the frame filled by an ask data.
+	 * 
+	 * @param column : The ask data.
+	 * @return The names of the columns.
+	 */
+	private static String[] frameColumns(String column) {
+		switch (column.toLowerCase()) {
+		case "avg":
+			return new String[] { "AVG", "AVG_COUNT" };
+		case "quart":
+			return new String[] { "Q1", "Q3" };
+		case "all":
+			return new String[] { "MIN", "MAX", "AVG", "AVG_COUNT", "MEDIAN", "Q1", "Q3" };
+		default:
+			return new String[] { column.toUpperCase() };
+		}
 	}
 
 	/**
-	 * To permit the execution of a SQL query.
+	 * Streams the raw observations of a time range through a downsampler and gives the kept points, in a column named
+	 * after the mode.
 	 * 
-	 * @param query   : Query to execute.
-	 * @param result  : Result of query.
-	 * @param columns : Columns of result.
-	 * @return Nothing but put result of SQL query on variable result.
+	 * @param conn              : Connection to use.
+	 * @param observationsTable : The table of the observations.
+	 * @param column            : The downsampling mode, "lttb" or "m4".
+	 * @param start             : When data start.
+	 * @param end               : When data end.
+	 * @param Nbv               : number of values to keep.
+	 * @return The kept points.
+	 * @throws SQLException if the observations cannot be read.
 	 */
-	private void executeAndAppendResults(String query, StringBuilder result, List<String> columns) {
-		try (Statement statement = conn.createStatement()) {
-			ResultSet rs = statement.executeQuery(query);
+	private SeriesFrame readDownsampled(Connection conn, String observationsTable, String column,
+			OffsetDateTime start, OffsetDateTime end, int Nbv) throws SQLException {
+		String key = column.toUpperCase();
+		SeriesFrame points = new SeriesFrame(Nbv);
+		PointConsumer consumer = (time, value) -> points.set(key, points.addRow(time), value);
+
+		Downsampler downsampler;
+		long limit = Long.MAX_VALUE;
+		if (column.equalsIgnoreCase("lttb")) {
+			// Buckets are split by rank, so the number of observations is needed first
+			try (PreparedStatement countStatement = conn.prepareStatement(
+					String.format(QueryCatalog.COUNT_OBSERVATIONS_TEMPLATE, observationsTable))) {
+				countStatement.setObject(1, start);
+				countStatement.setObject(2, end);
+				ResultSet rsCount = countStatement.executeQuery();
+				limit = rsCount.next() ? rsCount.getLong(1) : 0;
+			}
+			downsampler = new LargestTriangleThreeBuckets(limit, Nbv, consumer);
+		} else {
+			downsampler = new M4Downsampler(start.toInstant().toEpochMilli(), end.toInstant().toEpochMilli(), Nbv,
+					consumer);
+		}
+
+		try (PreparedStatement statement = conn.prepareStatement(
+				String.format(QueryCatalog.SELECT_POINTS_TEMPLATE, observationsTable),
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			statement.setFetchSize(pool.getFetchSize());
+			statement.setObject(1, start);
+			statement.setObject(2, end);
+			statement.setLong(3, limit);
+			ResultSet rs = statement.executeQuery();
+			while (rs.next()) {
+				downsampler.add(rs.getLong(1), rs.getDouble(2));
+			}
+		}
+		downsampler.finish();
+		return points;
+	}
+
+	/**
+	 * Computes quantiles by buckets from sketches: those of the coarsest level of sketches whose width divides the
+	 * buckets when there is one, otherwise sketches of the observations, which are binned rather than sorted.
+	 * 
+	 * @param conn       : Connection to use.
+	 * @param name       : The name of file.
+	 * @param quantiles  : The quantiles to compute.
+	 * @param start      : When data start.
+	 * @param end        : When data end.
+	 * @param Nbv        : number of values.
+	 * @param deltaFloat : The width of the buckets, in seconds.
+	 * @param n          : The number of buckets of floorDelta seconds, when the width is fractional.
+	 * @param p          : The number of buckets of ceilDelta seconds, when the width is fractional.
+	 * @param floorDelta : The width of the first buckets.
+	 * @param ceilDelta  : The width of the last buckets.
+	 * @return The quantiles of each bucket.
+	 * @throws SQLException if the sketches cannot be read.
+	 */
+	private SeriesFrame readQuantiles(Connection conn, String name, List<Quantile> quantiles, OffsetDateTime start,
+			OffsetDateTime end, int Nbv, double deltaFloat, long n, long p, long floorDelta, long ceilDelta)
+			throws SQLException {
+		String observationsTable = registry.observationsTable(name);
+		String sketches;
+		long level = 0;
+		if (deltaFloat % 1 == 0) {
+			long delta = (long) deltaFloat;
+			NavigableSet<Long> levels = pyramid.levels(conn, AggregationPyramid.Family.SKETCHES, name);
+			level = levels.contains(delta) ? delta : AggregationPyramid.source(levels, delta);
+			sketches = level > 0
+					? String.format(QueryCatalog.LEVEL_SKETCHES_TEMPLATE,
+							pyramid.table(AggregationPyramid.Family.SKETCHES, name, level))
+					: String.format(QueryCatalog.REGULAR_SKETCHES_TEMPLATE, QuantileSketch.BIN, observationsTable);
+		} else {
+			sketches = String.format(QueryCatalog.IRREGULAR_SKETCHES_TEMPLATE, QuantileSketch.BIN, observationsTable);
+		}
+		String select = String.format(QueryCatalog.SELECT_SKETCH_QUANTILES_TEMPLATE,
+				QuantileSketch.valueColumns(quantiles),
+				String.format(QueryCatalog.RANKED_SKETCHES_TEMPLATE, "bucket", QuantileSketch.rankColumns(quantiles),
+						sketches));
+
+		SeriesFrame quantileFrame = new SeriesFrame(Nbv);
+		try (PreparedStatement statement = conn.prepareStatement(select)) {
+			if (level > 0) {
+				long delta = (long) deltaFloat;
+				statement.setLong(1, delta);
+				statement.setObject(2, start);
+				// The last bucket starting before the end is merged whole
+				statement.setObject(3, end.plusSeconds(delta));
+				statement.setObject(4, start);
+				statement.setObject(5, end);
+			} else if (deltaFloat % 1 == 0) {
+				statement.setLong(1, (long) deltaFloat);
+				statement.setObject(2, start);
+				statement.setObject(3, end);
+			} else {
+				QueryCatalog.bindIrregularSketches(statement, start, n, p, floorDelta, ceilDelta);
+			}
+			statement.setFetchSize(pool.getFetchSize());
+			long startMillis = start.toInstant().toEpochMilli();
+			ResultSet rs = statement.executeQuery();
 			while (rs.next()) {
-				for (String column : columns) {
-					if (column.compareToIgnoreCase("quart") == 0) {
-						result.append("q1").append(": ").append(rs.getDouble("q1" + "_value")).append("\n");
-						result.append("q3").append(": ").append(rs.getDouble("q3" + "_value")).append("\n");
-					} else {
-						result.append(column.toUpperCase()).append(": ").append(rs.getDouble(column + "_value"))
-								.append("\n");
+				int row;
+				if (deltaFloat % 1 == 0) {
+					row = quantileFrame.addRow(rs.getTimestamp("bucket").getTime());
+				} else {
+					// The first n buckets last floorDelta seconds, the next ones ceilDelta seconds
+					long bucket = rs.getLong("bucket");
+					long offset = bucket < n ? bucket * floorDelta : n * floorDelta + (bucket - n) * ceilDelta;
+					row = quantileFrame.addRow(startMillis + offset * 1000);
+				}
+				for (Quantile quantile : quantiles) {
+					String column = quantile.getColumn();
+					setValue(rs, column, quantileFrame, column.substring(0, column.indexOf('_')).toUpperCase(), row);
+				}
+			}
+		}
+		return quantileFrame;
+	}
+
+	/**
+	 * Finds the coarsest precomputed table of a statistic whose buckets make up buckets of delta seconds and can be
+	 * merged: min and max always can, avg once its table has the sum of the values.
+	 * 
+	 * @param conn  : Connection to use.
+	 * @param name  : The name of file.
+	 * @param delta : The width of the buckets, in seconds.
+	 * @param stat  : The statistic.
+	 * @return The table, or null if there is none or the statistic cannot be merged.
+	 * @throws SQLException if the lookup fails.
+	 */
+	private String findFinerTable(Connection conn, String name, long delta, String stat) throws SQLException {
+		if (mergeColumns(stat) == null) {
+			return null;
+		}
+		try (PreparedStatement configStatement = conn.prepareStatement(QueryCatalog.SELECT_FINER_CONFIGURATIONS);
+				PreparedStatement columnStatement = conn.prepareStatement(QueryCatalog.SELECT_COLUMN_EXISTS)) {
+			configStatement.setString(1, name);
+			configStatement.setString(2, stat);
+			configStatement.setLong(3, delta);
+			configStatement.setLong(4, delta);
+			ResultSet rsConfig = configStatement.executeQuery();
+			while (rsConfig.next()) {
+				String table = registry.statTable(name, stat, rsConfig.getInt("zoom_id"), rsConfig.getString("zoom_coef"));
+				columnStatement.setString(1, table);
+				columnStatement.setString(2, stat.equals("avg") ? "sum_value" : stat + "_value");
+				try (ResultSet rsColumn = columnStatement.executeQuery()) {
+					if (rsColumn.next() && rsColumn.getBoolean(1)) {
+						return table;
 					}
 				}
 			}
-		} catch (SQLException e) {
-			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Merges the buckets of a precomputed table into buckets of delta seconds.
+	 * 
+	 * @param conn  : Connection to use.
+	 * @param table : The precomputed table, with narrower buckets dividing delta.
+	 * @param stat  : The statistic, min, max or avg.
+	 * @param delta : The width of the buckets, in seconds.
+	 * @param start : When data start.
+	 * @param end   : When data end.
+	 * @param Nbv   : number of values.
+	 * @return The statistic of each bucket.
+	 * @throws SQLException if the table cannot be read.
+	 */
+	private SeriesFrame readMerged(Connection conn, String table, String stat, long delta, OffsetDateTime start,
+			OffsetDateTime end, int Nbv) throws SQLException {
+		SeriesFrame mergedFrame = new SeriesFrame(Nbv);
+		List<String> columns = new ArrayList<>();
+		columns.add(stat);
+		try (PreparedStatement statement = conn.prepareStatement(
+				String.format(QueryCatalog.SELECT_MERGED_BUCKETS_TEMPLATE, mergeColumns(stat), table))) {
+			statement.setLong(1, delta);
+			statement.setObject(2, start);
+			// The last bucket starting before the end is merged whole
+			statement.setObject(3, end.plusSeconds(delta));
+			statement.setObject(4, start);
+			statement.setObject(5, end);
+			statement.setFetchSize(pool.getFetchSize());
+			ResultSet rs = statement.executeQuery();
+			while (rs.next()) {
+				int row = mergedFrame.addRow(rs.getTimestamp("time_interval").getTime());
+				readBucketValues(rs, columns, mergedFrame, row);
+			}
+		}
+		return mergedFrame;
+	}
+
+	/**
+	 * Gives the aggregates merging the buckets of the precomputed table of a statistic.
+	 * 
+	 * @param stat : The statistic.
+	 * @return The select list, named as the aggregated buckets, or null if the statistic cannot be merged.
+	 */
+	private static String mergeColumns(String stat) {
+		switch (stat) {
+		case "min":
+			return "MIN(min_value) AS min_value";
+		case "max":
+			return "MAX(max_value) AS max_value";
+		case "avg":
+			return "SUM(sum_value) / NULLIF(SUM(datanumbers), 0) AS avg_value, SUM(datanumbers) AS count_value";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Finds the precomputed tables of the asked statistics with a single lookup.
+	 * 
+	 * @param conn       : Connection to use.
+	 * @param name       : The name of file.
+	 * @param delta      : The width of the buckets, in seconds.
+	 * @param data       : A list of ask data.
+	 * @param statTables : Receives the table of each configured statistic.
+	 * @throws SQLException if the lookup fails.
+	 */
+	private void findStatTables(Connection conn, String name, long delta, List<String> data,
+			Map<String, String> statTables) throws SQLException {
+		List<String> stats = new ArrayList<>();
+		for (String column : data) {
+			stats.add(column.toLowerCase());
+		}
+		try (PreparedStatement configStatement = conn.prepareStatement(QueryCatalog.SELECT_CONFIGURATIONS)) {
+			configStatement.setString(1, name);
+			configStatement.setLong(2, delta);
+			configStatement.setArray(3, conn.createArrayOf("text", stats.toArray()));
+			ResultSet rsConfig = configStatement.executeQuery();
+			while (rsConfig.next()) {
+				String stat = rsConfig.getString("data_stat");
+				if (!statTables.containsKey(stat)) {
+					statTables.put(stat, registry.statTable(rsConfig.getString("table_name"), stat,
+							rsConfig.getInt("zoom_id"), rsConfig.getString("zoom_coef")));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the value of a precomputed statistic in the current row, if that row has one.
+	 * 
+	 * @param rsStat : The rows of the joined precomputed tables.
+	 * @param stat   : The statistic.
+	 * @param frame  : The frame receiving the value.
+	 * @param row    : The row of the frame.
+	 * @throws SQLException if the value cannot be read.
+	 */
+	private static void readStatValue(ResultSet rsStat, String stat, SeriesFrame frame, int row) throws SQLException {
+		switch (stat) {
+		case "min":
+		case "max":
+		case "median":
+			setValue(rsStat, stat + "_value", frame, stat.toUpperCase(), row);
+			break;
+		case "avg":
+			setValue(rsStat, "avg_value", frame, "AVG", row);
+			setValue(rsStat, "datanumbers", frame, "AVG_COUNT", row);
+			break;
+		case "quart":
+			setValue(rsStat, "q1_value", frame, "Q1", row);
+			setValue(rsStat, "q3_value", frame, "Q3", row);
+			break;
+		}
+	}
+
+	/**
+	 * Reads the values of the aggregated statistics in the current row.
+	 * 
+	 * @param rs      : The aggregated buckets.
+	 * @param columns : The ask data.
+	 * @param frame   : The frame receiving the values.
+	 * @param row     : The row of the frame.
+	 * @throws SQLException if a value cannot be read.
+	 */
+	private static void readBucketValues(ResultSet rs, List<String> columns, SeriesFrame frame, int row)
+			throws SQLException {
+		for (String column : columns) {
+			for (String frameColumn : frameColumns(column)) {
+				if (isQuantile(frameColumn)) {
+					continue; // Read from the sketches
+				}
+				String sqlColumn = frameColumn.equals("AVG_COUNT") ? "count_value" : frameColumn.toLowerCase() + "_value";
+				setValue(rs, sqlColumn, frame, frameColumn, row);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a column of the frame is computed from sketches.
+	 * 
+	 * @param frameColumn : The column of the frame.
+	 * @return true for "MEDIAN", "Q1" and "Q3".
+	 */
+	private static boolean isQuantile(String frameColumn) {
+		return frameColumn.equals("MEDIAN") || frameColumn.equals("Q1") || frameColumn.equals("Q3");
+	}
+
+	/**
+	 * Copies a value of the current row into the frame, leaving NaN when it is NULL.
+	 * 
+	 * @param rs          : The rows.
+	 * @param sqlColumn   : The column of the rows.
+	 * @param frame       : The frame receiving the value.
+	 * @param frameColumn : The column of the frame.
+	 * @param row         : The row of the frame.
+	 * @throws SQLException if the value cannot be read.
+	 */
+	private static void setValue(ResultSet rs, String sqlColumn, SeriesFrame frame, String frameColumn, int row)
+			throws SQLException {
+		double value = rs.getDouble(sqlColumn);
+		if (!rs.wasNull()) {
+			frame.set(frameColumn, row, value);
 		}
 	}
 	
@@ -306,9 +680,9 @@ public class TimeSeriesDataSupplier {
 
 	public String getAllConfigurations() {
         StringBuilder result = new StringBuilder();
-        String selectQuery = "SELECT table_name, data_stat, zoom_id, zoom_coef FROM configuration";
-        try (Statement statement = conn.createStatement();
-             ResultSet rs = statement.executeQuery(selectQuery)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_ALL_CONFIGURATIONS);
+             ResultSet rs = statement.executeQuery()) {
             
             if (!rs.isBeforeFirst()) { // Check if the result set is empty
                return null;
@@ -9,38 +9,99 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.database.QueryCatalog;
+import fr.ubo.fast.data.provider.model.SeriesFrame;
 import fr.ubo.fast.data.provider.service.impl.TimeSeriesDataConfigImpl;
 
 public class TimeSeriesDataViews {
 
 	
 	/**
-	 * Cache to store prefetched views.
+	 * The largest number of views kept in the cache.
 	 */
-    private final ConcurrentHashMap<String, Map<String, Object>> prefetchCache = new ConcurrentHashMap<>();
+	private static final int MAX_CACHED_VIEWS = 256;
+
+	/**
+	 * The largest number of prefetches waiting for the prefetching thread.
+	 */
+	private static final int MAX_QUEUED_PREFETCHES = 8;
+
+	/**
+	 * Separates the name of the time series from the rest of a cache key: it cannot appear in a series name.
+	 */
+	private static final String KEY_SEPARATOR = "|";
+
+	/**
+	 * Cache to store prefetched views, shared by every client: the least recently used views are dropped first.
+	 */
+    private final Map<String, SeriesFrame> prefetchCache = Collections.synchronizedMap(
+    		new LinkedHashMap<String, SeriesFrame>(16, 0.75f, true) {
+    			private static final long serialVersionUID = 1L;
+
+    			@Override
+    			protected boolean removeEldestEntry(Map.Entry<String, SeriesFrame> eldest) {
+    				return size() > MAX_CACHED_VIEWS;
+    			}
+    		});
 
     /**
-     * Executor for prefetching tasks. 
+     * The number of times the views of each time series were invalidated, so that a view read before the change is
+     * not cached after it.
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Executor for prefetching tasks: when the clients navigate faster than it prefetches, the oldest prefetches,
+     * around views already left, are dropped.
      */ 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+    		new ArrayBlockingQueue<>(MAX_QUEUED_PREFETCHES), new ThreadPoolExecutor.DiscardOldestPolicy());
     
     /**
      * An object who provide data. 
      */ 
     TimeSeriesDataSupplier supplierService;
     
-    private Connection conn;
+    /**
+     * The shared connection pool. 
+     */ 
+    private DatabaseConnectionPool pool;
+    
+    public TimeSeriesDataViews(DatabaseConnectionPool connectionPool, TimeSeriesDataSupplier supplier) {
+    	this.supplierService = supplier;
+    	this.pool = connectionPool;
+    }
     
-    public TimeSeriesDataViews(Connection connection) {
-    	this.supplierService = new TimeSeriesDataSupplier(connection);
-    	this.conn = connection;
+    /**
+     * Drops the cached views of a time series, whose observations changed.
+     *
+     * @param name : The name of the time series.
+     */
+    public void invalidate(String name) {
+    	String prefix = name + KEY_SEPARATOR;
+    	synchronized (prefetchCache) {
+    		generations.computeIfAbsent(name, key -> new AtomicLong()).incrementAndGet();
+    		prefetchCache.keySet().removeIf(key -> key.startsWith(prefix));
+    	}
+    }
+
+    /**
+     * Stops the prefetching tasks and empties the cache.
+     */
+    public void close() {
+    	executor.shutdownNow();
+    	prefetchCache.clear();
     }
     
     
@@ -51,14 +112,41 @@ public class TimeSeriesDataViews {
 	 * @param Nbv         : number of value.
 	 * @param tableName   : The name of the table.
 	 * @param aggregation : Data stat that we want.
-	 * @return A string contents data.
+	 * @return The frame of the initial view.
 	 */
-    public List<Map<String, Object>> initView(String tableName, String aggregation, int Nbv, Map<Integer, String> zoom) {
-        String selectDate = "SELECT start_date, end_date FROM time_series WHERE observations_name = ?";
+    public SeriesFrame initView(String tableName, String aggregation, int Nbv, Map<Integer, String> zoom) {
+        OffsetDateTime[] range = initialRange(tableName, zoom);
+        OffsetDateTime startDate = range[0];
+        OffsetDateTime zoomedEndDate = range[1];
+
+        List<String> data = new ArrayList<>();
+        data.add(aggregation);
+
+        long generation = generation(tableName);
+        SeriesFrame initialViewData = supplierService.getData(tableName, data, startDate.toString(), zoomedEndDate.toString(), Nbv);
+
+        // Cache the initial view
+        String cacheKey = generateCacheKey(tableName, data, startDate.toString(), zoomedEndDate.toString(), Nbv, zoom, "init");
+        cache(tableName, generation, cacheKey, initialViewData);
+
+        // Prefetch neighboring views
+        prefetchViews(tableName, data, startDate.toString(), zoomedEndDate.toString(), Nbv, zoom, "init");
+
+        return initialViewData;
+    }
+
+    /**
+     * Gives the time range of the initial view: the start of the time series, zoomed in once.
+     *
+     * @param tableName : The name of the table.
+     * @param zoom      : A map content the zoom value.
+     * @return The start date and the end date of the initial view.
+     */
+    private OffsetDateTime[] initialRange(String tableName, Map<Integer, String> zoom) {
         OffsetDateTime startDate = null;
         OffsetDateTime endDate = null;
 
-        try (PreparedStatement statement = conn.prepareStatement(selectDate)) {
+        try (Connection conn = pool.getConnection(); PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_TIME_SERIES_DATES)) {
             statement.setString(1, tableName);
             ResultSet rsdata = statement.executeQuery();
             if (rsdata.next()) {
@@ -69,9 +157,6 @@ public class TimeSeriesDataViews {
             e.printStackTrace();
         }
 
-        List<String> data = new ArrayList<>();
-        data.add(aggregation);
-
         OffsetDateTime zoomedEndDate;
 
         if (zoom.containsValue("co")) {
@@ -85,54 +170,9 @@ public class TimeSeriesDataViews {
             zoomedEndDate = OffsetDateTime.ofInstant(
                     Instant.ofEpochSecond(startDate.toEpochSecond() + zoomPeriodInSeconds), startDate.getOffset());
         }
-
-        List<Map<String, Object>> initialViewData = new ArrayList<>();
-        List<Map<String, Object>> zoomedData = parseData(
-        		supplierService.getData(tableName, data, startDate.toString(), zoomedEndDate.toString(), Nbv));
-
-        initialViewData.addAll(zoomedData);
-
-        // Cache the initial view
-        String cacheKey = generateCacheKey(tableName, data, startDate.toString(), zoomedEndDate.toString(), Nbv, zoom, "init");
-        prefetchCache.put(cacheKey, convertListToMap(zoomedData));
-
-        // Prefetch neighboring views
-        prefetchViews(tableName, data, startDate.toString(), zoomedEndDate.toString(), Nbv, zoom, "init", cacheKey);
-
-        return initialViewData;
-    }
-
-    private Map<String, Object> convertListToMap(List<Map<String, Object>> dataList) {
-        Map<String, Object> dataMap = new HashMap<>();
-        for (Map<String, Object> data : dataList) {
-            dataMap.putAll(data);
-        }
-        return dataMap;
+        return new OffsetDateTime[] { startDate, zoomedEndDate };
     }
 
-
-	/**
-	 * Parses the given data string into a list of maps containing key-value pairs.
-	 * 
-	 * @param data : Data string to parse.
-	 * @return A list of maps where each map contains key-value pairs extracted from the data string.
-	 */
-	public static List<Map<String, Object>> parseData(String data) {
-		List<Map<String, Object>> parsedData = new ArrayList<>();
-		String[] lines = data.split("\n");
-		for (String line : lines) {
-			String[] parts = line.split(":", 2);
-			if (parts.length == 2) {
-				Map<String, Object> map = new HashMap<>();
-				String key = parts[0].trim();
-				Object value = parts[1].trim();
-				map.put(key, value);
-				parsedData.add(map);
-			}
-		}
-		return parsedData;
-	}
-
 	/**
 	 * Finds the largest zoom calendar period in the given map.
 	 * 
@@ -197,9 +237,9 @@ public class TimeSeriesDataViews {
 	 * @param endDate    : End date of the data range.
 	 * @param Nbv        : Number of data points to retrieve.
 	 * @param zoom       : Map containing zoom factors or periods.
-	 * @return A map of parsed data after applying the UP view.
+	 * @return The frame of the UP view.
 	*/
-	public Map<String, Object> upSingleView(String name, List<String> data, String startDate, String endDate, int Nbv,
+	public SeriesFrame upSingleView(String name, List<String> data, String startDate, String endDate, int Nbv,
 			Map<Integer, String> zoom) {
 
 		OffsetDateTime zoomedEndDate;
@@ -221,8 +261,7 @@ public class TimeSeriesDataViews {
 					Instant.ofEpochSecond(OffsetDateTime.parse(startDate).toEpochSecond() + zoomPeriodInSeconds),
 					OffsetDateTime.parse(startDate).getOffset());
 		}
-		System.out.printf("le resultat de UP : %s \n", supplierService.getData(name, data, startDate, zoomedEndDate.toString(), Nbv));
-		return parseDataToMap(supplierService.getData(name, data, startDate, zoomedEndDate.toString(), Nbv));
+		return supplierService.getData(name, data, startDate, zoomedEndDate.toString(), Nbv);
 	}
 
 	/**
@@ -234,9 +273,9 @@ public class TimeSeriesDataViews {
 	 * @param endDate        : End date of the data range.
 	 * @param Nbv            : Number of data points to retrieve.
 	 * @param zoomPrecedent  : Map containing previous zoom factors or periods.
-	 * @return A map of parsed data after applying the DOWN operation.
+	 * @return The frame of the DOWN view.
 	 */
-	public Map<String, Object> downSingleView(String name, List<String> data, String startDate, String endDate, int Nbv,
+	public SeriesFrame downSingleView(String name, List<String> data, String startDate, String endDate, int Nbv,
 	        Map<Integer, String> zoom) {
 
 	    OffsetDateTime unZoomedEndDate;
@@ -284,7 +323,7 @@ public class TimeSeriesDataViews {
 	        unZoomedEndDate = end_Date;
 	    }
 
-	    return parseDataToMap(supplierService.getData(name, data, unZoomedStartDate.toString(), unZoomedEndDate.toString(), Nbv));
+	    return supplierService.getData(name, data, unZoomedStartDate.toString(), unZoomedEndDate.toString(), Nbv);
 	}
 
 	/**
@@ -294,11 +333,10 @@ public class TimeSeriesDataViews {
 	 * @return An array containing the start and end dates.
 	 */
 	private OffsetDateTime[] getTimeSeriesDates(String name) {
-	    String selectDate = "SELECT start_date, end_date FROM time_series WHERE observations_name = ?";
 	    OffsetDateTime startDate = null;
 	    OffsetDateTime endDate = null;
 
-	    try (PreparedStatement statement = conn.prepareStatement(selectDate)) {
+	    try (Connection conn = pool.getConnection(); PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_TIME_SERIES_DATES)) {
 	        statement.setString(1, name);
 	        ResultSet rsdata = statement.executeQuery();
 	        if (rsdata.next()) {
@@ -347,9 +385,9 @@ public class TimeSeriesDataViews {
 	 * @param endDate    : End date of the current data range.
 	 * @param Nbv        : Number of data points to retrieve.
 	 * @param zoom       : Map containing zoom factors or periods.
-	 * @return A map of parsed data after applying the NEXT operation.
+	 * @return The frame of the NEXT view.
 	 */
-	public Map<String, Object> nextSingleView(String name, List<String> data, String startDate, String endDate, int Nbv,
+	public SeriesFrame nextSingleView(String name, List<String> data, String startDate, String endDate, int Nbv,
 			Map<Integer, String> zoom) {
 
 		OffsetDateTime nextStartDate = OffsetDateTime.parse(endDate);
@@ -377,7 +415,7 @@ public class TimeSeriesDataViews {
 					OffsetDateTime.parse(startDate).getOffset());
 		}
 
-		return parseDataToMap(supplierService.getData(name, data, nextStartDate.toString(), nextEndDate.toString(), Nbv));
+		return supplierService.getData(name, data, nextStartDate.toString(), nextEndDate.toString(), Nbv);
 	}
 
 	/**
@@ -389,9 +427,9 @@ public class TimeSeriesDataViews {
 	 * @param endDate    : End date of the current data range.
 	 * @param Nbv        : Number of data points to retrieve.
 	 * @param zoom       : Map containing zoom factors or periods.
-	 * @return A map of parsed data after applying the PREVIOUS operation.
+	 * @return The frame of the PREVIOUS view.
 	 */
-	public Map<String, Object> previousSingleView(String name, List<String> data, String startDate, String endDate, int Nbv,
+	public SeriesFrame previousSingleView(String name, List<String> data, String startDate, String endDate, int Nbv,
 			Map<Integer, String> zoom) {
 
 		OffsetDateTime previousStartDate;
@@ -414,47 +452,9 @@ public class TimeSeriesDataViews {
 					OffsetDateTime.parse(startDate).getOffset());
 		}
 
-		return parseDataToMap(supplierService.getData(name, data, previousStartDate.toString(), previousEndDate.toString(), Nbv));
+		return supplierService.getData(name, data, previousStartDate.toString(), previousEndDate.toString(), Nbv);
 	}
 
-	/**
-	 * Parses the given data string into a map containing key-value pairs.
-	 * 
-	 * @param data : Data string to parse.
-	 * @return A map where each key is a string from the data and the corresponding value is a list of strings.
-	 */
-	@SuppressWarnings("unchecked")
-	public Map<String, Object> parseDataToMap(String data) {
-		Map<String, Object> parsedData = new HashMap<>();
-		String[] lines = data.split("\n");
-
-		if (lines.length > 0) {
-			String[] firstLineParts = lines[0].split(":", 2);
-
-			if (firstLineParts.length == 2) { // Key-value pairs case
-				for (String line : lines) {
-					String[] parts = line.split(":", 2);
-					if (parts.length == 2) {
-						String key = parts[0].trim();
-						String value = parts[1].trim();
-						parsedData.computeIfAbsent(key, k -> new ArrayList<String>());
-						((List<String>) parsedData.get(key)).add(value);
-					}
-				}
-			} else { // Single title case
-				String title = lines[0].trim();
-				List<String> values = new ArrayList<>();
-				for (int i = 1; i < lines.length; i++) {
-					values.add(lines[i].trim());
-				}
-				parsedData.put(title, values);
-			}
-		}
-
-		return parsedData;
-	}
-    
-	
 	/**
 	 * Calculate the new start and end dates based on the operation.
 	 *
@@ -553,21 +553,21 @@ public class TimeSeriesDataViews {
 	 * @param Nbv        : Number of data points to retrieve.
 	 * @param zoom       : Map containing zoom factors or periods.
 	 * @param operation  : The current operation being performed.
-	 * @return A list of maps containing the main view data.
+	 * @return The frame of the main view.
 	 */
-	public List<Map<String, Object>> Views(String name, List<String> data,
+	public SeriesFrame Views(String name, List<String> data,
 			String startDate, String endDate, int Nbv, Map<Integer, String> zoom, String operation) {
 		String cacheKey = generateCacheKey(name, data, startDate, endDate, Nbv,
 				zoom, operation);
-		Map<String, Object> principalData;
+		SeriesFrame principalData;
 		String newStartDate = startDate;
 		String newEndDate = endDate;
 		String[] newDates = new String[2];
 
 		// Check if the main data is already in cache
-		if (prefetchCache.containsKey(cacheKey)) {
-			principalData = prefetchCache.get(cacheKey);
-		} else {
+		principalData = prefetchCache.get(cacheKey);
+		if (principalData == null) {
+			long generation = generation(name);
 			switch (operation.toLowerCase()) {
 				case "up" :
 					principalData = upSingleView(name, data, startDate, endDate,
@@ -602,27 +602,23 @@ public class TimeSeriesDataViews {
 					throw new IllegalArgumentException(
 							"Invalid operation: " + operation);
 			}
-			prefetchCache.put(cacheKey, principalData);
+			cache(name, generation, cacheKey, principalData);
 		}
 
-		List<Map<String, Object>> response = new ArrayList<>();
-		response.add(principalData);
-		
 		final String finalNewStartDate = newStartDate;
 		final String finalNewEndDate = newEndDate;
 
 		// Prefetch neighboring views in a separate thread
 		executor.submit(() -> {
-			prefetchViews(name, data, finalNewStartDate, finalNewEndDate, Nbv, zoom, operation,
-					cacheKey);
+			prefetchViews(name, data, finalNewStartDate, finalNewEndDate, Nbv, zoom, operation);
 		});
 
-		return response;
+		return principalData;
 	}
 
 	
 	/**
-	 * Prefetches neighboring views (next, previous, up, down) and cleans up the cache.
+	 * Prefetches neighboring views (next, previous, up, down).
 	 *
 	 * @param name             : Name of the data series.
 	 * @param data             : List of data points.
@@ -631,11 +627,10 @@ public class TimeSeriesDataViews {
 	 * @param Nbv              : Number of data points to retrieve.
 	 * @param zoom             : Map containing zoom factors or periods.
 	 * @param operation        : The current operation being performed.
-	 * @param currentCacheKey  : The cache key of the current main view.
 	*/
 	private void prefetchViews(String name, List<String> data, String startDate,
 			String endDate, int Nbv, Map<Integer, String> zoom,
-			String operation, String currentCacheKey) {
+			String operation) {
 		String nextKey = generateCacheKey(name, data, startDate, endDate, Nbv,
 				zoom, "next");
 		String previousKey = generateCacheKey(name, data, startDate, endDate,
@@ -654,9 +649,6 @@ public class TimeSeriesDataViews {
 				upKey);
 		prefetchSingleView("down", name, data, startDate, endDate, Nbv, zoom,
 				downKey);
-
-		// Clean up cache to remove unnecessary data
-		cleanUpCache(currentCacheKey, nextKey, previousKey, upKey, downKey);
 	}
 	
     /**
@@ -676,7 +668,8 @@ public class TimeSeriesDataViews {
 			Map<Integer, String> zoom, String cacheKey) {
 		// Check if the view is already in cache
 		if (!prefetchCache.containsKey(cacheKey)) {
-			Map<String, Object> dataToPrefetch = null;
+			long generation = generation(name);
+			SeriesFrame dataToPrefetch = null;
 			switch (direction) {
 				case "up" :
 					dataToPrefetch = upSingleView(name, data, startDate,
@@ -695,27 +688,39 @@ public class TimeSeriesDataViews {
 							endDate, Nbv, zoom);
 					break;
 			}
-			prefetchCache.put(cacheKey, dataToPrefetch);
+			cache(name, generation, cacheKey, dataToPrefetch);
 		}
 	}
 	
 	/**
-	 * Cleans up the cache by removing all keys except those directly related to the current and prefetched views.
+	 * Keeps a view in the cache, which drops the least recently used one when it is full, unless the views of its
+	 * time series were invalidated since it was read.
 	 *
-	 * @param currentKey   : The cache key of the current main view.
-	 * @param nextKey      : The cache key of the next view.
-	 * @param previousKey  : The cache key of the previous view.
-	 * @param upKey        : The cache key of the up view.
-	 * @param downKey      : The cache key of the down view.
+	 * @param name       : Name of the data series.
+	 * @param generation : The generation of the views of the time series when the view was read.
+	 * @param cacheKey   : The cache key of the view.
+	 * @param view       : The view, not cached when missing.
 	*/
-	private void cleanUpCache(String currentKey, String nextKey,
-			String previousKey, String upKey, String downKey) {
-		// Remove all keys from the cache except those directly related to the
-		// current and prefetched views
-		prefetchCache.keySet()
-				.removeIf(key -> !key.equals(currentKey) && !key.equals(nextKey)
-						&& !key.equals(previousKey) && !key.equals(upKey)
-						&& !key.equals(downKey));
+	private void cache(String name, long generation, String cacheKey, SeriesFrame view) {
+		if (view == null) {
+			return;
+		}
+		synchronized (prefetchCache) {
+			if (generation(name) == generation) {
+				prefetchCache.put(cacheKey, view);
+			}
+		}
+	}
+
+	/**
+	 * Gives the number of invalidations of the views of a time series.
+	 *
+	 * @param name : Name of the data series.
+	 * @return The generation of its views.
+	 */
+	private long generation(String name) {
+		AtomicLong generation = generations.get(name);
+		return generation == null ? 0 : generation.get();
 	}
 	
 	
@@ -735,7 +740,7 @@ public class TimeSeriesDataViews {
 			String startDate, String endDate, int Nbv,
 			Map<Integer, String> zoom, String operation) {
 		// Generate a unique cache key
-		return name + "_" + String.join(",", data) + "_" + startDate + "_"
+		return name + KEY_SEPARATOR + String.join(",", data) + "_" + startDate + "_"
 				+ endDate + "_" + Nbv + "_" + zoom.toString() + "_" + operation;
 	}
 	
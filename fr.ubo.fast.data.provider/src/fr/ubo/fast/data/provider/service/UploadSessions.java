@@ -0,0 +1,250 @@
+package fr.ubo.fast.data.provider.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import fr.ubo.fast.data.provider.ingest.ChunkedUploadStream;
+import fr.ubo.fast.data.provider.ingest.ImportProgress;
+import fr.ubo.fast.data.provider.ingest.ObservationReader;
+import fr.ubo.fast.data.provider.ingest.UploadBusyException;
+
+/**
+ * The {@link UploadSessions} class holds the resumable uploads of observations.
+ * <p>
+ * A session imports its series from the moment it starts, as an import job sharing its identifier: each chunk is
+ * handed to the import as soon as every byte before it has arrived, so nothing is stored and the import ends shortly
+ * after the commit. A client which lost its connection asks for the acknowledged offset and sends the upload again
+ * from there. A session only starts when one of the import threads kept for the uploads is free, and a chunk which
+ * waited too long for the import is refused, so the client retries it later rather than holding a request thread.
+ * As their import holds a connection and a transaction, sessions left idle are aborted after a few minutes, which
+ * rolls their import back.
+ */
+public class UploadSessions {
+
+	/** The largest chunk accepted, in bytes. */
+	public static final int MAX_CHUNK_SIZE = 16 << 20;
+
+	/** The time after which a client sends again a chunk refused because the import lags behind, in seconds. */
+	public static final int RETRY_AFTER = 5;
+
+	/** The number of acknowledged bytes the import of a session may lag behind. */
+	private static final long MAX_BUFFERED = 64L << 20;
+
+	/** The longest time a chunk waits for the import to catch up, in milliseconds. */
+	private static final long MAX_CHUNK_WAIT = TimeUnit.SECONDS.toMillis(20);
+
+	/** The number of bytes of a request body handed to its import at once. */
+	private static final int BODY_CHUNK_SIZE = 1 << 20;
+
+	/** The time after which an idle session is aborted, in milliseconds. */
+	private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * An upload in progress.
+	 */
+	private static class Session {
+
+		/** The stream read by the import. */
+		final ChunkedUploadStream stream = new ChunkedUploadStream(MAX_BUFFERED, MAX_CHUNK_WAIT);
+
+		/** The import. */
+		ImportProgress progress;
+
+		/** When a client last used the session, in milliseconds since the epoch. */
+		volatile long lastActivity = System.currentTimeMillis();
+	}
+
+	/** The sessions, by identifier. */
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+	/** Aborts the idle sessions. */
+	private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor();
+
+	/** Runs the imports of the sessions. */
+	private final ImportJobs importJobs;
+
+	public UploadSessions(ImportJobs importJobs) {
+		this.importJobs = importJobs;
+		sweeper.scheduleWithFixedDelay(this::abortIdleSessions, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Starts an upload and the import reading it.
+	 *
+	 * @param name     : The name of the time series.
+	 * @param reader   : Reads the observations in the format of the upload.
+	 * @param encoding : The content encoding of the upload as a whole, null if it is not compressed.
+	 * @return The identifier of the session and of its import job, or null if too many uploads are running.
+	 */
+	public synchronized String start(String name, ObservationReader reader, String encoding) {
+		Session session = new Session();
+		session.progress = importJobs.importStream(name, session.stream, encoding, reader);
+		if (session.progress == null) {
+			return null;
+		}
+		sessions.put(session.progress.getId(), session);
+		return session.progress.getId();
+	}
+
+	/**
+	 * Imports the body of a request as it arrives, through the same bounded stream as a session: nothing is stored,
+	 * and the request reads its body no faster than the import takes it. The import starts at once, on a thread which
+	 * is not kept for the sessions, or not at all.
+	 *
+	 * @param name     : The name of the time series.
+	 * @param body     : The body of the request.
+	 * @param reader   : Reads the observations in the format of the body.
+	 * @param encoding : The content encoding of the body, null if it is not compressed.
+	 * @return The progress of the import, going on once the body is read, or null if too many imports are running.
+	 * @throws IOException if the body cannot be read, in which case the import is rolled back.
+	 */
+	public ImportProgress importBody(String name, InputStream body, ObservationReader reader, String encoding)
+			throws IOException {
+		ChunkedUploadStream stream = new ChunkedUploadStream(MAX_BUFFERED, MAX_CHUNK_WAIT);
+		ImportProgress progress = importJobs.importRequest(name, stream, encoding, reader);
+		if (progress == null) {
+			return null;
+		}
+		long length = 0;
+		try {
+			byte[] buffer = new byte[BODY_CHUNK_SIZE];
+			int read;
+			while ((read = body.read(buffer)) != -1) {
+				byte[] chunk = Arrays.copyOf(buffer, read);
+				boolean written = false;
+				while (!written) {
+					try {
+						stream.write(length, chunk);
+						written = true;
+					} catch (UploadBusyException e) {
+						// The import is slower than the client: the body is read at its pace
+					}
+				}
+				length += read;
+			}
+			stream.commit(length);
+		} catch (IOException e) {
+			stream.abort("request body not received");
+			throw e;
+		}
+		progress.setTotalBytes(length);
+		return progress;
+	}
+
+	/**
+	 * Adds a chunk to an upload.
+	 *
+	 * @param id     : The identifier of the session.
+	 * @param offset : The offset of the chunk in the upload.
+	 * @param chunk  : The bytes of the chunk.
+	 * @return The number of bytes acknowledged, or -1 if the session does not exist.
+	 * @throws UploadBusyException if the import lags too far behind: the chunk must be sent again later.
+	 * @throws IOException         if the chunk cannot be read, is too large, or the upload was aborted.
+	 */
+	public long write(String id, long offset, InputStream chunk) throws IOException {
+		Session session = sessions.get(id);
+		if (session == null) {
+			return -1;
+		}
+		session.lastActivity = System.currentTimeMillis();
+		long acknowledged = session.stream.write(offset, readChunk(chunk));
+		session.lastActivity = System.currentTimeMillis();
+		return acknowledged;
+	}
+
+	/**
+	 * Gives the offset from which an upload must go on.
+	 *
+	 * @param id : The identifier of the session.
+	 * @return The number of bytes acknowledged, or -1 if the session does not exist.
+	 */
+	public long getAcknowledged(String id) {
+		Session session = sessions.get(id);
+		if (session == null) {
+			return -1;
+		}
+		session.lastActivity = System.currentTimeMillis();
+		return session.stream.getAcknowledged();
+	}
+
+	/**
+	 * Ends an upload, leaving its import job to finish.
+	 *
+	 * @param id     : The identifier of the session.
+	 * @param length : The length of the upload.
+	 * @return The progress of the import, or null if the session does not exist.
+	 * @throws IOException if bytes are missing, in which case the session stays open.
+	 */
+	public ImportProgress commit(String id, long length) throws IOException {
+		Session session = sessions.get(id);
+		if (session == null) {
+			return null;
+		}
+		session.lastActivity = System.currentTimeMillis();
+		session.stream.commit(length);
+		session.progress.setTotalBytes(length);
+		sessions.remove(id);
+		return session.progress;
+	}
+
+	/**
+	 * Aborts an upload, which rolls its import back.
+	 *
+	 * @param id : The identifier of the session.
+	 * @return false if the session does not exist.
+	 */
+	public boolean abort(String id) {
+		Session session = sessions.remove(id);
+		if (session == null) {
+			return false;
+		}
+		session.stream.abort("cancelled by the client");
+		return true;
+	}
+
+	/**
+	 * Aborts every upload, which stops their imports.
+	 */
+	public void close() {
+		sweeper.shutdownNow();
+		for (Session session : sessions.values()) {
+			session.stream.abort("server stopping");
+		}
+		sessions.clear();
+	}
+
+	private void abortIdleSessions() {
+		long limit = System.currentTimeMillis() - IDLE_TIMEOUT;
+		for (Iterator<Session> it = sessions.values().iterator(); it.hasNext();) {
+			Session session = it.next();
+			if (session.lastActivity < limit) {
+				it.remove();
+				session.stream.abort("idle for too long");
+			}
+		}
+	}
+
+	/**
+	 * Reads the body of a chunk.
+	 */
+	private static byte[] readChunk(InputStream chunk) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = chunk.read(buffer)) != -1) {
+			if (out.size() + read > MAX_CHUNK_SIZE) {
+				throw new IOException("Chunk larger than " + MAX_CHUNK_SIZE + " bytes");
+			}
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
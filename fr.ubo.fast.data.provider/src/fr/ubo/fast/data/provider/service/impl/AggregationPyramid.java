@@ -0,0 +1,353 @@
+package fr.ubo.fast.data.provider.service.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+
+import fr.ubo.fast.data.provider.database.QueryCatalog;
+import fr.ubo.fast.data.provider.database.SeriesRegistry;
+
+/**
+ * The {@link AggregationPyramid} class builds the precomputed buckets of a time series from the bottom up: the finest
+ * level is aggregated from the observations, and each coarser level is merged from the coarsest finer level whose
+ * buckets it is made of, that is whose width divides its own.
+ * <p>
+ * A level holds the mergeable partials of each bucket (minimum, maximum, sum and count) for every statistic at once,
+ * and the precomputed tables of the statistics are views over it. Configuring several zooms thus scans the
+ * observations once, and adding a zoom whose width is a multiple of a configured one only reads that level. The
+ * median and the quartiles have their own levels, of {@link QuantileSketch quantile sketches}, built the same way.
+ */
+public class AggregationPyramid {
+
+	/**
+	 * The kinds of levels, each with the statistics read from it.
+	 */
+	public enum Family {
+
+		/** The levels of partials, read by min, max and avg. */
+		PARTIALS(QueryCatalog.CREATE_PYRAMID_LEVEL_TEMPLATE, QueryCatalog.INSERT_STAT_BUCKETS_TEMPLATE,
+				"MIN(value) AS min_value, MAX(value) AS max_value, SUM(value) AS sum_value, COUNT(value) AS count_value",
+				QueryCatalog.INSERT_LEVEL_BUCKETS_TEMPLATE, "MIN(min_value) AS min_value, MAX(max_value) AS max_value, "
+						+ "SUM(sum_value) AS sum_value, SUM(count_value)::bigint AS count_value",
+				"min", "max", "avg"),
+
+		/** The levels of sketches, read by median and quart. */
+		SKETCHES(QueryCatalog.CREATE_SKETCH_LEVEL_TEMPLATE, QueryCatalog.INSERT_SKETCH_BUCKETS_TEMPLATE,
+				QuantileSketch.BIN + " AS bin, COUNT(*) AS count", QueryCatalog.INSERT_SKETCH_LEVEL_BUCKETS_TEMPLATE,
+				"bin, SUM(count)::bigint AS count", "median", "quart");
+
+		/** Creates a level. */
+		private final String createTemplate;
+
+		/** Aggregates the buckets of a level from the observations, with its aggregates. */
+		private final String fromObservationsTemplate;
+		private final String fromObservations;
+
+		/** Merges the buckets of a level from a finer level, with its aggregates. */
+		private final String fromLevelTemplate;
+		private final String fromLevel;
+
+		/** The statistics read from the levels. */
+		private final String[] stats;
+
+		Family(String createTemplate, String fromObservationsTemplate, String fromObservations,
+				String fromLevelTemplate, String fromLevel, String... stats) {
+			this.createTemplate = createTemplate;
+			this.fromObservationsTemplate = fromObservationsTemplate;
+			this.fromObservations = fromObservations;
+			this.fromLevelTemplate = fromLevelTemplate;
+			this.fromLevel = fromLevel;
+			this.stats = stats;
+		}
+
+		/**
+		 * Gives the family of the levels a statistic is read from.
+		 *
+		 * @param stat : The statistic.
+		 * @return Its family.
+		 * @throws IllegalArgumentException if the statistic is read from no level.
+		 */
+		public static Family of(String stat) {
+			for (Family family : values()) {
+				for (String familyStat : family.stats) {
+					if (familyStat.equalsIgnoreCase(stat)) {
+						return family;
+					}
+				}
+			}
+			throw new IllegalArgumentException("Unsupported pyramid statistic: " + stat);
+		}
+	}
+
+	/** The known time series. */
+	private final SeriesRegistry registry;
+
+	/**
+	 * @param registry : The known time series.
+	 */
+	public AggregationPyramid(SeriesRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Tells whether a statistic can be read from a level.
+	 *
+	 * @param stat : The statistic.
+	 * @return true for min, max, avg, median and quart.
+	 */
+	public static boolean supports(String stat) {
+		try {
+			Family.of(stat);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gives the columns of the view of a statistic over a level, named as those of its precomputed table.
+	 *
+	 * @param stat : The statistic (min, max, avg, median or quart).
+	 * @return The select list of the view.
+	 * @throws IllegalArgumentException if the statistic cannot be read from a level.
+	 */
+	public static String viewColumns(String stat) {
+		switch (stat.toLowerCase()) {
+			case "min" :
+				return "min_value";
+			case "max" :
+				return "max_value";
+			case "avg" :
+				return "sum_value / NULLIF(count_value, 0) AS avg_value, count_value AS dataNumbers, sum_value";
+			case "median" :
+			case "quart" :
+				return QuantileSketch.valueColumns(QuantileSketch.quantiles(stat));
+			default :
+				throw new IllegalArgumentException("Unsupported pyramid statistic: " + stat);
+		}
+	}
+
+	/**
+	 * Gives what the view of a statistic reads: the level itself, or the quantiles of its sketches.
+	 *
+	 * @param stat  : The statistic (min, max, avg, median or quart).
+	 * @param level : The level the statistic is read from.
+	 * @return The FROM item of the view.
+	 */
+	public static String viewSource(String stat, String level) {
+		if (Family.of(stat) == Family.SKETCHES) {
+			return String.format(QueryCatalog.RANKED_SKETCHES_TEMPLATE, "time",
+					QuantileSketch.rankColumns(QuantileSketch.quantiles(stat)), level);
+		}
+		return level;
+	}
+
+	/**
+	 * Gives the table of a level.
+	 *
+	 * @param family : The family of the level.
+	 * @param name   : The name of the time series.
+	 * @param delta  : The bucket width of the level, in seconds.
+	 * @return The name of the table.
+	 */
+	public String table(Family family, String name, long delta) {
+		return family == Family.SKETCHES ? registry.sketchTable(name, delta) : registry.pyramidTable(name, delta);
+	}
+
+	/**
+	 * Gives the levels of a family in the pyramid of a time series.
+	 *
+	 * @param conn   : The connection to use.
+	 * @param family : The family of the levels.
+	 * @param name   : The name of the time series.
+	 * @return The bucket widths of the levels, in seconds.
+	 * @throws SQLException if the configuration cannot be read.
+	 */
+	public NavigableSet<Long> levels(Connection conn, Family family, String name) throws SQLException {
+		NavigableSet<Long> levels = new TreeSet<>();
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_PYRAMID_LEVELS);
+				PreparedStatement exists = conn.prepareStatement(QueryCatalog.SELECT_TABLE_EXISTS)) {
+			statement.setString(1, name);
+			statement.setArray(2, conn.createArrayOf("text", family.stats));
+			ResultSet rs = statement.executeQuery();
+			while (rs.next()) {
+				long delta = rs.getLong("delta");
+				exists.setString(1, table(family, name, delta));
+				try (ResultSet rsExists = exists.executeQuery()) {
+					if (rsExists.next() && rsExists.getBoolean(1)) {
+						levels.add(delta);
+					}
+				}
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * Gives the level the buckets of a level are merged from.
+	 *
+	 * @param levels : The bucket widths of the other levels.
+	 * @param delta  : The bucket width of the level.
+	 * @return The width of the coarsest finer level dividing delta, or 0 if the level is aggregated from the
+	 *         observations.
+	 */
+	public static long source(NavigableSet<Long> levels, long delta) {
+		for (long finer : levels.headSet(delta, false).descendingSet()) {
+			if (delta % finer == 0) {
+				return finer;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Gives the missing levels of a family among some bucket widths, with the level each one is to be merged from,
+	 * once the finer ones are built.
+	 *
+	 * @param conn   : The connection to use.
+	 * @param family : The family of the levels.
+	 * @param name   : The name of the time series.
+	 * @param deltas : The bucket widths of the levels, in seconds.
+	 * @return The source of each missing level, 0 for the observations, finest first.
+	 * @throws SQLException if the configuration cannot be read.
+	 */
+	public NavigableMap<Long, Long> missingLevels(Connection conn, Family family, String name,
+			Collection<Long> deltas) throws SQLException {
+		NavigableSet<Long> levels = levels(conn, family, name);
+		NavigableMap<Long, Long> missing = new TreeMap<>();
+		for (long delta : new TreeSet<>(deltas)) {
+			if (!levels.contains(delta)) {
+				missing.put(delta, source(levels, delta));
+				levels.add(delta);
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Builds a level from the observations or from a finer level.
+	 *
+	 * @param conn      : The connection to use, outside of a transaction.
+	 * @param cancelled : Tells whether the build was cancelled.
+	 * @param family    : The family of the level.
+	 * @param name      : The name of the time series.
+	 * @param delta     : The bucket width of the level, in seconds.
+	 * @param source    : The bucket width of the finer level, 0 to aggregate the observations.
+	 * @param startDate : When the observations start.
+	 * @param endDate   : When the observations end.
+	 * @throws SQLException if the level cannot be built or the build was cancelled.
+	 */
+	public void buildLevel(Connection conn, BooleanSupplier cancelled, Family family, String name, long delta,
+			long source, OffsetDateTime startDate, OffsetDateTime endDate) throws SQLException {
+		String level = table(family, name, delta);
+		conn.setAutoCommit(false);
+		try (Statement statement = conn.createStatement()) {
+			// A level left by a configuration since deleted holds stale buckets
+			statement.execute(String.format(QueryCatalog.DROP_TABLE_TEMPLATE, level));
+			statement.execute(String.format(family.createTemplate, level));
+			BuildStep.checkCancelled(cancelled);
+			fill(conn, family, name, delta, source, startDate, endDate, startDate, endDate);
+			BuildStep.checkCancelled(cancelled);
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Computes again the buckets of every level which overlap a time range, after the observations changed there,
+	 * finest first so each level merges buckets already up to date.
+	 *
+	 * @param conn      : The connection of the change.
+	 * @param name      : The name of the time series.
+	 * @param from      : The first time changed.
+	 * @param to        : The last time changed.
+	 * @param startDate : When the observations start, null if none is left.
+	 * @param endDate   : When the observations end, null if none is left.
+	 * @return The number of levels refreshed.
+	 * @throws SQLException if a level cannot be updated.
+	 */
+	public int refresh(Connection conn, String name, OffsetDateTime from, OffsetDateTime to,
+			OffsetDateTime startDate, OffsetDateTime endDate) throws SQLException {
+		int refreshed = 0;
+		for (Family family : Family.values()) {
+			NavigableSet<Long> levels = levels(conn, family, name);
+			for (long delta : levels) {
+				try (PreparedStatement delete = conn.prepareStatement(
+						String.format(QueryCatalog.DELETE_STAT_BUCKETS_TEMPLATE, table(family, name, delta)))) {
+					delete.setLong(1, delta);
+					delete.setObject(2, from);
+					delete.setObject(3, to);
+					delete.executeUpdate();
+				}
+				if (startDate != null && endDate != null) {
+					fill(conn, family, name, delta, source(levels, delta), from, to, startDate, endDate);
+				}
+			}
+			refreshed += levels.size();
+		}
+		return refreshed;
+	}
+
+	/**
+	 * Drops the level a statistic was read from once no other statistic is.
+	 *
+	 * @param conn  : The connection to use.
+	 * @param name  : The name of the time series.
+	 * @param stat  : The statistic no longer read.
+	 * @param delta : The bucket width of the level, in seconds.
+	 * @throws SQLException if the level cannot be dropped.
+	 */
+	public void dropIfUnused(Connection conn, String name, String stat, long delta) throws SQLException {
+		Family family = Family.of(stat);
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.COUNT_PYRAMID_VIEWS)) {
+			statement.setString(1, name);
+			statement.setLong(2, delta);
+			statement.setArray(3, conn.createArrayOf("text", family.stats));
+			ResultSet rs = statement.executeQuery();
+			if (rs.next() && rs.getLong(1) > 0) {
+				return;
+			}
+		}
+		try (Statement statement = conn.createStatement()) {
+			statement.execute(String.format(QueryCatalog.DROP_TABLE_TEMPLATE, table(family, name, delta)));
+		}
+	}
+
+	/**
+	 * Aggregates the buckets of a level which overlap a time range.
+	 */
+	private void fill(Connection conn, Family family, String name, long delta, long source, OffsetDateTime from,
+			OffsetDateTime to, OffsetDateTime startDate, OffsetDateTime endDate) throws SQLException {
+		String level = table(family, name, delta);
+		String insert = source == 0
+				? String.format(family.fromObservationsTemplate, level, family.fromObservations,
+						registry.observationsTable(name))
+				: String.format(family.fromLevelTemplate, level, family.fromLevel, table(family, name, source));
+		try (PreparedStatement statement = conn.prepareStatement(insert)) {
+			statement.setLong(1, delta);
+			statement.setLong(2, delta);
+			statement.setObject(3, from);
+			statement.setLong(4, delta);
+			statement.setObject(5, to);
+			statement.setLong(6, delta);
+			if (source == 0) {
+				statement.setObject(7, startDate);
+				statement.setObject(8, endDate);
+			}
+			statement.executeUpdate();
+		}
+	}
+}
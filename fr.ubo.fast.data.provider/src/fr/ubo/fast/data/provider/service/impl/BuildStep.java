@@ -0,0 +1,93 @@
+package fr.ubo.fast.data.provider.service.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The {@link BuildStep} class is one relation to create when configuring a time series: a precomputed table, a
+ * continuous aggregate, a level of the pyramid or a view over a level.
+ * <p>
+ * A step only runs once the steps it depends on have ended successfully, which is how a level waits for the finer
+ * level it is merged from and a view for the level it reads. Steps without a dependency between them can run at the
+ * same time, each on a connection of its own.
+ * <p>
+ * Cancelling a build only stops the statement running, so a step checks between its statements and before committing
+ * whether the build was cancelled, and then rolls back what it did.
+ */
+public class BuildStep {
+
+	/**
+	 * Creates the relation of a step.
+	 */
+	public interface Action {
+
+		/**
+		 * @param conn      : The connection to use, outside of a transaction.
+		 * @param cancelled : Tells whether the build was cancelled.
+		 * @throws SQLException if the relation cannot be created or the build was cancelled.
+		 */
+		void run(Connection conn, BooleanSupplier cancelled) throws SQLException;
+	}
+
+	/** The SQL state of a statement cancelled, as PostgreSQL reports it. */
+	private static final String QUERY_CANCELED = "57014";
+
+	/** The name of the relation created. */
+	private final String relation;
+
+	/** The steps to end before this one. */
+	private final List<BuildStep> dependencies;
+
+	/** Creates the relation. */
+	private final Action action;
+
+	/**
+	 * Creates a step.
+	 *
+	 * @param relation     : The name of the relation created.
+	 * @param dependencies : The steps to end before this one.
+	 * @param action       : Creates the relation.
+	 */
+	public BuildStep(String relation, List<BuildStep> dependencies, Action action) {
+		this.relation = relation;
+		this.dependencies = Collections.unmodifiableList(dependencies);
+		this.action = action;
+	}
+
+	/**
+	 * Creates the relation.
+	 *
+	 * @param conn      : The connection to use, outside of a transaction.
+	 * @param cancelled : Tells whether the build was cancelled.
+	 * @throws SQLException if the relation cannot be created or the build was cancelled.
+	 */
+	public void run(Connection conn, BooleanSupplier cancelled) throws SQLException {
+		action.run(conn, cancelled);
+	}
+
+	/**
+	 * Stops a step between two of its statements once its build was cancelled.
+	 *
+	 * @param cancelled : Tells whether the build was cancelled.
+	 * @throws SQLException if the build was cancelled.
+	 */
+	public static void checkCancelled(BooleanSupplier cancelled) throws SQLException {
+		if (cancelled.getAsBoolean()) {
+			throw new SQLException("The build was cancelled.", QUERY_CANCELED);
+		}
+	}
+
+	public String getRelation() {
+		return relation;
+	}
+
+	/**
+	 * @return The steps to end before this one.
+	 */
+	public List<BuildStep> getDependencies() {
+		return dependencies;
+	}
+}
@@ -0,0 +1,147 @@
+package fr.ubo.fast.data.provider.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link QuantileSketch} class gives the SQL of a mergeable quantile sketch: the values of a bucket are counted by
+ * bins whose bounds grow geometrically, so any value is within {@value #RELATIVE_ACCURACY} of the middle of its bin.
+ * <p>
+ * A sketch is the rows (bin, count) of a bucket. Sketches merge by adding the counts of their common bins, which SQL
+ * does with a GROUP BY, so the sketch of a wide bucket comes from those of the narrower buckets it is made of. A
+ * quantile is the middle of the first bin whose cumulative count reaches its nearest rank, as percentile_disc: the bins
+ * of a bucket are sorted, never its values.
+ * <p>
+ * The bin of a value is the logarithm of its magnitude in base {@link #GAMMA}, shifted by {@value #OFFSET} so that every
+ * magnitude from {@value #MIN_MAGNITUDE} gets a positive bin, and negated for negative values so that the bins sort
+ * as the values. Smaller magnitudes share the bin 0, whose value is 0.
+ */
+public final class QuantileSketch {
+
+	/** The largest relative error of a quantile. */
+	public static final double RELATIVE_ACCURACY = 0.01;
+
+	/** The ratio of the bounds of a bin. */
+	public static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+
+	/** The smallest magnitude with a bin of its own. */
+	public static final double MIN_MAGNITUDE = 1e-9;
+
+	/** The shift of the bins, above the logarithm of {@link #MIN_MAGNITUDE}. */
+	public static final int OFFSET = 1100;
+
+	/** The bin of the value of an observation. */
+	public static final String BIN = "CASE WHEN abs(value) < " + MIN_MAGNITUDE + " THEN 0 ELSE sign(value)::integer * ("
+			+ "ceil(ln(abs(value)) / ln(" + GAMMA + "))::integer + " + OFFSET + ") END";
+
+	private QuantileSketch() {
+	}
+
+	/**
+	 * Tells whether a statistic is read from sketches.
+	 *
+	 * @param stat : The statistic.
+	 * @return true for median and quart.
+	 */
+	public static boolean supports(String stat) {
+		String lower = stat.toLowerCase();
+		return lower.equals("median") || lower.equals("quart");
+	}
+
+	/**
+	 * Gives the quantiles of a statistic.
+	 *
+	 * @param stat : The statistic, median, quart or all.
+	 * @return The quantiles, none if the statistic is not one.
+	 */
+	public static List<Quantile> quantiles(String stat) {
+		List<Quantile> quantiles = new ArrayList<>();
+		switch (stat.toLowerCase()) {
+			case "median" :
+				quantiles.add(Quantile.MEDIAN);
+				break;
+			case "quart" :
+				quantiles.add(Quantile.Q1);
+				quantiles.add(Quantile.Q3);
+				break;
+			case "all" :
+				quantiles.add(Quantile.MEDIAN);
+				quantiles.add(Quantile.Q1);
+				quantiles.add(Quantile.Q3);
+				break;
+			default :
+				break;
+		}
+		return quantiles;
+	}
+
+	/**
+	 * Gives the bin of each quantile, from sketches ranked by a cumulative count "below" and a count "total" per
+	 * bucket, to aggregate by bucket.
+	 *
+	 * @param quantiles : The quantiles.
+	 * @return The select list, one "qN" column per quantile.
+	 */
+	public static String rankColumns(List<Quantile> quantiles) {
+		List<String> columns = new ArrayList<>();
+		for (Quantile quantile : quantiles) {
+			columns.add(String.format("MIN(bin) FILTER (WHERE below >= %s * total) AS %s", quantile.fraction,
+					quantile.rank));
+		}
+		return String.join(", ", columns);
+	}
+
+	/**
+	 * Gives the value of each quantile from the bins chosen by {@link #rankColumns}.
+	 *
+	 * @param quantiles : The quantiles.
+	 * @return The select list, named as the columns of the precomputed tables.
+	 */
+	public static String valueColumns(List<Quantile> quantiles) {
+		List<String> columns = new ArrayList<>();
+		for (Quantile quantile : quantiles) {
+			columns.add(value(quantile.rank) + " AS " + quantile.column);
+		}
+		return String.join(", ", columns);
+	}
+
+	/**
+	 * Gives the middle of a bin, relative to its bounds.
+	 *
+	 * @param bin : The SQL of the bin.
+	 * @return The SQL of the value.
+	 */
+	private static String value(String bin) {
+		return String.format("(CASE WHEN %1$s = 0 THEN 0 ELSE sign(%1$s) * 2 * power(%2$s, abs(%1$s) - %3$d) / %4$s END)"
+				+ "::double precision", bin, GAMMA, OFFSET, GAMMA + 1);
+	}
+
+	/**
+	 * A quantile computed from the sketches.
+	 */
+	public enum Quantile {
+		MEDIAN("0.5", "q50", "median_value"), Q1("0.25", "q25", "q1_value"), Q3("0.75", "q75", "q3_value");
+
+		/** The fraction of the values below the quantile. */
+		private final String fraction;
+
+		/** The column of its bin. */
+		private final String rank;
+
+		/** The column of its value, as in the precomputed tables. */
+		private final String column;
+
+		Quantile(String fraction, String rank, String column) {
+			this.fraction = fraction;
+			this.rank = rank;
+			this.column = column;
+		}
+
+		/**
+		 * @return The column of its value, as in the precomputed tables.
+		 */
+		public String getColumn() {
+			return column;
+		}
+	}
+}
@@ -1,14 +1,8 @@
 package fr.ubo.fast.data.provider.service.impl;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InputStream;
 import java.io.StringWriter;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -20,34 +14,34 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.google.common.base.Optional;
-import com.opencsv.CSVWriter;
 
 import fr.ubo.fast.common.model.Database;
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.database.Hypertables;
+import fr.ubo.fast.data.provider.database.QueryCatalog;
+import fr.ubo.fast.data.provider.database.SeriesRegistry;
+import fr.ubo.fast.data.provider.ingest.CopyLoader;
+import fr.ubo.fast.data.provider.ingest.ImportProgress;
+import fr.ubo.fast.data.provider.ingest.ImportReport;
+import fr.ubo.fast.data.provider.ingest.ImportSettings;
+import fr.ubo.fast.data.provider.ingest.ObservationFilter;
+import fr.ubo.fast.data.provider.ingest.ObservationReader;
+import fr.ubo.fast.data.provider.ingest.ObservationSorter;
 import fr.ubo.fast.data.provider.service.TimeSeriesDataAdmin;
+import fr.ubo.fast.data.provider.service.TimeSeriesDataConfig;
+import fr.ubo.fast.data.provider.service.TimeSeriesDataViews;
 
 /**
  * This class implements TimeSeriesDataSetUp.
@@ -55,36 +49,84 @@ import fr.ubo.fast.data.provider.service.TimeSeriesDataAdmin;
 public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 	
 	/**
-     * A connection access. 
+     * The shared connection pool. 
      */
-	private Connection conn;
+	private DatabaseConnectionPool pool;
 	
 	/**
      * A database parameters access. 
      */
 	private Database database;
 
-	public TimeSeriesDataAdminImpl(Connection connection, Database databaseParam) {
-		conn = connection;
+	/**
+     * The known time series. 
+     */
+	private SeriesRegistry registry;
+
+	/**
+	 * The settings of the imports of observations.
+	 */
+	private ImportSettings importSettings;
+
+	/**
+	 * Refreshes the precomputed tables when the observations change.
+	 */
+	private TimeSeriesDataConfigImpl configService;
+
+	/**
+	 * Drops the cached views of a series when its observations change.
+	 */
+	private TimeSeriesDataViews viewsService;
+
+	/**
+	 * Creates the observations tables as hypertables.
+	 */
+	private Hypertables hypertables;
+
+	/**
+	 * The copy workers, shared by the imports so that they never take more connections than the settings allow.
+	 */
+	private ExecutorService copyWorkers;
+
+	public TimeSeriesDataAdminImpl(DatabaseConnectionPool connectionPool, Database databaseParam,
+			SeriesRegistry seriesRegistry, ImportSettings settings, TimeSeriesDataConfigImpl config,
+			TimeSeriesDataViews views, Hypertables hypertablesParam) {
+		pool = connectionPool;
 		database = databaseParam;
+		registry = seriesRegistry;
+		importSettings = settings;
+		configService = config;
+		viewsService = views;
+		hypertables = hypertablesParam;
+		copyWorkers = Executors.newFixedThreadPool(settings.getCopyWorkers());
+	}
+
+	/**
+	 * Stops the copy workers once the batches they were given are done. The imports must be stopped first.
+	 */
+	public void close() {
+		copyWorkers.shutdown();
 	}
 
 	@Override
 
 	public int addMeasuredVariables(String name, String unit, Double period, int qmin, int qmax) {
-
-		String insertLineQuery1 = "INSERT INTO measured_variables (name, unit) VALUES (?, ?) ON CONFLICT (name) DO NOTHING;";
-		String selectLineQuery = "SELECT measured_variable_id FROM measured_variables WHERE name = ?;";
-		String insertLineQuery2 = "INSERT INTO time_series (period, observations_name, measured_variable_id, qmin, qmax) VALUES (?, ?, ?, ?, ?) ON CONFLICT (observations_name) DO NOTHING;";
-
 		try {
-			PreparedStatement statement1 = conn.prepareStatement(insertLineQuery1);
+			SeriesRegistry.checkIdentifier(name);
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+			return 0; // The name cannot be used in a table name
+		}
+
+		try (Connection conn = pool.getConnection();
+				PreparedStatement statement1 = conn.prepareStatement(QueryCatalog.INSERT_MEASURED_VARIABLE);
+				PreparedStatement statement2 = conn.prepareStatement(QueryCatalog.SELECT_MEASURED_VARIABLE_ID);
+				PreparedStatement statement3 = conn.prepareStatement(QueryCatalog.INSERT_TIME_SERIES)) {
 			statement1.setString(1, name);
 			statement1.setString(2, unit);
 			int affectedRows1 = statement1.executeUpdate();
 
 			// Select measured_variable_id
-			PreparedStatement statement2 = conn.prepareStatement(selectLineQuery);
 			statement2.setString(1, name);
 			ResultSet rs = statement2.executeQuery();
 
@@ -94,13 +136,13 @@ public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 			}
 
 			// Insert into time_series table
-			PreparedStatement statement3 = conn.prepareStatement(insertLineQuery2);
 			statement3.setDouble(1, period);
 			statement3.setString(2, name);
 			statement3.setInt(3, measured_variable_id);
 			statement3.setInt(4, qmin);
 			statement3.setInt(5, qmax);
 			int affectedRows2 = statement3.executeUpdate();
+			registry.register(name);
 
 			if (affectedRows1 == 0 || affectedRows2 == 0) {
 				return 2; // Already exists
@@ -113,64 +155,6 @@ public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 		}
 	}
 
-	/**
-	 * Converts a JSON file to a CSV file.
-	 * 
-	 * @param jsonFile : The JSON file to be converted.
-	 * @param csvFile  : The CSV file to write the converted data.
-	 * @return boolean : Returns true if conversion is successful, false otherwise.
-	 */
-	public static boolean convertJsonToCsv(File jsonFile, File csvFile) {
-		try (FileWriter fileWriter = new FileWriter(csvFile);
-				CSVWriter csvWriter = new CSVWriter(fileWriter);
-				JsonParser jsonParser = new JsonFactory().createParser(jsonFile)) {
-
-			ObjectMapper objectMapper = new ObjectMapper();
-			JsonToken token = jsonParser.nextToken();
-
-			if (token != JsonToken.START_ARRAY) {
-				throw new IOException("Expected data to start with an Array");
-			}
-
-			List<String> headers = new ArrayList<>();
-			boolean headersWritten = false;
-
-			// PriorityQueue to maintain records sorted by the time field
-			PriorityQueue<JsonNode> sortedRecords = new PriorityQueue<>(Comparator.comparing(node -> OffsetDateTime
-					.parse(node.get("time").asText().replace(" ", "T"), DateTimeFormatter.ISO_OFFSET_DATE_TIME)));
-
-			while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
-				JsonNode node = objectMapper.readTree(jsonParser);
-
-				if (!headersWritten) {
-					node.fieldNames().forEachRemaining(headers::add);
-					csvWriter.writeNext(headers.toArray(new String[0]));
-					headersWritten = true;
-				}
-
-				sortedRecords.add(node);
-			}
-
-			while (!sortedRecords.isEmpty()) {
-				JsonNode node = sortedRecords.poll();
-				List<String> row = new ArrayList<>();
-				for (String header : headers) {
-					JsonNode valueNode = node.get(header);
-					row.add(valueNode != null ? valueNode.asText() : null);
-				}
-				csvWriter.writeNext(row.toArray(new String[0]));
-			}
-
-			return true;
-
-		} catch (IOException e) {
-			e.printStackTrace();
-			return false;
-		}
-	}
-
-    
-    
 	/**
 	 * This method checks if the given date complies with the supported date format.
 	 * 
@@ -193,224 +177,146 @@ public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 	}
 
 	@Override
-	public int addObservations(String name, File filename) {
-		String createTableQuery = String.format("CREATE TABLE IF NOT EXISTS observations_%s ("
-				+ "time TIMESTAMPTZ NOT NULL, " + "value DOUBLE PRECISION, " + "quality INTEGER, PRIMARY KEY(time));",
-				name);
-
-		String createHypertable = String.format("DO $$ " + "BEGIN " + "IF NOT EXISTS (SELECT 1 FROM pg_class c "
-				+ "JOIN pg_namespace n ON n.oid = c.relnamespace "
-				+ "LEFT JOIN timescaledb_information.hypertables h ON h.hypertable_name = c.relname "
-				+ "WHERE c.relname = 'observations_%s' AND c.relkind = 'r' AND n.nspname = 'public' AND h.hypertable_name IS NULL) THEN "
-				+ "PERFORM create_hypertable('observations_%s', 'time'); " + "END IF; " + "END $$;", name, name);
-
-
-
-		String selectLineQuery1 = String.format("SELECT start_date FROM time_series WHERE observations_name = '%s';",
-				name);
-		String selectLineQuery2 = String.format("SELECT end_date FROM time_series WHERE observations_name = '%s';",
-				name);
-		String selectLineQuery3 = String.format("SELECT qmin FROM time_series WHERE observations_name = '%s';", name);
-		String selectLineQuery4 = String.format("SELECT qmax FROM time_series WHERE observations_name = '%s';", name);
-		String selectLineQuery5 = String.format("SELECT period FROM time_series WHERE observations_name = '%s';", name);
-
-		try (Statement statement = conn.createStatement()) {
-			statement.execute(createTableQuery);
-			//statement.execute(createHypertable);
+	public ImportReport addObservations(String name, InputStream input, ObservationReader reader,
+			ImportProgress progress) {
+		try (Connection conn = pool.getConnection()) {
+			return addObservations(conn, name, input, reader, progress);
 		} catch (SQLException e) {
 			e.printStackTrace();
-			return 0;
+			return ImportReport.failed(ImportReport.FAILED);
 		}
+	}
 
-		File csvFile = new File(filename.getAbsolutePath().replace(".json", ".csv"));
-		File filteredCsvFile = new File("filtered_observations_" + name.toLowerCase() + ".csv");
-
-		if (!convertJsonToCsv(filename, csvFile)) {
-			return 0;
+	/**
+	 * Allow good data import into the database using the given connection.
+	 * <p>
+	 * The observations go from the JSON or CSV tokens of the input, through the sorter and the filter, to COPY
+	 * batches, in a single transaction for the table of the series. Only input out of time order and larger than a run
+	 * goes to disk. The batches are staged by parallel workers, and duplicates are skipped when the staged rows are
+	 * moved to the table.
+	 * 
+	 * @param conn     : The connection to use.
+	 * @param name     : The name of file.
+	 * @param input    : The observations.
+	 * @param reader   : Reads the observations in the format of the input.
+	 * @param progress : Receives the number of rows sent to the database.
+	 * @return The counts of the import, with a status of 1 for success, 0 for failure and 2 for a failure of the
+	 *         copy into the database.
+	 */
+	private ImportReport addObservations(Connection conn, String name, InputStream input, ObservationReader reader,
+			ImportProgress progress) throws SQLException {
+		String table;
+		try {
+			table = registry.observationsTable(name);
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+			return ImportReport.failed(ImportReport.FAILED);
 		}
-
 		OffsetDateTime startDate = null;
 		OffsetDateTime endDate = null;
 		Integer qmin = null;
 		Integer qmax = null;
 		Integer period = null;
 
-		try (Statement statement = conn.createStatement()) {
-			ResultSet rs1 = statement.executeQuery(selectLineQuery1);
-			if (rs1.next()) {
-				startDate = rs1.getObject("start_date", OffsetDateTime.class);
-			}
-
-			ResultSet rs2 = statement.executeQuery(selectLineQuery2);
-			if (rs2.next()) {
-				endDate = rs2.getObject("end_date", OffsetDateTime.class);
-			}
-
-			ResultSet rs3 = statement.executeQuery(selectLineQuery3);
-			if (rs3.next()) {
-				qmin = rs3.getInt("qmin");
-			}
-
-			ResultSet rs4 = statement.executeQuery(selectLineQuery4);
-			if (rs4.next()) {
-				qmax = rs4.getInt("qmax");
-			}
-
-			ResultSet rs5 = statement.executeQuery(selectLineQuery5);
-			if (rs5.next()) {
-				period = rs5.getInt("period");
+		// The imports and deletions of a series run one at a time, each reading the dates the previous one wrote
+		conn.setAutoCommit(false);
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_TIME_SERIES_SETTINGS)) {
+			lockSeries(conn, name);
+			statement.setString(1, name);
+			ResultSet rs = statement.executeQuery();
+			if (rs.next()) {
+				startDate = rs.getObject("start_date", OffsetDateTime.class);
+				endDate = rs.getObject("end_date", OffsetDateTime.class);
+				qmin = rs.getInt("qmin");
+				qmax = rs.getInt("qmax");
+				period = rs.getInt("period");
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
-			if(e.toString().contains("ERROR: relation \"observations_tension\" does not exist")) {
-				return 1; 
-			}
-			return 0;
+			conn.rollback();
+			return ImportReport.failed(ImportReport.FAILED);
 		}
 
 		if (qmin == null || qmax == null || period == null) {
 			System.err.println("Failed to retrieve qmin, qmax, or period from the database.");
-			return 0;
-		}
-
-		Set<OffsetDateTime> seenDates = new HashSet<>();
-
-		try (Reader reader = Files.newBufferedReader(Paths.get(csvFile.getPath()));
-				CSVParser csvParser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build()
-						.parse(reader);
-				FileWriter fw = new FileWriter(filteredCsvFile);
-				CSVWriter csvWriter = new CSVWriter(fw)) {
-			List<String> headers = csvParser.getHeaderNames();
-			csvWriter.writeNext(headers.toArray(new String[0]));
-
-			Iterator<CSVRecord> iterator = csvParser.iterator();
-			while (iterator.hasNext()) {
-				CSVRecord record = iterator.next();
-				Map<String, String> recordMap = new HashMap<>();
-				for (String header : headers) {
-					recordMap.put(header, record.get(header));
-				}
-
-				int quality;
-				try {
-					quality = Integer.parseInt(recordMap.get("quality"));
-				} catch (NumberFormatException e) {
-					System.err.println("Invalid quality value: " + recordMap.get("quality"));
-					continue; // Skip this record if the quality value is invalid
-				}
-
-				// Check if the quality condition is met
-				boolean qualityCondition = qmin <= quality && quality <= qmax;
-
-				OffsetDateTime recordTime = OffsetDateTime.parse(recordMap.get("time").replace(" ", "T"),
-						DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-
-				if (qualityCondition && !seenDates.contains(recordTime)) {
-					// add if the new record is equal to k * period. It's make time series regular.
-					if (startDate == null || (recordTime.compareTo(startDate) < 0
-							&& Math.abs(startDate.toEpochSecond() - recordTime.toEpochSecond()) % period == 0)) {
-						startDate = recordTime;
-					}
-					if (endDate == null || (recordTime.compareTo(endDate) > 0
-							&& Math.abs(recordTime.toEpochSecond() - endDate.toEpochSecond()) % period == 0)) {
-						endDate = recordTime;
-					}
-
-					if (!dateExists(conn, "observations_" + name, recordTime)) {
-
-						if (Math.abs(recordTime.toEpochSecond() - startDate.toEpochSecond()) % period == 0) {
-							List<String> row = new ArrayList<>();
-							for (String header : headers) {
-								row.add(recordMap.get(header));
-							}
-							csvWriter.writeNext(row.toArray(new String[0]));
-							seenDates.add(recordTime);
-						}
-					}
-				}
-			}
-		} catch (IOException | SQLException e) {
-			e.printStackTrace();
-			return 0;
+			conn.rollback();
+			return ImportReport.failed(ImportReport.FAILED);
 		}
 
-		String updateQuery = String.format(
-				"UPDATE time_series SET start_date = '%s', end_date = '%s' WHERE observations_name = '%s'", startDate,
-				endDate, name);
-		try (Statement statement = conn.createStatement()) {
-			statement.executeUpdate(updateQuery);
+		// The staging table is created like it on another connection: the table must be committed first
+		try (Connection setup = pool.getConnection()) {
+			hypertables.createTable(setup, table, period);
 		} catch (SQLException e) {
 			e.printStackTrace();
-			return 0; // Failed to update time_series
+			conn.rollback();
+			return ImportReport.failed(ImportReport.FAILED);
 		}
 
-		// Use timescaledb-parallel-copy to load the filtered CSV into the database
-		String command = String.format(
-				"timescaledb-parallel-copy --connection \"host=%s user=%s password=%s port=%s\" --db-name %s --table observations_%s --file %s --skip-header",
-				database.getHostname(), database.getUsername(), database.getPassword(), database.getPort(),
-				database.getName(), name.toLowerCase(), filteredCsvFile.getPath());
-
-		ProcessBuilder processBuilder = new ProcessBuilder();
-		processBuilder.command("bash", "-c", command);
-		try {
-			Process process = processBuilder.start();
-
-			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-			String line;
-			while ((line = reader.readLine()) != null) {
-				System.out.println(line);
-			}
-
-			BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-			while ((line = errorReader.readLine()) != null) {
-				System.err.println(line);
-			}
-
-			int exitCode = process.waitFor();
-			System.out.println("\nExited with code : " + exitCode);
+		try (CopyLoader loader = new CopyLoader(pool, copyWorkers, conn, table, importSettings, progress)) {
+			// The transaction ends before the loader drops its staging table, which the transaction may have read
+			try {
+				ObservationFilter filter = new ObservationFilter(loader, qmin, qmax, period, startDate, endDate);
+				try (ObservationSorter sorter = new ObservationSorter(filter, ObservationSorter.DEFAULT_RUN_SIZE)) {
+					reader.read(input, sorter);
+					sorter.finish();
+					loader.finish();
+				} catch (IOException e) {
+					e.printStackTrace();
+					conn.rollback();
+					return ImportReport.failed(ImportReport.FAILED); // The input is not valid JSON or CSV
+				}
 
-			if (exitCode == 0) {
-				return 1;
-			} else {
-				return 2;
-			}
+				try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.UPDATE_TIME_SERIES_DATES)) {
+					statement.setObject(1, filter.getStartDate());
+					statement.setObject(2, filter.getEndDate());
+					statement.setString(3, name);
+					statement.executeUpdate();
+				}
+				// Only the buckets of the precomputed tables where observations were kept change
+				configService.refreshStatTables(conn, name, filter.getFirstKept(), filter.getLastKept());
+				conn.commit();
+				viewsService.invalidate(name);
 
-		} catch (IOException | InterruptedException e) {
-			e.printStackTrace();
-			return 2;
-		} finally {
-			try {
-				Files.deleteIfExists(csvFile.toPath());
-				Files.deleteIfExists(filteredCsvFile.toPath());
-			} catch (IOException e) {
+				return new ImportReport(reader.getParsed(), loader.getInserted(), loader.getDuplicates(),
+						reader.getRejected() + filter.getBadQuality() + filter.getOffPeriod());
+			} catch (SQLException e) {
 				e.printStackTrace();
+				conn.rollback();
+				return ImportReport.failed(ImportReport.DATABASE_FAILED); // The copy into the database failed
 			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			conn.rollback();
+			return ImportReport.failed(ImportReport.DATABASE_FAILED); // The staging table could not be created
 		}
 	}
 
-	private static boolean dateExists(Connection conn, String tableName, OffsetDateTime dateTime) throws SQLException {
-		String query = String.format("SELECT 1 FROM %s WHERE time = ?", tableName);
-		try (PreparedStatement preparedStatement = conn.prepareStatement(query)) {
-			preparedStatement.setObject(1, dateTime);
-			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				return resultSet.next();
-			}
+	/**
+	 * Locks the row of a time series until the end of the transaction, so that the imports and deletions of the
+	 * series wait for each other rather than overwrite its dates and refresh the same buckets at the same time.
+	 * 
+	 * @param conn : The connection of the transaction.
+	 * @param name : The name of the time series.
+	 * @throws SQLException if the row cannot be locked.
+	 */
+	private static void lockSeries(Connection conn, String name) throws SQLException {
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.LOCK_TIME_SERIES)) {
+			statement.setString(1, name);
+			statement.executeQuery();
 		}
 	}
 
 	@Override
 	public int setTimeSeriesDates(String name, String unit, Integer period, Integer qmin, Integer qmax) {
-	    String updateUnit = "UPDATE measured_variables SET unit = ? WHERE name = ?;";
-	    String updateTimeSeriesDates = "UPDATE time_series SET period = ?, qmin = ?, qmax = ? WHERE observations_name = ?";
-
-	    try (PreparedStatement statement = conn.prepareStatement(updateTimeSeriesDates)) {
+	    try (Connection conn = pool.getConnection();
+	    		PreparedStatement statement = conn.prepareStatement(QueryCatalog.UPDATE_TIME_SERIES_SETTINGS)) {
 	        statement.setObject(1, period);
 	        statement.setObject(2, qmin);
 	        statement.setObject(3, qmax);
 	        statement.setString(4, name);
 	        
 	        if (statement.executeUpdate() != 0) {
-	            try (PreparedStatement statement2 = conn.prepareStatement(updateUnit)) {
+	            try (PreparedStatement statement2 = conn.prepareStatement(QueryCatalog.UPDATE_MEASURED_VARIABLE_UNIT)) {
 	                statement2.setString(1, unit);
 	                statement2.setString(2, name);
 	                statement2.executeUpdate();
@@ -427,43 +333,59 @@ public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 
 	@Override
 	public int deleteObservations(String name, String start, String end) {
+		String table;
+		try {
+			table = registry.observationsTable(name);
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+			return 0;
+		}
 
-		String deleteQuery = "DELETE FROM observations_" + name
-				+ " WHERE time BETWEEN ?::timestamptz AND ?::timestamptz";
-		String selectMinTimeQuery = "SELECT MIN(time) as min_time FROM observations_" + name + ";";
-		String selectMaxTimeQuery = "SELECT MAX(time) as max_time FROM observations_" + name + ";";
-		String updateQuery = "UPDATE time_series SET start_date = ?, end_date = ? WHERE observations_name = ?;";
-
-		try (PreparedStatement deleteStmt = conn.prepareStatement(deleteQuery);
-				PreparedStatement selectMinTimeStmt = conn.prepareStatement(selectMinTimeQuery);
-				PreparedStatement selectMaxTimeStmt = conn.prepareStatement(selectMaxTimeQuery);
-				PreparedStatement updateStmt = conn.prepareStatement(updateQuery)) {
-			deleteStmt.setObject(1, start.replace("T", " "));
-			deleteStmt.setObject(2, end.replace("T", " "));
-			int affectedRows = deleteStmt.executeUpdate();
-
-			if (affectedRows > 0) {
-				// Get the new start date
-				ResultSet rsMin = selectMinTimeStmt.executeQuery();
-				OffsetDateTime newStartDate = null;
-				if (rsMin.next()) {
-					newStartDate = rsMin.getObject("min_time", OffsetDateTime.class);
-				}
+		try (Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+			try (PreparedStatement deleteStmt = conn.prepareStatement(
+					String.format(QueryCatalog.DELETE_OBSERVATIONS_TEMPLATE, table));
+					PreparedStatement selectBoundsStmt = conn.prepareStatement(
+							String.format(QueryCatalog.SELECT_OBSERVATIONS_BOUNDS_TEMPLATE, table));
+					PreparedStatement updateStmt = conn.prepareStatement(QueryCatalog.UPDATE_TIME_SERIES_DATES)) {
+				// The imports and deletions of a series run one at a time, each reading the dates the previous one wrote
+				lockSeries(conn, name);
+				deleteStmt.setObject(1, start.replace("T", " "));
+				deleteStmt.setObject(2, end.replace("T", " "));
+				ResultSet rsDeleted = deleteStmt.executeQuery();
+				rsDeleted.next();
+				long affectedRows = rsDeleted.getLong("deleted");
+
+				if (affectedRows > 0) {
+					// Get the new start and end dates
+					ResultSet rsBounds = selectBoundsStmt.executeQuery();
+					OffsetDateTime newStartDate = null;
+					OffsetDateTime newEndDate = null;
+					if (rsBounds.next()) {
+						newStartDate = rsBounds.getObject("min_time", OffsetDateTime.class);
+						newEndDate = rsBounds.getObject("max_time", OffsetDateTime.class);
+					}
 
-				// Get the new end date
-				ResultSet rsMax = selectMaxTimeStmt.executeQuery();
-				OffsetDateTime newEndDate = null;
-				if (rsMax.next()) {
-					newEndDate = rsMax.getObject("max_time", OffsetDateTime.class);
-				}
+					// Update the time_series table with the new start and end dates
+					updateStmt.setObject(1, newStartDate);
+					updateStmt.setObject(2, newEndDate);
+					updateStmt.setString(3, name);
+					updateStmt.executeUpdate();
 
-				// Update the time_series table with the new start and end dates
-				updateStmt.setObject(1, newStartDate);
-				updateStmt.setObject(2, newEndDate);
-				updateStmt.setString(3, name);
-				updateStmt.executeUpdate();
+					// Only the buckets of the precomputed tables holding deleted observations change
+					configService.refreshStatTables(conn, name, rsDeleted.getObject("min_time", OffsetDateTime.class),
+							rsDeleted.getObject("max_time", OffsetDateTime.class));
+				}
+				conn.commit();
+				if (affectedRows > 0) {
+					viewsService.invalidate(name);
+				}
+				return affectedRows > 0 ? 1 : 0; // Return success if rows were deleted
+			} catch (SQLException e) {
+				e.printStackTrace();
+				conn.rollback();
+				return 0; // Return failure due to SQL exception
 			}
-			return affectedRows > 0 ? 1 : 0; // Return success if rows were deleted
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return 0; // Return failure due to SQL exception
@@ -472,22 +394,48 @@ public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 
 	@Override
 	public int deleteTimeSeries(String name) {
-		String deleteQuery1 = "DROP TABLE IF EXISTS observations_" + name + ";";
-		String deleteQuery2 = "DELETE FROM time_series WHERE observations_name = ?;";
-		String deleteQuery3 = "DELETE FROM measured_variables WHERE name = ?;";
+		try (Connection conn = pool.getConnection()) {
+			return deleteTimeSeries(conn, name);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	/**
+	 * Delete a time series in one transaction of the given connection.
+	 * 
+	 * @param conn : The connection to use.
+	 * @param name : The name of file to delete.
+	 * @return A value of 1 indicates success and 0 indicates failure.
+	 */
+	private int deleteTimeSeries(Connection conn, String name) {
+		String deleteQuery1;
+		try {
+			deleteQuery1 = String.format(QueryCatalog.DROP_TABLE_TEMPLATE, registry.observationsTable(name));
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+			return 0;
+		}
 
 		try {
 			conn.setAutoCommit(false); // Start transaction
 
-			try (Statement statement = conn.createStatement()) {
-				statement.executeUpdate(deleteQuery1);
+			try {
+				configService.dropDerivedTables(conn, name);
+				try (Statement statement = conn.createStatement()) {
+					statement.executeUpdate(deleteQuery1);
+				}
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
 			}
 
 			int rowsDeleted1;
 			int rowsDeleted2;
 
-			try (PreparedStatement ps2 = conn.prepareStatement(deleteQuery2);
-					PreparedStatement ps3 = conn.prepareStatement(deleteQuery3)) {
+			try (PreparedStatement ps2 = conn.prepareStatement(QueryCatalog.DELETE_TIME_SERIES);
+					PreparedStatement ps3 = conn.prepareStatement(QueryCatalog.DELETE_MEASURED_VARIABLE)) {
 				ps2.setString(1, name);
 				rowsDeleted1 = ps2.executeUpdate();
 
@@ -496,6 +444,7 @@ public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 
 				if (rowsDeleted1 > 0 && rowsDeleted2 > 0) {
 					conn.commit();
+					registry.unregister(name);
 					return 1;
 				} else {
 					// Rollback transaction if any delete failed
@@ -522,17 +471,41 @@ public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 	
 	public int deleteConfiguration(String name, int zoomid, String zoomcoef, String dataStat) {
 	    // Build the name of the table to drop
-	    String tableName = String.format("observations_%s_%s_%d_%s", name, dataStat, zoomid, zoomcoef);
-
-	    // Queries
-	    String deleteQuery1 = String.format("DROP TABLE IF EXISTS %s;", tableName);
-	    String deleteQuery2 = "DELETE FROM configuration WHERE table_name = ? AND zoom_id = ? AND zoom_coef = ? AND data_stat = ?;";
+	    String tableName;
+	    try {
+	        tableName = registry.statTable(name, dataStat, zoomid, zoomcoef);
+	    } catch (IllegalArgumentException e) {
+	        e.printStackTrace();
+	        return 0;
+	    }
 
-	    try (Statement stmt = conn.createStatement();
-	         PreparedStatement pstmt = conn.prepareStatement(deleteQuery2)) {
+	    try (Connection conn = pool.getConnection();
+	         Statement stmt = conn.createStatement();
+	         PreparedStatement kindStmt = conn.prepareStatement(QueryCatalog.SELECT_CONFIGURATION_KIND);
+	         PreparedStatement pstmt = conn.prepareStatement(QueryCatalog.DELETE_CONFIGURATION)) {
+
+	        // Continuous aggregates and pyramid statistics are views, which DROP TABLE does not drop
+	        TimeSeriesDataConfigImpl.createConfigurationTable(conn);
+	        kindStmt.setString(1, name);
+	        kindStmt.setInt(2, zoomid);
+	        kindStmt.setString(3, zoomcoef);
+	        kindStmt.setString(4, dataStat);
+	        ResultSet rsKind = kindStmt.executeQuery();
+	        String kind = TimeSeriesDataConfig.KIND_TABLE;
+	        long delta = 0;
+	        if (rsKind.next()) {
+	            kind = rsKind.getString("kind");
+	            delta = rsKind.getLong("delta");
+	        }
 
 	        // Execute the first query to drop the table
-	        stmt.executeUpdate(deleteQuery1);
+	        String dropTemplate = QueryCatalog.DROP_TABLE_TEMPLATE;
+	        if (TimeSeriesDataConfig.KIND_CONTINUOUS.equals(kind)) {
+	            dropTemplate = QueryCatalog.DROP_MATERIALIZED_VIEW_TEMPLATE;
+	        } else if (TimeSeriesDataConfig.KIND_PYRAMID.equals(kind)) {
+	            dropTemplate = QueryCatalog.DROP_VIEW_TEMPLATE;
+	        }
+	        stmt.executeUpdate(String.format(dropTemplate, tableName));
 
 	        // Set parameters for the second query
 	        pstmt.setString(1, name);
@@ -543,6 +516,11 @@ public class TimeSeriesDataAdminImpl implements TimeSeriesDataAdmin {
 	        // Execute the second query to delete the configuration row
 	        int rowsAffected = pstmt.executeUpdate();
 
+	        // The level goes with the last statistic read from it
+	        if (TimeSeriesDataConfig.KIND_PYRAMID.equals(kind)) {
+	            configService.dropUnusedLevel(conn, name, dataStat, delta);
+	        }
+
 	        return rowsAffected;
 	    } catch (SQLException e) {
 	        e.printStackTrace();
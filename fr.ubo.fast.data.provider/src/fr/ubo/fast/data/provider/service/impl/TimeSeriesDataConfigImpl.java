@@ -10,23 +10,59 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
 
-import fr.ubo.fast.common.model.Database;
+import fr.ubo.fast.data.provider.database.DatabaseConnectionPool;
+import fr.ubo.fast.data.provider.database.Hypertables;
+import fr.ubo.fast.data.provider.database.QueryCatalog;
+import fr.ubo.fast.data.provider.database.SeriesRegistry;
 import fr.ubo.fast.data.provider.service.TimeSeriesDataConfig;
+import fr.ubo.fast.data.provider.service.impl.AggregationPyramid.Family;
 
 public class TimeSeriesDataConfigImpl implements TimeSeriesDataConfig {
+
+	/** The shortest time between two refreshes of a continuous aggregate, in seconds. */
+	private static final long MIN_REFRESH_INTERVAL = 60;
+
+	/** The longest time between two refreshes of a continuous aggregate, in seconds. */
+	private static final long MAX_REFRESH_INTERVAL = 3600;
 	
 	/**
-     * A connection access. 
+     * The shared connection pool. 
+     */
+	private DatabaseConnectionPool pool;
+
+	/**
+     * The known time series. 
+     */
+	private SeriesRegistry registry;
+
+	/**
+     * Tells which observations tables can have continuous aggregates. 
+     */
+	private Hypertables hypertables;
+
+	/**
+     * Builds the levels read by the views of min, max, avg, median and quart. 
      */
-	private Connection conn;
+	private AggregationPyramid pyramid;
 
-	public TimeSeriesDataConfigImpl(Connection connection) {
-		conn = connection;
+	public TimeSeriesDataConfigImpl(DatabaseConnectionPool connectionPool, SeriesRegistry seriesRegistry,
+			Hypertables hypertablesParam) {
+		pool = connectionPool;
+		registry = seriesRegistry;
+		hypertables = hypertablesParam;
+		pyramid = new AggregationPyramid(seriesRegistry);
 	}
 
 	/**
@@ -179,217 +215,559 @@ public class TimeSeriesDataConfigImpl implements TimeSeriesDataConfig {
 	}
 
 	@Override
-	public Boolean config(String name, List<String> data, int Nbv, Map<Integer, String> zoom) {
-		// Query to create the configuration table if it does not exist
-		String createTableQuery = "CREATE TABLE IF NOT EXISTS configuration (table_name TEXT NOT NULL, "
-				+ "zoom_id INTEGER, zoom_coef TEXT NOT NULL, data_stat TEXT NOT NULL, delta INTEGER);";
-
-		String insertQuery = ""; // SQL query for inserting data into the
-									// configuration table
-		String createStatTable = ""; // SQL query for creating statistical
-										// tables
-		String selectLineQuery1 = String.format("SELECT start_date FROM time_series WHERE observations_name = '%s';",
-				name);
-		String selectLineQuery2 = String.format("SELECT end_date FROM time_series WHERE observations_name = '%s';",
-				name);
-		
-		OffsetDateTime startDate = null;
-		OffsetDateTime endDate = null;
-		
-		try (Statement statement = conn.createStatement()) {
-			ResultSet rs1 = statement.executeQuery(selectLineQuery1);
-			if (rs1.next()) {
-				startDate = rs1.getObject("start_date", OffsetDateTime.class);
-			}
-
-			ResultSet rs2 = statement.executeQuery(selectLineQuery2);
-			if (rs2.next()) {
-				endDate = rs2.getObject("end_date", OffsetDateTime.class);
+	public Boolean config(String name, List<String> data, int Nbv, Map<Integer, String> zoom, String kind) {
+		List<BuildStep> steps = plan(name, data, Nbv, zoom, kind);
+		if (steps == null) {
+			return false;
+		}
+		// The steps come after those they depend on
+		try (Connection conn = pool.getConnection()) {
+			for (BuildStep step : steps) {
+				step.run(conn, () -> false);
 			}
-		}catch(SQLException e) {
+		} catch (SQLException e) {
 			e.printStackTrace();
-			return false; 
+			return false;
 		}
+		return true;
+	}
 
-		// Execute the create table query
-		try (Statement statement = conn.createStatement()) {
-			statement.execute(createTableQuery);
+	/**
+	 * Plans the configuration of data to visualize: the relations to create, each after those it is built from.
+	 * 
+	 * @param name : The name of file.
+	 * @param data : A list of ask data.
+	 * @param Nbv  : number of value.
+	 * @param zoom : A map content the zoom value.
+	 * @param kind : The kind of the precomputed tables.
+	 * @return The steps of the configuration, each after the steps it depends on, or null if the series is unknown,
+	 *         has no observation or cannot be read.
+	 */
+	public List<BuildStep> plan(String name, List<String> data, int Nbv, Map<Integer, String> zoom, String kind) {
+		if (!registry.contains(name)) {
+			return null;
+		}
+		try (Connection conn = pool.getConnection()) {
+			return plan(conn, name, data, Nbv, zoom, kind);
 		} catch (SQLException e) {
 			e.printStackTrace();
-			return false;
+			return null;
+		}
+	}
+
+	/**
+	 * Plans the configuration of data to visualize using the given connection.
+	 * @param conn : The connection to use.
+	 * @param name : The name of file.
+	 * @param data : A list of ask data.
+	 * @param Nbv : number of value.
+	 * @param zoom : A map content the zoom value.
+	 * @param kind : The kind of the precomputed tables.
+	 * @return The steps of the configuration, or null if the series has no observation.
+	 * @throws SQLException if the series or its configuration cannot be read.
+	 */
+	private List<BuildStep> plan(Connection conn, String name, List<String> data, int Nbv, Map<Integer, String> zoom,
+			String kind) throws SQLException {
+		OffsetDateTime startDate = null;
+		OffsetDateTime endDate = null;
+		
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_TIME_SERIES_DATES)) {
+			statement.setString(1, name);
+			ResultSet rs = statement.executeQuery();
+			if (rs.next()) {
+				startDate = rs.getObject("start_date", OffsetDateTime.class);
+				endDate = rs.getObject("end_date", OffsetDateTime.class);
+			}
 		}
+		if (startDate == null || endDate == null) {
+			return null;
+		}
+
+		createConfigurationTable(conn);
+		// Continuous aggregates need the observations in a hypertable
+		boolean continuous = KIND_CONTINUOUS.equals(kind)
+				&& hypertables.isHypertable(conn, registry.observationsTable(name));
 
 		long delta;
 		String startDateStr = startDate.toString();
 		String endDateStr = endDate.toString();
+		// A relation asked twice is built once
+		Map<String, BuildStep> steps = new LinkedHashMap<>();
+		List<Object[]> views = new ArrayList<>();
+		Map<Family, Set<Long>> levels = new EnumMap<>(Family.class);
 		for (String stat : data) {
 			for (Integer key : zoom.keySet()) {
 				if (zoom.get(key).compareToIgnoreCase("co") == 0) {
-
-
 					// Calculate interval and delta
 					long interval = endDate.toEpochSecond()
 							- startDate.toEpochSecond();
 					delta = (interval / key) / Nbv;
-
-					// Generate SQL queries based on the type of statistic
-					switch (stat.toLowerCase()) {
-						case "min" :
-							createStatTable = String.format(
-									"CREATE TABLE IF NOT EXISTS observations_%s_min_%s_%s AS SELECT MIN(value) AS "
-											+ "min_value FROM observations_%s WHERE time >= '%s' AND time <= '%s' GROUP BY "
-											+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-									name, key, zoom.get(key), name,
-									startDateStr, endDateStr, delta, delta);
-							insertQuery = String.format(
-									"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'min', '%d', '%s', '%s');",
-									name, delta, key, zoom.get(key));
-							break;
-						case "max" :
-							createStatTable = String.format(
-									"CREATE TABLE IF NOT EXISTS observations_%s_max_%s_%s AS SELECT MAX(value) AS "
-											+ "max_value FROM observations_%s WHERE time >= '%s' AND time <= '%s' GROUP BY "
-											+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-									name, key, zoom.get(key), name,
-									startDateStr, endDateStr, delta, delta);
-							insertQuery = String.format(
-									"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'max', '%d', '%s', '%s');",
-									name, delta, key, zoom.get(key));
-							break;
-						case "avg" :
-							createStatTable = String.format(
-									"CREATE TABLE IF NOT EXISTS observations_%s_avg_%s_%s AS SELECT AVG(value) AS "
-											+ "avg_value, COUNT(value) AS dataNumbers FROM observations_%s WHERE time >= '%s' AND time <= '%s' GROUP BY "
-											+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-									name, key, zoom.get(key), name,
-									startDateStr, endDateStr, delta, delta);
-							insertQuery = String.format(
-									"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'avg', '%d', '%s', '%s');",
-									name, delta, key, zoom.get(key));
-							break;
-						case "median" :
-							createStatTable = String.format(
-									"CREATE TABLE IF NOT EXISTS observations_%s_median_%s_%s AS SELECT percentile_cont(0.5) WITHIN GROUP (ORDER BY value) "
-											+ "AS median_value FROM observations_%s WHERE time >= '%s' AND time <= '%s' GROUP BY "
-											+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-									name, key, zoom.get(key), name,
-									startDateStr, endDateStr, delta, delta);
-							insertQuery = String.format(
-									"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'median', '%d', '%s', '%s');",
-									name, delta, key, zoom.get(key));
-							break;
-						case "quart" :
-							createStatTable = String.format(
-									"CREATE TABLE IF NOT EXISTS observations_%s_quart_%s_%s AS SELECT percentile_cont(0.25) WITHIN GROUP (ORDER BY value)"
-											+ " AS q1_value, percentile_cont(0.75) WITHIN GROUP (ORDER BY value) AS q3_value FROM observations_%s WHERE time >= '%s' "
-											+ "AND time <= '%s' GROUP BY "
-											+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-									name, key, zoom.get(key), name,
-									startDateStr, endDateStr, delta, delta);
-							insertQuery = String.format(
-									"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'quart', '%d', '%s', '%s');",
-									name, delta, key, zoom.get(key));
-							break;
-						default :
-							throw new IllegalArgumentException(
-									"Unsupported data type: " + stat);
-					}
-
-					// Execute the create and insert queries
-					try (Statement statement = conn.createStatement()) {
-						statement.execute(createStatTable);
-						statement.executeUpdate(insertQuery);
-					} catch (SQLException e) {
-						e.printStackTrace();
-						return false;
-					}
-
 				} else {
-
 					// Convert zoom duration to seconds and calculate delta
 					String zoomDurationString = key + " " + zoom.get(key);
 					Long zoomDurationInt = convertToSeconds(zoomDurationString);
 					delta = zoomDurationInt / Nbv;
-					
-					// Generate SQL queries based on the type of statistic
-					if(delta>0) {
-						switch (stat.toLowerCase()) {
-							case "min" :
-								createStatTable = String.format(
-										"CREATE TABLE IF NOT EXISTS observations_%s_min_%s_%s AS SELECT MIN(value) AS "
-												+ "min_value FROM observations_%s WHERE time >= '%s' AND time <= '%s' GROUP BY  "
-												+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-										name, key, zoom.get(key), name,
-										startDateStr, endDateStr, delta, delta);
-								insertQuery = String.format(
-										"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'min', '%d', '%s', '%s');",
-										name, delta, key, zoom.get(key));
-								break;
-							case "max" :
-								createStatTable = String.format(
-										"CREATE TABLE IF NOT EXISTS observations_%s_max_%s_%s AS SELECT MAX(value) AS "
-												+ "max_value FROM observations_%s WHERE time >= '%s' AND time <= '%s' GROUP BY "
-												+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-										name, key, zoom.get(key), name,
-										startDateStr, endDateStr, delta, delta);
-								insertQuery = String.format(
-										"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'max', '%d', '%s', '%s');",
-										name, delta, key, zoom.get(key));
-								break;
-							case "avg" :
-								createStatTable = String.format(
-										"CREATE TABLE IF NOT EXISTS observations_%s_avg_%s_%s AS SELECT AVG(value) AS "
-												+ "avg_value, COUNT(value) AS dataNumbers FROM observations_%s WHERE time >= '%s' AND time <= '%s' GROUP BY "
-												+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-										name, key, zoom.get(key), name,
-										startDateStr, endDateStr, delta, delta);
-								insertQuery = String.format(
-										"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'avg', '%d', '%s', '%s');",
-										name, delta, key, zoom.get(key));
-								break;
-							case "median" :
-								createStatTable = String.format(
-										"CREATE TABLE IF NOT EXISTS observations_%s_median_%s_%s AS SELECT percentile_cont(0.5) WITHIN GROUP (ORDER BY value) "
-												+ "AS median_value FROM observations_%s WHERE time >= '%s' AND time <= '%s' GROUP BY "
-												+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-										name, key, zoom.get(key), name,
-										startDateStr, endDateStr, delta, delta);
-								insertQuery = String.format(
-										"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'median', '%d', '%s', '%s');",
-										name, delta, key, zoom.get(key));
-								break;
-							case "quart" :
-								createStatTable = String.format(
-										"CREATE TABLE IF NOT EXISTS observations_%s_quart_%s_%s AS SELECT percentile_cont(0.25) WITHIN GROUP (ORDER BY value)"
-												+ " AS q1_value, percentile_cont(0.75) WITHIN GROUP (ORDER BY value) AS q3_value FROM observations_%s WHERE time >= '%s' "
-												+ "AND time <= '%s' GROUP BY "
-												+ "time_bucket('%d', time) ORDER BY time_bucket('%d', time);",
-										name, key, zoom.get(key), name,
-										startDateStr, endDateStr, delta, delta);
-								insertQuery = String.format(
-										"INSERT INTO configuration (table_name, data_stat, delta, zoom_id, zoom_coef) VALUES ('%s', 'quart', '%d', '%s', '%s');",
-										name, delta, key, zoom.get(key));
-								break;
-							default :
-								throw new IllegalArgumentException(
-										"Unsupported data type: " + stat);
-						}
-
-						// Execute the create and insert queries
-						try (Statement statement = conn.createStatement()) {
-							statement.execute(createStatTable);
-							statement.executeUpdate(insertQuery);
-						} catch (SQLException e) {
-							e.printStackTrace();
-							return false;
-						}
+				}
+
+				if (delta <= 0) {
+					continue;
+				}
+				String coef = zoom.get(key);
+				String relation = registry.statTable(name, stat, key, coef);
+				long width = delta;
+				if (continuous && isContinuous(stat)) {
+					steps.put(relation, new BuildStep(relation, Collections.emptyList(),
+							(c, cancelled) -> createContinuousAggregate(c, cancelled, name, stat, key, coef, width)));
+				} else if (KIND_PYRAMID.equals(kind) && AggregationPyramid.supports(stat)) {
+					views.add(new Object[] { stat, key, coef, delta });
+					levels.computeIfAbsent(Family.of(stat), f -> new HashSet<>()).add(delta);
+				} else {
+					steps.put(relation, new BuildStep(relation, Collections.emptyList(),
+							(c, cancelled) -> createStatTable(c, cancelled, name, stat, key, coef, width, startDateStr,
+									endDateStr)));
+				}
+			}
+		}
+
+		// Each level is merged from a finer one, and the views read the levels
+		Map<Family, Map<Long, BuildStep>> levelSteps = new EnumMap<>(Family.class);
+		OffsetDateTime start = startDate;
+		OffsetDateTime end = endDate;
+		for (Entry<Family, Set<Long>> family : levels.entrySet()) {
+			Map<Long, BuildStep> familySteps = new HashMap<>();
+			levelSteps.put(family.getKey(), familySteps);
+			for (Entry<Long, Long> level : pyramid.missingLevels(conn, family.getKey(), name, family.getValue())
+					.entrySet()) {
+				long width = level.getKey();
+				long source = level.getValue();
+				String relation = pyramid.table(family.getKey(), name, width);
+				BuildStep step = new BuildStep(relation, dependency(familySteps.get(source)),
+						(c, cancelled) -> pyramid.buildLevel(c, cancelled, family.getKey(), name, width, source, start,
+								end));
+				familySteps.put(width, step);
+				steps.put(relation, step);
+			}
+		}
+		for (Object[] view : views) {
+			String stat = (String) view[0];
+			Integer key = (Integer) view[1];
+			String coef = (String) view[2];
+			long width = (Long) view[3];
+			String relation = registry.statTable(name, stat, key, coef);
+			steps.putIfAbsent(relation, new BuildStep(relation,
+					dependency(levelSteps.get(Family.of(stat)).get(width)),
+					(c, cancelled) -> createStatView(c, cancelled, name, stat, key, coef, width)));
+		}
+
+		return new ArrayList<>(steps.values());
+	}
+
+	/**
+	 * @param step : A step, or null.
+	 * @return The step alone, or no step.
+	 */
+	private static List<BuildStep> dependency(BuildStep step) {
+		return step == null ? Collections.<BuildStep>emptyList() : Collections.singletonList(step);
+	}
+
+	/**
+	 * Creates the table of a statistic computed by buckets of delta seconds, indexed on the start time of the buckets,
+	 * and records it in the configuration table.
+	 * 
+	 * @param conn      : The connection to use.
+	 * @param cancelled : Tells whether the build was cancelled.
+	 * @param name      : The name of file.
+	 * @param stat      : The statistic to compute.
+	 * @param key       : The zoom value.
+	 * @param coef      : The zoom unit, or "co" for a factor.
+	 * @param delta     : The width of the buckets, in seconds.
+	 * @param startDate : When data start.
+	 * @param endDate   : When data end.
+	 * @throws SQLException if the table cannot be created or the build was cancelled.
+	 */
+	private void createStatTable(Connection conn, BooleanSupplier cancelled, String name, String stat, Integer key,
+			String coef, long delta, String startDate, String endDate) throws SQLException {
+		String aggregates = aggregates(stat);
+
+		// DDL cannot take parameters: the names come from the registry and the dates from the database
+		String tableName = registry.statTable(name, stat, key, coef);
+		String createStatTable = String.format(QueryCatalog.CREATE_STAT_TABLE_TEMPLATE, tableName, delta, aggregates,
+				registry.observationsTable(name), startDate, endDate);
+		String createIndex = String.format(QueryCatalog.CREATE_STAT_INDEX_TEMPLATE, tableName, tableName);
+
+		// Execute the create and insert queries, so a cancelled build leaves nothing behind
+		conn.setAutoCommit(false);
+		try (Statement statement = conn.createStatement();
+				PreparedStatement insertStatement = conn.prepareStatement(QueryCatalog.INSERT_CONFIGURATION)) {
+			if (!hasTimeColumn(conn, tableName)) {
+				// A table built before the buckets kept their time is rebuilt rather than kept
+				statement.execute(String.format(QueryCatalog.DROP_TABLE_TEMPLATE, tableName));
+			}
+			statement.execute(createStatTable);
+			BuildStep.checkCancelled(cancelled);
+			statement.execute(createIndex);
+			insertStatement.setString(1, name);
+			insertStatement.setString(2, stat.toLowerCase());
+			insertStatement.setLong(3, delta);
+			insertStatement.setInt(4, key);
+			insertStatement.setString(5, coef);
+			insertStatement.setString(6, KIND_TABLE);
+			insertStatement.executeUpdate();
+			BuildStep.checkCancelled(cancelled);
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Creates the view of a statistic over the level of the pyramid with buckets of delta seconds, and records it in
+	 * the configuration table. A statistic already configured for the zoom keeps its table.
+	 * 
+	 * @param conn      : The connection to use.
+	 * @param cancelled : Tells whether the build was cancelled.
+	 * @param name      : The name of file.
+	 * @param stat      : The statistic to read (min, max, avg, median or quart).
+	 * @param key       : The zoom value.
+	 * @param coef      : The zoom unit, or "co" for a factor.
+	 * @param delta     : The width of the buckets, in seconds.
+	 * @throws SQLException if the view cannot be created or the build was cancelled.
+	 */
+	private void createStatView(Connection conn, BooleanSupplier cancelled, String name, String stat, Integer key,
+			String coef, long delta) throws SQLException {
+		String viewName = registry.statTable(name, stat, key, coef);
+		// The view and its record are created together, so a cancelled build leaves neither
+		conn.setAutoCommit(false);
+		try (PreparedStatement exists = conn.prepareStatement(QueryCatalog.SELECT_TABLE_EXISTS);
+				Statement statement = conn.createStatement();
+				PreparedStatement insertStatement = conn.prepareStatement(QueryCatalog.INSERT_CONFIGURATION)) {
+			exists.setString(1, viewName);
+			ResultSet rs = exists.executeQuery();
+			if (rs.next() && rs.getBoolean(1)) {
+				conn.commit();
+				return;
+			}
+			statement.execute(String.format(QueryCatalog.CREATE_STAT_VIEW_TEMPLATE, viewName,
+					AggregationPyramid.viewColumns(stat),
+					AggregationPyramid.viewSource(stat, pyramid.table(Family.of(stat), name, delta))));
+			insertStatement.setString(1, name);
+			insertStatement.setString(2, stat.toLowerCase());
+			insertStatement.setLong(3, delta);
+			insertStatement.setInt(4, key);
+			insertStatement.setString(5, coef);
+			insertStatement.setString(6, KIND_PYRAMID);
+			insertStatement.executeUpdate();
+			BuildStep.checkCancelled(cancelled);
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Creates the continuous aggregate of a statistic computed by buckets of delta seconds, with the policy refreshing
+	 * it, and records it in the configuration table.
+	 * <p>
+	 * TimescaleDB then materializes the buckets changed by the imports and deletions on its own, leaving the bucket
+	 * still filling to the reads, which complete the materialized buckets with the latest observations.
+	 * 
+	 * @param conn      : The connection to use, outside of a transaction.
+	 * @param cancelled : Tells whether the build was cancelled.
+	 * @param name      : The name of file.
+	 * @param stat      : The statistic to compute.
+	 * @param key       : The zoom value.
+	 * @param coef      : The zoom unit, or "co" for a factor.
+	 * @param delta     : The width of the buckets, in seconds.
+	 * @throws SQLException if the continuous aggregate cannot be created or the build was cancelled.
+	 */
+	private void createContinuousAggregate(Connection conn, BooleanSupplier cancelled, String name, String stat,
+			Integer key, String coef, long delta) throws SQLException {
+		String viewName = registry.statTable(name, stat, key, coef);
+		String createView = String.format(QueryCatalog.CREATE_CONTINUOUS_AGGREGATE_TEMPLATE, viewName, delta,
+				aggregates(stat), registry.observationsTable(name), delta);
+		long schedule = Math.max(MIN_REFRESH_INTERVAL, Math.min(MAX_REFRESH_INTERVAL, delta));
+
+		try (Statement statement = conn.createStatement();
+				PreparedStatement policyStatement = conn.prepareStatement(QueryCatalog.ADD_REFRESH_POLICY);
+				PreparedStatement refreshStatement = conn.prepareStatement(QueryCatalog.REFRESH_CONTINUOUS_AGGREGATE);
+				PreparedStatement insertStatement = conn.prepareStatement(QueryCatalog.INSERT_CONFIGURATION)) {
+			statement.execute(createView);
+			try {
+				BuildStep.checkCancelled(cancelled);
+				policyStatement.setString(1, viewName);
+				policyStatement.setLong(2, delta);
+				policyStatement.setLong(3, schedule);
+				policyStatement.execute();
+				refreshStatement.setString(1, viewName);
+				refreshStatement.execute();
+				BuildStep.checkCancelled(cancelled);
+				insertStatement.setString(1, name);
+				insertStatement.setString(2, stat.toLowerCase());
+				insertStatement.setLong(3, delta);
+				insertStatement.setInt(4, key);
+				insertStatement.setString(5, coef);
+				insertStatement.setString(6, KIND_CONTINUOUS);
+				insertStatement.executeUpdate();
+			} catch (SQLException e) {
+				// Creating it cannot be rolled back, and a cancelled refresh would leave it unrecorded
+				statement.execute(String.format(QueryCatalog.DROP_MATERIALIZED_VIEW_TEMPLATE, viewName));
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Computes again the buckets of the precomputed tables of a time series which overlap a time range, after its
+	 * observations changed there: the other buckets are left as they are. The tables are updated on the given
+	 * connection, in its transaction, so they change with the observations.
+	 * 
+	 * @param conn : The connection of the change.
+	 * @param name : The name of the time series.
+	 * @param from : The first time changed.
+	 * @param to   : The last time changed.
+	 * @return The number of tables and pyramid levels refreshed.
+	 * @throws SQLException if a table cannot be updated.
+	 */
+	public int refreshStatTables(Connection conn, String name, OffsetDateTime from, OffsetDateTime to)
+			throws SQLException {
+		if (from == null || to == null) {
+			return 0;
+		}
+		OffsetDateTime startDate = null;
+		OffsetDateTime endDate = null;
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_TIME_SERIES_DATES)) {
+			statement.setString(1, name);
+			ResultSet rs = statement.executeQuery();
+			if (rs.next()) {
+				startDate = rs.getObject("start_date", OffsetDateTime.class);
+				endDate = rs.getObject("end_date", OffsetDateTime.class);
+			}
+		}
+
+		// The statistic and the bucket width of each table, once even if configured twice
+		Map<String, String> stats = new LinkedHashMap<>();
+		Map<String, Long> deltas = new HashMap<>();
+		createConfigurationTable(conn);
+		int levels = pyramid.refresh(conn, name, from, to, startDate, endDate);
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_SERIES_CONFIGURATIONS);
+				PreparedStatement exists = conn.prepareStatement(QueryCatalog.SELECT_TABLE_EXISTS)) {
+			statement.setString(1, name);
+			ResultSet rs = statement.executeQuery();
+			while (rs.next()) {
+				if (!KIND_TABLE.equals(rs.getString("kind"))) {
+					continue; // TimescaleDB refreshes the continuous aggregates, and the views read the levels
+				}
+				String stat = rs.getString("data_stat");
+				String table;
+				try {
+					table = registry.statTable(name, stat, rs.getInt("zoom_id"), rs.getString("zoom_coef"));
+				} catch (IllegalArgumentException e) {
+					e.printStackTrace();
+					continue;
+				}
+				exists.setString(1, table);
+				try (ResultSet rsExists = exists.executeQuery()) {
+					if (!rsExists.next() || !rsExists.getBoolean(1)) {
+						continue;
 					}
 				}
+				if (!hasTimeColumn(conn, table)) {
+					// Its buckets cannot be found by time: the change must not fail for it
+					System.err.println("Table " + table + " has no time column and must be configured again");
+					continue;
+				}
+				stats.put(table, stat);
+				deltas.put(table, rs.getLong("delta"));
 			}
 		}
 
-		return true;
+		String observationsTable = registry.observationsTable(name);
+		for (Entry<String, String> table : stats.entrySet()) {
+			long delta = deltas.get(table.getKey());
+			try (PreparedStatement delete = conn.prepareStatement(
+					String.format(QueryCatalog.DELETE_STAT_BUCKETS_TEMPLATE, table.getKey()))) {
+				delete.setLong(1, delta);
+				delete.setObject(2, from);
+				delete.setObject(3, to);
+				delete.executeUpdate();
+			}
+			if (startDate == null || endDate == null) {
+				continue; // The series has no observation left
+			}
+			if (table.getValue().equalsIgnoreCase("avg")) {
+				addSumColumn(conn, table.getKey());
+			}
+			try (PreparedStatement insert = conn.prepareStatement(String.format(
+					QueryCatalog.INSERT_STAT_BUCKETS_TEMPLATE, table.getKey(), aggregates(table.getValue()),
+					observationsTable))) {
+				insert.setLong(1, delta);
+				insert.setLong(2, delta);
+				insert.setObject(3, from);
+				insert.setLong(4, delta);
+				insert.setObject(5, to);
+				insert.setLong(6, delta);
+				insert.setObject(7, startDate);
+				insert.setObject(8, endDate);
+				insert.executeUpdate();
+			}
+		}
+		return levels + stats.size();
 	}
 
-	
+	/**
+	 * Checks whether a statistic table keeps the start time of its buckets, which the tables built before they did
+	 * lack.
+	 * 
+	 * @param conn  : The connection to use.
+	 * @param table : The statistic table.
+	 * @return true if the table exists and has a time column.
+	 * @throws SQLException if the catalog cannot be read.
+	 */
+	private static boolean hasTimeColumn(Connection conn, String table) throws SQLException {
+		try (PreparedStatement exists = conn.prepareStatement(QueryCatalog.SELECT_COLUMN_EXISTS)) {
+			exists.setString(1, table);
+			exists.setString(2, "time");
+			ResultSet rs = exists.executeQuery();
+			return rs.next() && rs.getBoolean(1);
+		}
+	}
+
+	/**
+	 * Adds the sum of the values to an average table created without it, so that its buckets can be merged, filling it
+	 * from the averages and the counts. The catalog is read first, as in {@link #createConfigurationTable}.
+	 * 
+	 * @param conn  : The connection to use.
+	 * @param table : The average table.
+	 * @throws SQLException if the column cannot be added.
+	 */
+	private static void addSumColumn(Connection conn, String table) throws SQLException {
+		try (PreparedStatement exists = conn.prepareStatement(QueryCatalog.SELECT_COLUMN_EXISTS);
+				Statement statement = conn.createStatement()) {
+			exists.setString(1, table);
+			exists.setString(2, "sum_value");
+			ResultSet rs = exists.executeQuery();
+			if (rs.next() && !rs.getBoolean(1)) {
+				statement.execute(String.format(QueryCatalog.ADD_SUM_COLUMN_TEMPLATE, table));
+				statement.execute(String.format(QueryCatalog.FILL_SUM_COLUMN_TEMPLATE, table));
+			}
+		}
+	}
+
+	/**
+	 * Drops the continuous aggregates of a time series, which would otherwise keep its observations table from being
+	 * dropped, and its pyramid with the views over it, then removes them from the configuration table.
+	 * 
+	 * @param conn : The connection of the deletion of the time series.
+	 * @param name : The name of the time series.
+	 * @throws SQLException if a relation cannot be dropped.
+	 */
+	public void dropDerivedTables(Connection conn, String name) throws SQLException {
+		createConfigurationTable(conn);
+		List<String> drops = new ArrayList<>();
+		Map<Family, Set<Long>> levels = new EnumMap<>(Family.class);
+		try (PreparedStatement statement = conn.prepareStatement(QueryCatalog.SELECT_SERIES_CONFIGURATIONS)) {
+			statement.setString(1, name);
+			ResultSet rs = statement.executeQuery();
+			while (rs.next()) {
+				String relation = registry.statTable(name, rs.getString("data_stat"), rs.getInt("zoom_id"),
+						rs.getString("zoom_coef"));
+				if (KIND_CONTINUOUS.equals(rs.getString("kind"))) {
+					drops.add(String.format(QueryCatalog.DROP_MATERIALIZED_VIEW_TEMPLATE, relation));
+				} else if (KIND_PYRAMID.equals(rs.getString("kind"))) {
+					drops.add(String.format(QueryCatalog.DROP_VIEW_TEMPLATE, relation));
+					levels.computeIfAbsent(Family.of(rs.getString("data_stat")), f -> new TreeSet<>())
+							.add(rs.getLong("delta"));
+				}
+			}
+		}
+		for (Entry<Family, Set<Long>> family : levels.entrySet()) {
+			for (long delta : family.getValue()) {
+				drops.add(String.format(QueryCatalog.DROP_TABLE_TEMPLATE, pyramid.table(family.getKey(), name, delta)));
+			}
+		}
+		try (Statement statement = conn.createStatement();
+				PreparedStatement delete = conn.prepareStatement(QueryCatalog.DELETE_DERIVED_CONFIGURATIONS)) {
+			for (String drop : drops) {
+				statement.execute(drop);
+			}
+			delete.setString(1, name);
+			delete.executeUpdate();
+		}
+	}
+
+	/**
+	 * Drops the level of the pyramid of a time series a statistic was read from once no view reads it.
+	 * 
+	 * @param conn  : The connection to use.
+	 * @param name  : The name of the time series.
+	 * @param stat  : The statistic of the view dropped.
+	 * @param delta : The bucket width of the level, in seconds.
+	 * @throws SQLException if the level cannot be dropped.
+	 */
+	public void dropUnusedLevel(Connection conn, String name, String stat, long delta) throws SQLException {
+		pyramid.dropIfUnused(conn, name, stat, delta);
+	}
+
+	/**
+	 * Creates the configuration table, or adds the kind of the precomputed tables to one created without it.
+	 * <p>
+	 * The catalog is read first: ALTER TABLE would lock the configuration table until the end of the transaction even
+	 * when the column exists, and the imports call this in theirs.
+	 * 
+	 * @param conn : The connection to use.
+	 * @throws SQLException if the table cannot be created.
+	 */
+	public static void createConfigurationTable(Connection conn) throws SQLException {
+		try (Statement statement = conn.createStatement()) {
+			statement.execute(QueryCatalog.CREATE_CONFIGURATION_TABLE);
+			ResultSet rs = statement.executeQuery(QueryCatalog.SELECT_CONFIGURATION_HAS_KIND);
+			if (rs.next() && !rs.getBoolean(1)) {
+				statement.execute(QueryCatalog.ADD_CONFIGURATION_KIND);
+			}
+		}
+	}
+
+	/**
+	 * Tells whether a statistic can be a continuous aggregate: TimescaleDB does not materialize the ordered-set
+	 * aggregates of the median and the quartiles, which stay in tables.
+	 * 
+	 * @param stat : The statistic.
+	 * @return true for min, max and avg.
+	 */
+	private static boolean isContinuous(String stat) {
+		String lower = stat.toLowerCase();
+		return lower.equals("min") || lower.equals("max") || lower.equals("avg");
+	}
+
+	/**
+	 * Gives the aggregates computing a statistic, in the columns of its precomputed table.
+	 * 
+	 * @param stat : The statistic (min, max, avg, median or quart).
+	 * @return The select list of the aggregates.
+	 * @throws IllegalArgumentException if the statistic is not supported.
+	 */
+	private static String aggregates(String stat) {
+		switch (stat.toLowerCase()) {
+			case "min" :
+				return "MIN(value) AS min_value";
+			case "max" :
+				return "MAX(value) AS max_value";
+			case "avg" :
+				return "AVG(value) AS avg_value, COUNT(value) AS dataNumbers, SUM(value) AS sum_value";
+			case "median" :
+				return "percentile_cont(0.5) WITHIN GROUP (ORDER BY value) AS median_value";
+			case "quart" :
+				return "percentile_cont(0.25) WITHIN GROUP (ORDER BY value) AS q1_value, "
+						+ "percentile_cont(0.75) WITHIN GROUP (ORDER BY value) AS q3_value";
+			default :
+				throw new IllegalArgumentException(
+						"Unsupported data type: " + stat);
+		}
+	}
 }